@@ -0,0 +1,297 @@
+package org.nzdis.nadico;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+import org.nzdis.nadico.deonticRange.DeonticRange;
+
+/**
+ * Compact binary encoding of NAdicoExpressions (used for persistence, see {@link org.nzdis.nadico.memory.NAdicoActionMemoryFile}).
+ * Encodes all components of an expression (including nesting level, nested expressions, or else,
+ * count and probability), so that byte-wise equality of encodings implies equality of expressions
+ * on all components. The deontic range and parent references are not encoded.
+ * Supported property values are Strings, numbers (Float, Integer, Long, Double), Booleans, sets of
+ * Strings and NAdicoExpressions.
+ */
+public final class NAdicoExpressionCodec {
+
+	private static final byte NULL = 0;
+	private static final byte ACTION = 1;
+	private static final byte STATEMENT = 2;
+	private static final byte COMBINATION = 3;
+
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_STRING = 1;
+	private static final byte VALUE_FLOAT = 2;
+	private static final byte VALUE_INTEGER = 3;
+	private static final byte VALUE_LONG = 4;
+	private static final byte VALUE_DOUBLE = 5;
+	private static final byte VALUE_BOOLEAN = 6;
+	private static final byte VALUE_EXPRESSION = 7;
+	private static final byte VALUE_STRING_SET = 8;
+
+	private NAdicoExpressionCodec() {
+
+	}
+
+	/**
+	 * Encodes a given expression.
+	 * @param expression Expression (may be null)
+	 * @return Encoded expression
+	 */
+	public static byte[] encode(final NAdicoExpression expression) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try {
+			writeExpression(new DataOutputStream(bytes), expression);
+		} catch (IOException e) {
+			throw new RuntimeException("Encoding of expression " + expression + " failed.", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes an expression starting at the current position of a given buffer
+	 * (and advances the buffer's position to the end of the encoded expression).
+	 * @param buffer Buffer holding encoded expression
+	 * @param deonticRange Deontic range to be associated with decoded expression (may be null)
+	 * @return Decoded expression (or null if null expression has been encoded)
+	 */
+	public static <A extends Attributes, I extends Aim, C extends Conditions> NAdicoExpression<A, I, C> decode(
+			final ByteBuffer buffer, final DeonticRange deonticRange) {
+		return readExpression(buffer, deonticRange);
+	}
+
+	private static void writeExpression(final DataOutputStream out, final NAdicoExpression expression) throws IOException {
+		if (expression == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		out.writeByte(expression.isAction() ? ACTION : (expression.isStatement() ? STATEMENT : COMBINATION));
+		out.writeInt(expression.level == null ? -1 : expression.level);
+		// Attributes
+		if (expression.attributes == null) {
+			out.writeBoolean(false);
+		} else {
+			out.writeBoolean(true);
+			writeMarkers(out, expression.attributes.individualMarkers);
+			writeMarkers(out, expression.attributes.socialMarkers);
+		}
+		// Deontic
+		writeValue(out, expression.deontic);
+		// Aim
+		if (expression.aim == null) {
+			out.writeBoolean(false);
+		} else {
+			out.writeBoolean(true);
+			writeString(out, expression.aim.activity);
+			writeProperties(out, expression.aim.properties);
+		}
+		// Conditions
+		if (expression.conditions == null) {
+			out.writeBoolean(false);
+		} else {
+			out.writeBoolean(true);
+			writeProperties(out, expression.conditions.properties);
+		}
+		writeExpression(out, expression.orElse);
+		out.writeInt(expression.nestedExpressions == null ? -1 : expression.nestedExpressions.size());
+		if (expression.nestedExpressions != null) {
+			for (Object nestedExpression: expression.nestedExpressions) {
+				writeExpression(out, (NAdicoExpression) nestedExpression);
+			}
+		}
+		writeString(out, expression.combinator);
+		writeValue(out, expression.count);
+		writeValue(out, expression.probability);
+		out.writeBoolean(expression.deonticInverted);
+	}
+
+	private static void writeMarkers(final DataOutputStream out, final Map<String, ? extends Set<String>> markers) throws IOException {
+		out.writeInt(markers.size());
+		for (Entry<String, ? extends Set<String>> marker: markers.entrySet()) {
+			writeString(out, marker.getKey());
+			writeValue(out, marker.getValue());
+		}
+	}
+
+	private static void writeProperties(final DataOutputStream out, final Map<String, ?> properties) throws IOException {
+		out.writeInt(properties.size());
+		for (Entry<String, ?> property: properties.entrySet()) {
+			writeString(out, property.getKey());
+			writeValue(out, property.getValue());
+		}
+	}
+
+	private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(VALUE_NULL);
+		} else if (value instanceof String) {
+			out.writeByte(VALUE_STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Float) {
+			out.writeByte(VALUE_FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(VALUE_INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(VALUE_LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(VALUE_DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(VALUE_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof NAdicoExpression) {
+			out.writeByte(VALUE_EXPRESSION);
+			writeExpression(out, (NAdicoExpression) value);
+		} else if (value instanceof Set) {
+			out.writeByte(VALUE_STRING_SET);
+			Set<?> set = (Set<?>) value;
+			out.writeInt(set.size());
+			for (Object element: set) {
+				writeString(out, (String) element);
+			}
+		} else {
+			throw new RuntimeException("Encoding of value type " + value.getClass() + " is not supported (Value: " + value + ").");
+		}
+	}
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static NAdicoExpression readExpression(final ByteBuffer buffer, final DeonticRange deonticRange) {
+		final byte type = buffer.get();
+		if (type == NULL) {
+			return null;
+		}
+		final NAdicoExpression expression = new NAdicoExpression(deonticRange);
+		switch (type) {
+			case ACTION:
+				expression.makeAction();
+				break;
+			case STATEMENT:
+				expression.makeStatement();
+				break;
+			case COMBINATION:
+				// Combinator is assigned below
+				expression.makeCombination(null);
+				break;
+			default: throw new RuntimeException("Invalid expression type " + type + " in encoded expression.");
+		}
+		final int level = buffer.getInt();
+		expression.level = level == -1 ? null : level;
+		if (buffer.get() != 0) {
+			Attributes attributes = new Attributes();
+			readMarkers(buffer, attributes.individualMarkers, deonticRange);
+			readMarkers(buffer, attributes.socialMarkers, deonticRange);
+			expression.attributes = attributes;
+		}
+		expression.deontic = (Float) readValue(buffer, deonticRange);
+		if (buffer.get() != 0) {
+			Aim aim = new Aim(readString(buffer));
+			readProperties(buffer, aim.properties, deonticRange);
+			expression.aim = aim;
+		}
+		if (buffer.get() != 0) {
+			Conditions conditions = new Conditions();
+			readProperties(buffer, conditions.properties, deonticRange);
+			expression.conditions = conditions;
+		}
+		final NAdicoExpression orElse = readExpression(buffer, deonticRange);
+		if (orElse != null) {
+			final Integer orElseLevel = orElse.level;
+			expression.orElse = orElse;
+			orElse.setParent(expression);
+			orElse.level = orElseLevel;
+		}
+		final int numberOfNestedExpressions = buffer.getInt();
+		if (numberOfNestedExpressions == -1) {
+			expression.nestedExpressions = null;
+		} else {
+			for (int i = 0; i < numberOfNestedExpressions; i++) {
+				expression.nestedExpressions.add(readExpression(buffer, deonticRange));
+			}
+		}
+		expression.combinator = readString(buffer);
+		expression.count = (Integer) readValue(buffer, deonticRange);
+		expression.probability = (Float) readValue(buffer, deonticRange);
+		expression.deonticInverted = buffer.get() != 0;
+		return expression;
+	}
+
+	private static void readMarkers(final ByteBuffer buffer, final Map markers, final DeonticRange deonticRange) {
+		final int size = buffer.getInt();
+		for (int i = 0; i < size; i++) {
+			final String category = readString(buffer);
+			markers.put(category, readValue(buffer, deonticRange));
+		}
+	}
+
+	private static void readProperties(final ByteBuffer buffer, final Map properties, final DeonticRange deonticRange) {
+		final int size = buffer.getInt();
+		for (int i = 0; i < size; i++) {
+			final String key = readString(buffer);
+			properties.put(key, readValue(buffer, deonticRange));
+		}
+	}
+
+	private static Object readValue(final ByteBuffer buffer, final DeonticRange deonticRange) {
+		final byte type = buffer.get();
+		switch (type) {
+			case VALUE_NULL:
+				return null;
+			case VALUE_STRING:
+				return readString(buffer);
+			case VALUE_FLOAT:
+				return buffer.getFloat();
+			case VALUE_INTEGER:
+				return buffer.getInt();
+			case VALUE_LONG:
+				return buffer.getLong();
+			case VALUE_DOUBLE:
+				return buffer.getDouble();
+			case VALUE_BOOLEAN:
+				return buffer.get() != 0;
+			case VALUE_EXPRESSION:
+				return readExpression(buffer, deonticRange);
+			case VALUE_STRING_SET:
+				final int size = buffer.getInt();
+				LinkedHashSet<String> set = new LinkedHashSet<>();
+				for (int i = 0; i < size; i++) {
+					set.add(readString(buffer));
+				}
+				return set;
+			default: throw new RuntimeException("Invalid value type " + type + " in encoded expression.");
+		}
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
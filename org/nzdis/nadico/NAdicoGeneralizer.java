@@ -75,6 +75,12 @@ public class NAdicoGeneralizer {
 	 */
 	private boolean removeNonAttributeAimPropertiesDuringGeneralization = false;
 	
+	/**
+	 * Version of the generalisation configuration (providers and generalisation option). 
+	 * Incremented upon any change, so that cached generalisations can be invalidated.
+	 */
+	private int generalizationConfigurationVersion = 0;
+	
 	public NAdicoGeneralizer(final String owner, final String context, final NAdicoConfiguration config){
 		this.owner = owner;
 		this.context = context;
@@ -122,7 +128,20 @@ public class NAdicoGeneralizer {
 	 * @param removeNonAttributeAimPropertiesDuringGeneralization Remove non-Attribute aim properties during generalization
 	 */
 	public void setGeneralizationOption(boolean removeNonAttributeAimPropertiesDuringGeneralization) {
-		this.removeNonAttributeAimPropertiesDuringGeneralization = removeNonAttributeAimPropertiesDuringGeneralization;
+		if (this.removeNonAttributeAimPropertiesDuringGeneralization != removeNonAttributeAimPropertiesDuringGeneralization) {
+			this.removeNonAttributeAimPropertiesDuringGeneralization = removeNonAttributeAimPropertiesDuringGeneralization;
+			this.generalizationConfigurationVersion++;
+		}
+	}
+	
+	/**
+	 * Returns the version of the generalisation configuration, which changes whenever 
+	 * generalisation providers or the generalisation option change. Allows users 
+	 * to determine whether cached generalisations are still valid.
+	 * @return
+	 */
+	public int getGeneralizationConfigurationVersion() {
+		return this.generalizationConfigurationVersion;
 	}
 	
 	/**
@@ -169,6 +188,7 @@ public class NAdicoGeneralizer {
 	public void registerGeneralisationProvider(NAdicoGeneralizationProvider provider){
 		if(!this.providers.contains(provider)){
 			this.providers.add(provider);
+			this.generalizationConfigurationVersion++;
 		}
 	}
 	
@@ -177,7 +197,9 @@ public class NAdicoGeneralizer {
 	 * @param provider
 	 */
 	public void deregisterGeneralisationProvider(NAdicoGeneralizationProvider provider){
-		this.providers.remove(provider);
+		if(this.providers.remove(provider)){
+			this.generalizationConfigurationVersion++;
+		}
 	}
 	
 	/**
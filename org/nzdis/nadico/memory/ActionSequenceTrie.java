@@ -0,0 +1,251 @@
+package org.nzdis.nadico.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Trie over the activity sequences of memorised action expressions, ordered from the
+ * earliest action (i.e., the end of the PREVIOUS_ACTION chain) forward. Each node holds
+ * the memory slots of all entries whose sequence starts with the node's prefix, along with
+ * the count and sum of their values.
+ * Used by {@link nAdicoActionMemory} to resolve queries on preceding action sequences
+ * without backtracking through every memory entry.
+ * Copies share nodes with the copied trie; nodes are copied once modified through a copy (path copying).
+ */
+class ActionSequenceTrie {
+
+	/**
+	 * Trie node representing an activity sequence prefix.
+	 */
+	static class Node {
+
+		/**
+		 * Child nodes keyed by activity (null for actions without activity)
+		 */
+		final HashMap<String, Node> children = new HashMap<>();
+
+		/**
+		 * Memory slots of entries passing through this node (in ascending order)
+		 */
+		final TreeSet<Integer> slots = new TreeSet<>();
+
+		/**
+		 * Number of entries passing through this node
+		 */
+		int count = 0;
+
+		/**
+		 * Sum of values of entries passing through this node
+		 */
+		float sum = 0f;
+	}
+
+	/**
+	 * Root node (empty prefix)
+	 */
+	private Node root = new Node();
+
+	/**
+	 * Nodes copied or created by this trie since copying it (null if trie does not share nodes with another trie)
+	 */
+	private Set<Node> ownedNodes = null;
+
+	/**
+	 * Returns a given node for modification, i.e., a copy of it if it is shared with another trie.
+	 * @param node Node
+	 * @return
+	 */
+	private Node own(final Node node) {
+		if (ownedNodes == null || ownedNodes.contains(node)) {
+			return node;
+		}
+		Node copy = new Node();
+		copy.children.putAll(node.children);
+		copy.slots.addAll(node.slots);
+		copy.count = node.count;
+		copy.sum = node.sum;
+		ownedNodes.add(copy);
+		return copy;
+	}
+
+	/**
+	 * Returns the child of a given (owned) node for modification, replacing it with a copy if it is shared with another trie.
+	 * @param node Owned node
+	 * @param activity Activity of child
+	 * @return Child, or null if node does not have child for activity
+	 */
+	private Node ownChild(final Node node, final String activity) {
+		Node child = node.children.get(activity);
+		if (child == null) {
+			return null;
+		}
+		Node ownedChild = own(child);
+		if (ownedChild != child) {
+			node.children.put(activity, ownedChild);
+		}
+		return ownedChild;
+	}
+
+	/**
+	 * Creates a new (owned) node.
+	 * @return
+	 */
+	private Node createNode() {
+		Node node = new Node();
+		if (ownedNodes != null) {
+			ownedNodes.add(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Adds a memory entry with a given activity sequence and value.
+	 * @param slot Memory slot
+	 * @param activities Activity sequence (earliest action first)
+	 * @param value Entry value
+	 */
+	void insert(final int slot, final List<String> activities, final float value) {
+		root = own(root);
+		Node node = root;
+		add(node, slot, value);
+		for (String activity: activities) {
+			Node child = ownChild(node, activity);
+			if (child == null) {
+				child = createNode();
+				node.children.put(activity, child);
+			}
+			node = child;
+			add(node, slot, value);
+		}
+	}
+
+	/**
+	 * Removes a memory entry with a given activity sequence and value (as previously inserted).
+	 * Nodes without remaining entries are pruned.
+	 * @param slot Memory slot
+	 * @param activities Activity sequence (earliest action first)
+	 * @param value Entry value as previously inserted
+	 */
+	void remove(final int slot, final List<String> activities, final float value) {
+		remove(slot, activities, value, false);
+	}
+
+	/**
+	 * Removes a memory entry with a given activity sequence and value (as previously inserted).
+	 * Slots holding several entries (compact mode) are inserted once per entry, and retained
+	 * until their last entry is removed. Nodes without remaining entries are pruned.
+	 * @param slot Memory slot
+	 * @param activities Activity sequence (earliest action first)
+	 * @param value Entry value as previously inserted
+	 * @param retainSlot Indicates whether the slot holds further entries (i.e., only count and sum are reduced)
+	 */
+	void remove(final int slot, final List<String> activities, final float value, final boolean retainSlot) {
+		root = own(root);
+		Node node = root;
+		subtract(node, slot, value, retainSlot);
+		for (String activity: activities) {
+			Node child = ownChild(node, activity);
+			if (child == null) {
+				return;
+			}
+			subtract(child, slot, value, retainSlot);
+			if (child.count == 0) {
+				// Entire subtree is empty
+				node.children.remove(activity);
+				return;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Multiplies the values of all entries with a given factor (e.g., when forgetting).
+	 * @param factor Factor
+	 */
+	void scaleValues(final float factor) {
+		root = own(root);
+		ArrayList<Node> nodes = new ArrayList<>();
+		nodes.add(root);
+		while (!nodes.isEmpty()) {
+			Node node = nodes.remove(nodes.size() - 1);
+			node.sum *= factor;
+			for (String activity: new ArrayList<>(node.children.keySet())) {
+				nodes.add(ownChild(node, activity));
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of this trie in constant time. The copy shares all nodes with this trie and copies
+	 * nodes upon modification (along the modified path), so this trie must not be modified subsequently.
+	 * @return
+	 */
+	ActionSequenceTrie copy() {
+		ActionSequenceTrie copy = new ActionSequenceTrie();
+		copy.root = root;
+		copy.ownedNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		return copy;
+	}
+
+	/**
+	 * Releases nodes shared with copied tries (i.e., permits modification in place), 
+	 * once no other trie sharing nodes with this trie is used anymore.
+	 */
+	void releaseSharedNodes() {
+		ownedNodes = null;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	void clear() {
+		root = createNode();
+	}
+
+	/**
+	 * Returns the nodes reached by descending along a given activity sequence. All but the last
+	 * activity need to match exactly; the last one is treated as wildcard if null or empty.
+	 * @param activities Activity sequence (earliest action first)
+	 * @return Nodes representing the given sequence (empty if sequence has not been memorised)
+	 */
+	List<Node> getNodes(final List<String> activities) {
+		ArrayList<Node> nodes = new ArrayList<>();
+		Node node = root;
+		for (int i = 0; i < activities.size() - 1; i++) {
+			node = node.children.get(activities.get(i));
+			if (node == null) {
+				return nodes;
+			}
+		}
+		if (activities.isEmpty()) {
+			nodes.add(node);
+			return nodes;
+		}
+		String lastActivity = activities.get(activities.size() - 1);
+		if (lastActivity == null || lastActivity.isEmpty()) {
+			nodes.addAll(node.children.values());
+		} else if (node.children.containsKey(lastActivity)) {
+			nodes.add(node.children.get(lastActivity));
+		}
+		return nodes;
+	}
+
+	private static void add(final Node node, final int slot, final float value) {
+		node.slots.add(slot);
+		node.count++;
+		node.sum += value;
+	}
+
+	private static void subtract(final Node node, final int slot, final float value, final boolean retainSlot) {
+		if (retainSlot ? node.slots.contains(slot) : node.slots.remove(slot)) {
+			node.count--;
+			node.sum = node.count == 0 ? 0f : node.sum - value;
+		}
+	}
+
+}
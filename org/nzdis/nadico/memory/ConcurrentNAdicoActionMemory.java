@@ -0,0 +1,619 @@
+package org.nzdis.nadico.memory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.nzdis.nadico.NAdicoExpression;
+import org.nzdis.nadico.NAdicoGeneralizer;
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+import org.sofosim.environment.memoryTypes.util.PairValueComparison;
+
+/**
+ * Thread-safe variant of {@link nAdicoActionMemory} for agents that memorise and query from different threads.
+ * Queries are executed under a shared read lock and do not block each other; operations modifying memory
+ * (memorisation, forgetting, advancing time, resizing) are executed under the exclusive write lock.
+ * Writers are not striped by memory slot, since each memorisation updates indices shared across slots
+ * (activity, social marker and sequence indices as well as generalised aggregates).
+ * State that queries otherwise maintain upon read (indices, generalised entries and aggregates) is
+ * prepared by each modifying operation before releasing the write lock, so that queries only acquire the
+ * read lock and never modify memory state (the eviction policy is informed about accessed entries under its own lock).
+ * Only if the generaliser's configuration has changed since the last modification, the first subsequent 
+ * query prepares the state under the write lock.
+ * Queries with {@link #oneOffDebug} set are executed under the write lock, since they reset the flag.
+ * Aggregation results are linearisable, i.e., each query observes the memory state between two writes.
+ */
+public class ConcurrentNAdicoActionMemory<A extends Attributes, I extends Aim, C extends Conditions> extends nAdicoActionMemory<A, I, C> {
+
+	/**
+	 * Lock guarding memory content and indices
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+	/**
+	 * Instantiates concurrent action memory with given number of memory entries and owner reference.
+	 * @param numberOfEntries
+	 * @param owner
+	 */
+	public ConcurrentNAdicoActionMemory(Integer numberOfEntries, String owner) {
+		super(numberOfEntries, owner);
+		// Prepare state maintained upon read upfront, so that readers never need to
+		prepareForQueries();
+	}
+
+	/**
+	 * Instantiates concurrent action memory with given number of entries, owner and generaliser instance.
+	 * @param numberOfEntries
+	 * @param owner
+	 * @param generalizer Generaliser of owner
+	 */
+	public ConcurrentNAdicoActionMemory(Integer numberOfEntries, String owner, NAdicoGeneralizer generalizer) {
+		super(numberOfEntries, owner, generalizer);
+		prepareForQueries();
+	}
+
+	// Modifying operations (exclusive)
+
+	/**
+	 * Acquires the lock for executing a query. Memory state maintained upon read is prepared by modifying 
+	 * operations; if it is not prepared (i.e., the generaliser's configuration has changed since), it is prepared 
+	 * under the write lock before downgrading to the read lock. Queries with {@link #oneOffDebug} set retain the write lock.
+	 * @return Acquired lock (to be released by caller)
+	 */
+	private Lock lockForQuery() {
+		lock.readLock().lock();
+		if (!oneOffDebug && isPreparedForQueries()) {
+			return lock.readLock();
+		}
+		lock.readLock().unlock();
+		lock.writeLock().lock();
+		if (oneOffDebug) {
+			return lock.writeLock();
+		}
+		try {
+			prepareForQueries();
+			lock.readLock().lock();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return lock.readLock();
+	}
+
+	@Override
+	public void memorize(NAdicoExpression<A, I, C> key, Float value) {
+		lock.writeLock().lock();
+		try {
+			super.memorize(key, value);
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void setNumberOfMemoryEntries(Integer numberOfEntries) {
+		if (lock == null) {
+			// Invoked during instantiation of superclass
+			super.setNumberOfMemoryEntries(numberOfEntries);
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			super.setNumberOfMemoryEntries(numberOfEntries);
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void forgetAtRoundEnd(float discountFactor) {
+		lock.writeLock().lock();
+		try {
+			super.forgetAtRoundEnd(discountFactor);
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void setHalfLife(Float halfLife) {
+		lock.writeLock().lock();
+		try {
+			super.setHalfLife(halfLife);
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void setEvictionPolicy(NAdicoEvictionPolicy evictionPolicy) {
+		lock.writeLock().lock();
+		try {
+			super.setEvictionPolicy(evictionPolicy);
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void advanceTime(long timeUnits) {
+		lock.writeLock().lock();
+		try {
+			super.advanceTime(timeUnits);
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void renormaliseValues() {
+		lock.writeLock().lock();
+		try {
+			super.renormaliseValues();
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void activateApproximateMode(double epsilon, double delta) {
+		lock.writeLock().lock();
+		try {
+			super.activateApproximateMode(epsilon, delta);
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void deactivateApproximateMode() {
+		lock.writeLock().lock();
+		try {
+			super.deactivateApproximateMode();
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public NAdicoMemoryEventStream<A, I, C> openEventStream(int capacity) {
+		lock.writeLock().lock();
+		try {
+			return super.openEventStream(capacity);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void closeEventStream(NAdicoMemoryEventStream<A, I, C> stream) {
+		lock.writeLock().lock();
+		try {
+			super.closeEventStream(stream);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void activateCompactMode() {
+		lock.writeLock().lock();
+		try {
+			super.activateCompactMode();
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void deactivateCompactMode() {
+		lock.writeLock().lock();
+		try {
+			super.deactivateCompactMode();
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public int getNumberOfDistinctEntries() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getNumberOfDistinctEntries();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public int getNumberOfOccupiedSlots() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getNumberOfOccupiedSlots();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public void invalidateGeneralisedEntries() {
+		lock.writeLock().lock();
+		try {
+			super.invalidateGeneralisedEntries();
+			prepareForQueries();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public NAdicoActionMemorySnapshot<A, I, C> snapshot() {
+		// Exclusive, since taking a snapshot registers it with this memory
+		lock.writeLock().lock();
+		try {
+			return super.snapshot();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	void snapshotReleased(long epoch) {
+		lock.writeLock().lock();
+		try {
+			super.snapshotReleased(epoch);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Queries (shared)
+
+	@Override
+	public Float getHalfLife() {
+		lock.readLock().lock();
+		try {
+			return super.getHalfLife();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long getCurrentTime() {
+		lock.readLock().lock();
+		try {
+			return super.getCurrentTime();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean isApproximateMode() {
+		lock.readLock().lock();
+		try {
+			return super.isApproximateMode();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long getNumberOfEvictedEntries() {
+		lock.readLock().lock();
+		try {
+			return super.getNumberOfEvictedEntries();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getNAdicoExpressionsWithAimPropertyInRange(NAdicoExpression<A, I, C> stmt, 
+			String property, float lowerBound, float upperBound, boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getNAdicoExpressionsWithAimPropertyInRange(stmt, property, lowerBound, upperBound, 
+					strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getNAdicoExpressionsWithNearestAimPropertyValue(NAdicoExpression<A, I, C> stmt, 
+			String property, float value, boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getNAdicoExpressionsWithNearestAimPropertyValue(stmt, property, value, 
+					strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Float getValueForKey(NAdicoExpression<A, I, C> stmt) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getValueForKey(stmt);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Float getCountForKey(NAdicoExpression<A, I, C> stmt) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getCountForKey(stmt);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Float getMeanValueForKey(NAdicoExpression<A, I, C> stmt) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMeanValueForKey(stmt);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Collection<NAdicoExpression<A, I, C>> getAllKeys() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getAllKeys();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public LinkedHashMap<String, Float> getActivitiesFollowingSequence(NAdicoExpression<A, I, C> stmt, int aggregationMethod) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getActivitiesFollowingSequence(stmt, aggregationMethod);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Entry<NAdicoExpression<A, I, C>, Float> getMaxNAdicoExpressionWithGivenExpressionAsLastExpression(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMaxNAdicoExpressionWithGivenExpressionAsLastExpression(stmt, operateOnGeneralisedStatements,
+					strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getMaxNAdicoExpressionsWithGivenExpressionAsLastExpression(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMaxNAdicoExpressionsWithGivenExpressionAsLastExpression(stmt, operateOnGeneralisedStatements,
+					strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getNAdicoExpressionsWithGivenExpressionAsLastExpression(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getNAdicoExpressionsWithGivenExpressionAsLastExpression(stmt, operateOnGeneralisedStatements,
+					strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Entry<NAdicoExpression<A, I, C>, Float> getMaxNAdicoExpressionWithGivenExpressionAsPreviousExpression(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence,
+			boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMaxNAdicoExpressionWithGivenExpressionAsPreviousExpression(stmt, operateOnGeneralisedStatements,
+					returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getMaxNAdicoExpressionsWithGivenExpressionAsPreviousExpression(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence,
+			boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMaxNAdicoExpressionsWithGivenExpressionAsPreviousExpression(stmt, operateOnGeneralisedStatements,
+					returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence,
+			boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(stmt, operateOnGeneralisedStatements,
+					returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getMaxNAdicoExpressionsWithGivenExpressionOnAnyLevel(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence,
+			boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMaxNAdicoExpressionsWithGivenExpressionOnAnyLevel(stmt, operateOnGeneralisedStatements,
+					returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> getNAdicoExpressionsWithGivenExpressionOnAnyLevel(NAdicoExpression<A, I, C> stmt,
+			boolean operateOnGeneralisedStatements, boolean returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence,
+			boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getNAdicoExpressionsWithGivenExpressionOnAnyLevel(stmt, operateOnGeneralisedStatements,
+					returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public Map<NAdicoExpression<A, I, C>, Float> executeQuery(NAdicoQuery<A, I, C> query) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.executeQuery(query);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public List<Map<NAdicoExpression<A, I, C>, Float>> executeQueries(Collection<NAdicoQuery<A, I, C>> queries) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.executeQueries(queries);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public List<Map<NAdicoExpression<A, I, C>, Float>> getMaxNAdicoExpressionsWithGivenExpressionsAsPreviousExpression(
+			Collection<NAdicoExpression<A, I, C>> stmts, boolean operateOnGeneralisedStatements,
+			boolean returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence,
+			boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMaxNAdicoExpressionsWithGivenExpressionsAsPreviousExpression(stmts, operateOnGeneralisedStatements,
+					returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public PairValueComparison<NAdicoExpression<A, I, C>, Number> getMaxNAdicoExpression() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getMaxNAdicoExpression();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public PairValueComparison<NAdicoExpression<A, I, C>, Number> getKeyValuePairForHighestValue() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getKeyValuePairForHighestValue();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public NAdicoExpression<A, I, C> getKeyForHighestValue() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getKeyForHighestValue();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public NAdicoExpression<A, I, C> getKeyForLowestValue() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getKeyForLowestValue();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isCompactMode() {
+		lock.readLock().lock();
+		try {
+			return super.isCompactMode();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public HashMap<NAdicoExpression<A, I, C>, CountSumEntry> getCompleteEntries() {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getCompleteEntries();
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public List<PairValueComparison<NAdicoExpression<A, I, C>, Float>> getRankedNAdicoExpressions(int aggregationMode) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getRankedNAdicoExpressions(aggregationMode);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+	@Override
+	public List<PairValueComparison<NAdicoExpression<A, I, C>, Float>> getRankedNAdicoExpressions(int aggregationMode, int numberOfEntries) {
+		final Lock queryLock = lockForQuery();
+		try {
+			return super.getRankedNAdicoExpressions(aggregationMode, numberOfEntries);
+		} finally {
+			queryLock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,237 @@
+package org.nzdis.nadico.memory;
+
+/**
+ * Count-min sketch that additionally accumulates the sum of values per counter (count-sum sketch).
+ * Holds approximate counts and value sums for an unbounded number of keys (identified by fingerprint)
+ * in constant space. Count estimates never underestimate and, with width w = ceil(e/epsilon) and
+ * depth d = ceil(ln(1/delta)), overestimate by at most epsilon * N (N: number of added values) with
+ * probability 1 - delta. Sum estimates are taken from the counter with the lowest count, i.e., the
+ * counter least affected by collisions.
+ * Used by {@link nAdicoActionMemory} to retain entries evicted from memory.
+ */
+class CountSumSketch {
+
+	/**
+	 * Number of counters per row
+	 */
+	private final int width;
+
+	/**
+	 * Number of rows (i.e., hash functions)
+	 */
+	private final int depth;
+
+	/**
+	 * Counts per counter (row-major)
+	 */
+	private int[] counts;
+
+	/**
+	 * Value sums per counter (row-major)
+	 */
+	private double[] sums;
+
+	/**
+	 * Number of added values
+	 */
+	private long numberOfValues = 0;
+
+	/**
+	 * Indicates whether counters are shared with a copy of this sketch (and hence copied upon modification)
+	 */
+	private boolean shared = false;
+
+	/**
+	 * Instantiates a sketch with given relative error and error probability of count estimates.
+	 * @param epsilon Relative error (in relation to number of added values)
+	 * @param delta Probability of exceeding relative error
+	 */
+	CountSumSketch(final double epsilon, final double delta) {
+		this((int) Math.ceil(Math.E / epsilon), (int) Math.ceil(Math.log(1 / delta)));
+	}
+
+	/**
+	 * Instantiates a sketch with given number of counters per row and number of rows.
+	 * @param width Number of counters per row
+	 * @param depth Number of rows
+	 */
+	CountSumSketch(final int width, final int depth) {
+		if (width < 1 || depth < 1) {
+			throw new RuntimeException("Width and depth of sketch need to be positive. Width: " + width + ", depth: " + depth);
+		}
+		this.width = width;
+		this.depth = depth;
+		this.counts = new int[width * depth];
+		this.sums = new double[width * depth];
+	}
+
+	private CountSumSketch(final CountSumSketch sketch) {
+		this.width = sketch.width;
+		this.depth = sketch.depth;
+		this.counts = sketch.counts;
+		this.sums = sketch.sums;
+		this.numberOfValues = sketch.numberOfValues;
+		this.shared = true;
+	}
+
+	/**
+	 * Instantiates a sketch with given counters (used to restore persisted sketches).
+	 * @param width Number of counters per row
+	 * @param depth Number of rows
+	 * @param counts Counts per counter (row-major)
+	 * @param sums Value sums per counter (row-major)
+	 * @param numberOfValues Number of added values
+	 */
+	CountSumSketch(final int width, final int depth, final int[] counts, final double[] sums, final long numberOfValues) {
+		this(width, depth);
+		if (counts.length != width * depth || sums.length != width * depth) {
+			throw new RuntimeException("Number of counters does not match width and depth of sketch. Width: " + width + ", depth: " + depth);
+		}
+		this.counts = counts;
+		this.sums = sums;
+		this.numberOfValues = numberOfValues;
+	}
+
+	/**
+	 * Returns a copy of this sketch in constant time. The copy shares counters with this sketch 
+	 * and copies them upon modification, so this sketch must not be modified subsequently.
+	 * @return
+	 */
+	CountSumSketch copy() {
+		return new CountSumSketch(this);
+	}
+
+	/**
+	 * Copies counters shared with another sketch prior to modification.
+	 */
+	private void copyOnWrite() {
+		if (shared) {
+			counts = counts.clone();
+			sums = sums.clone();
+			shared = false;
+		}
+	}
+
+	/**
+	 * Adds a value for a key with a given fingerprint.
+	 * @param fingerprint Fingerprint of key
+	 * @param value Value
+	 */
+	void add(final int fingerprint, final float value) {
+		copyOnWrite();
+		for (int row = 0; row < depth; row++) {
+			final int counter = getCounter(fingerprint, row);
+			counts[counter]++;
+			sums[counter] += value;
+		}
+		numberOfValues++;
+	}
+
+	/**
+	 * Returns the estimated number of values added for a key with a given fingerprint.
+	 * @param fingerprint Fingerprint of key
+	 * @return
+	 */
+	int estimateCount(final int fingerprint) {
+		return counts[getMinimumCounter(fingerprint)];
+	}
+
+	/**
+	 * Returns the estimated sum of values added for a key with a given fingerprint.
+	 * @param fingerprint Fingerprint of key
+	 * @return
+	 */
+	double estimateSum(final int fingerprint) {
+		return sums[getMinimumCounter(fingerprint)];
+	}
+
+	/**
+	 * Multiplies all sums with a given factor.
+	 * @param factor Factor
+	 */
+	void scaleSums(final double factor) {
+		copyOnWrite();
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] *= factor;
+		}
+	}
+
+	/**
+	 * Returns the number of counters per row.
+	 * @return
+	 */
+	int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 * @return
+	 */
+	int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the count of a given counter (row-major index).
+	 * @param counter Counter
+	 * @return
+	 */
+	int getCount(final int counter) {
+		return counts[counter];
+	}
+
+	/**
+	 * Returns the value sum of a given counter (row-major index).
+	 * @param counter Counter
+	 * @return
+	 */
+	double getSum(final int counter) {
+		return sums[counter];
+	}
+
+	/**
+	 * Returns the number of added values.
+	 * @return
+	 */
+	long getNumberOfValues() {
+		return numberOfValues;
+	}
+
+	/**
+	 * Returns the maximum overestimation of counts that holds with the configured probability.
+	 * @return
+	 */
+	double getCountErrorBound() {
+		return Math.E / width * numberOfValues;
+	}
+
+	private int getMinimumCounter(final int fingerprint) {
+		int minimumCounter = getCounter(fingerprint, 0);
+		for (int row = 1; row < depth; row++) {
+			final int counter = getCounter(fingerprint, row);
+			if (counts[counter] < counts[minimumCounter]) {
+				minimumCounter = counter;
+			}
+		}
+		return minimumCounter;
+	}
+
+	/**
+	 * Returns the index of the counter for a given fingerprint in a given row.
+	 * @param fingerprint Fingerprint of key
+	 * @param row Row
+	 * @return
+	 */
+	private int getCounter(final int fingerprint, final int row) {
+		// Derive independent hash per row (finaliser of MurmurHash3)
+		int hash = fingerprint ^ (0x9E3779B9 * (row + 1));
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		hash ^= hash >>> 16;
+		return row * width + Math.floorMod(hash, width);
+	}
+
+}
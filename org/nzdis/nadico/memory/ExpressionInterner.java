@@ -0,0 +1,53 @@
+package org.nzdis.nadico.memory;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+import org.nzdis.nadico.NAdicoExpression;
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+
+/**
+ * Holds a single shared instance per distinct expression, so that memory entries holding equal 
+ * expressions refer to the same instance. Shared instances are weakly referenced, i.e., retained 
+ * as long as any memory (or snapshot) refers to them. Only top-level actions are shared 
+ * (see {@link nAdicoActionMemory#isShareable(NAdicoExpression)}).
+ * Used by {@link SharedNAdicoActionMemory} (across partitions) and by {@link nAdicoActionMemory} in compact mode.
+ */
+class ExpressionInterner<A extends Attributes, I extends Aim, C extends Conditions> {
+
+	/**
+	 * Shared instances of expressions
+	 */
+	private final WeakHashMap<NAdicoExpression<A, I, C>, WeakReference<NAdicoExpression<A, I, C>>> expressions = new WeakHashMap<>();
+
+	/**
+	 * Returns the shared instance of a given expression. If no equal expression is held yet,
+	 * a copy of the given expression is shared from now on (so that subsequent modifications of the given 
+	 * instance by the caller do not affect memories holding the shared instance).
+	 * @param expression Expression
+	 * @return Shared instance (or given expression if it is not shareable)
+	 */
+	synchronized NAdicoExpression<A, I, C> intern(final NAdicoExpression<A, I, C> expression) {
+		if (!nAdicoActionMemory.isShareable(expression)) {
+			return expression;
+		}
+		WeakReference<NAdicoExpression<A, I, C>> reference = expressions.get(expression);
+		NAdicoExpression<A, I, C> sharedExpression = reference == null ? null : reference.get();
+		if (sharedExpression == null) {
+			sharedExpression = expression.makeCopy();
+			expressions.put(sharedExpression, new WeakReference<>(sharedExpression));
+		}
+		return sharedExpression;
+	}
+
+	/**
+	 * Returns the number of shared instances currently held.
+	 * @return
+	 */
+	synchronized int size() {
+		return expressions.size();
+	}
+
+}
@@ -0,0 +1,25 @@
+package org.nzdis.nadico.memory;
+
+/**
+ * Eviction policy evicting the entry that has been matched by the fewest queries since its memorisation.
+ * Among equally frequently matched entries, the least recently matched (or memorised) one is evicted.
+ */
+public class LeastFrequentlyUsedEvictionPolicy extends RankedEvictionPolicy {
+
+	@Override
+	protected double getScoreOnMemorisation(float value) {
+		return 0;
+	}
+
+	@Override
+	protected double getScoreOnAccess(double score) {
+		// Count accesses
+		return score + 1;
+	}
+
+	@Override
+	protected boolean isRankedByAccess() {
+		return true;
+	}
+
+}
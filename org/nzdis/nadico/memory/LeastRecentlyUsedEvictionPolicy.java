@@ -0,0 +1,25 @@
+package org.nzdis.nadico.memory;
+
+/**
+ * Eviction policy evicting the entry that has least recently been matched by a query
+ * (or memorised, if it has not been matched since).
+ */
+public class LeastRecentlyUsedEvictionPolicy extends RankedEvictionPolicy {
+
+	@Override
+	protected double getScoreOnMemorisation(float value) {
+		// Rank by tick only
+		return 0;
+	}
+
+	@Override
+	protected double getScoreOnAccess(double score) {
+		return 0;
+	}
+
+	@Override
+	protected boolean isRankedByAccess() {
+		return true;
+	}
+
+}
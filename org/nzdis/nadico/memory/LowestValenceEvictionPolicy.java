@@ -0,0 +1,31 @@
+package org.nzdis.nadico.memory;
+
+/**
+ * Eviction policy evicting the entry with the lowest absolute value (valence), so that rare experiences
+ * of high positive or negative valence (e.g., sanctions) are retained in favour of neutral routine observations.
+ * Values are compared in undecayed units, i.e., entries decay towards eviction as they age.
+ * Among entries with equal absolute value, the earliest memorised one is evicted.
+ */
+public class LowestValenceEvictionPolicy extends RankedEvictionPolicy {
+
+	@Override
+	protected double getScoreOnMemorisation(float value) {
+		return Math.abs(value);
+	}
+
+	@Override
+	protected double getScoreOnAccess(double score) {
+		return score;
+	}
+
+	@Override
+	protected boolean isRankedByAccess() {
+		return false;
+	}
+
+	@Override
+	public void valuesScaled(float factor) {
+		scaleScores(Math.abs(factor));
+	}
+
+}
@@ -0,0 +1,162 @@
+package org.nzdis.nadico.memory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Index of memory slots by marker (category and marker values) of memorised expressions.
+ * Markers are dictionary-encoded to integer ids, each of which is associated with a bitmap
+ * over memory slots (see {@link SlotBitmap}), so that queries constrained on multiple markers
+ * are resolved by bitmap intersection. Ids of markers no longer held by any slot are reused.
+ * Copies share bitmaps with the copied index; bitmaps are copied once modified through a copy.
+ * Used by {@link nAdicoActionMemory}.
+ */
+class MarkerBitmapIndex {
+
+	/**
+	 * Marker ids by marker
+	 */
+	private final HashMap<Entry<String, Object>, Integer> ids;
+
+	/**
+	 * Slot bitmap per marker id (null for unused ids)
+	 */
+	private final ArrayList<SlotBitmap> bitmaps;
+
+	/**
+	 * Unused marker ids
+	 */
+	private final ArrayList<Integer> freeIds;
+
+	/**
+	 * Ids of bitmaps copied or created by this index since copying it (null if index does not share bitmaps with another index)
+	 */
+	private BitSet ownedIds = null;
+
+	MarkerBitmapIndex() {
+		this.ids = new HashMap<>();
+		this.bitmaps = new ArrayList<>();
+		this.freeIds = new ArrayList<>();
+	}
+
+	private MarkerBitmapIndex(final MarkerBitmapIndex index) {
+		this.ids = new HashMap<>(index.ids);
+		this.bitmaps = new ArrayList<>(index.bitmaps);
+		this.freeIds = new ArrayList<>(index.freeIds);
+		this.ownedIds = new BitSet();
+	}
+
+	/**
+	 * Returns a copy of this index, sharing bitmaps with this index (copied upon modification through the copy), 
+	 * so this index must not be modified subsequently.
+	 * @return
+	 */
+	MarkerBitmapIndex copy() {
+		return new MarkerBitmapIndex(this);
+	}
+
+	/**
+	 * Releases bitmaps shared with copied indices (i.e., permits modification in place), 
+	 * once no other index sharing bitmaps with this index is used anymore.
+	 */
+	void releaseSharedBitmaps() {
+		ownedIds = null;
+	}
+
+	/**
+	 * Returns the bitmap of a given marker id for modification, i.e., a copy of it if it is shared with another index.
+	 * @param id Marker id
+	 * @return
+	 */
+	private SlotBitmap ownBitmap(final int id) {
+		SlotBitmap bitmap = bitmaps.get(id);
+		if (ownedIds != null && !ownedIds.get(id)) {
+			bitmap = bitmap.copy();
+			bitmaps.set(id, bitmap);
+			ownedIds.set(id);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Adds a slot for a given marker.
+	 * @param marker Marker
+	 * @param slot Memory slot
+	 */
+	void add(final Entry<String, Object> marker, final int slot) {
+		Integer id = ids.get(marker);
+		if (id == null) {
+			if (freeIds.isEmpty()) {
+				id = bitmaps.size();
+				bitmaps.add(new SlotBitmap());
+			} else {
+				id = freeIds.remove(freeIds.size() - 1);
+				bitmaps.set(id, new SlotBitmap());
+			}
+			if (ownedIds != null) {
+				ownedIds.set(id);
+			}
+			ids.put(marker, id);
+		}
+		ownBitmap(id).set(slot);
+	}
+
+	/**
+	 * Removes a slot for a given marker.
+	 * @param marker Marker
+	 * @param slot Memory slot
+	 */
+	void remove(final Entry<String, Object> marker, final int slot) {
+		Integer id = ids.get(marker);
+		if (id == null) {
+			return;
+		}
+		SlotBitmap bitmap = ownBitmap(id);
+		bitmap.clear(slot);
+		if (bitmap.isEmpty()) {
+			ids.remove(marker);
+			bitmaps.set(id, null);
+			freeIds.add(id);
+		}
+	}
+
+	/**
+	 * Returns the slot bitmap of a given marker.
+	 * @param marker Marker
+	 * @return Bitmap, or null if marker is not held by any slot
+	 */
+	SlotBitmap getBitmap(final Entry<String, Object> marker) {
+		Integer id = ids.get(marker);
+		return id == null ? null : bitmaps.get(id);
+	}
+
+	/**
+	 * Returns the slot bitmaps of all given markers.
+	 * @param markers Markers
+	 * @return Bitmaps, or null if any marker is not held by any slot
+	 */
+	List<SlotBitmap> getBitmaps(final List<Entry<String, Object>> markers) {
+		ArrayList<SlotBitmap> result = new ArrayList<>(markers.size());
+		for (Entry<String, Object> marker: markers) {
+			SlotBitmap bitmap = getBitmap(marker);
+			if (bitmap == null) {
+				return null;
+			}
+			result.add(bitmap);
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all markers.
+	 */
+	void clear() {
+		ids.clear();
+		bitmaps.clear();
+		freeIds.clear();
+	}
+
+}
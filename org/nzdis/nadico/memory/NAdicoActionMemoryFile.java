@@ -0,0 +1,323 @@
+package org.nzdis.nadico.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nzdis.nadico.NAdicoExpression;
+import org.nzdis.nadico.NAdicoExpressionCodec;
+import org.nzdis.nadico.NAdicoGeneralizer;
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+
+/**
+ * Compact binary snapshot format for action memories, written and read via memory-mapped files.
+ * A file holds any number of memories (e.g., of all agents of a simulation) and covers memory entries
+ * (in order of memorisation, so that restored memories evict entries in the original order; individual 
+ * observations in compact mode),
+ * values, decay state (including the state of time-based decay), logical time, compact mode and the sketch retaining 
+ * evicted entries in approximate mode (see {@link nAdicoActionMemory#activateApproximateMode(double, double)}). 
+ * Expressions are encoded once per file (see {@link NAdicoExpressionCodec}).
+ * Restoring is not zero-copy: queries operate on the memories' indices, so each distinct expression is 
+ * decoded once and all entries are replayed (in order of memorisation) into new memories, which takes 
+ * time linear in the number of entries. Restored memories share instances of identical expressions and 
+ * are fully indexed once read.
+ * Note: Generalisers and society-level memories (see {@link SharedNAdicoActionMemory}) are not persisted.
+ * Memories with eviction policy (see {@link nAdicoActionMemory#setEvictionPolicy(NAdicoEvictionPolicy)}) are rejected, 
+ * since policy state is not persisted. Sketches identify evicted expressions by hash code, which needs to be stable
+ * across program runs (i.e., markers and properties need value-based hash codes) for restored sketches to be matched.
+ *
+ * Format (big-endian):
+ * <ul>
+ * <li>Header: magic number, format version</li>
+ * <li>Expressions: number of expressions, encoded expressions</li>
+ * <li>Memories: number of memories, per memory: owner, number of memory entries, decay factor,
+ * half-life (-1 if deactivated), logical time, aging half-life (-1 if time-based decay has never been activated), 
+ * aging time, mode flags (compact mode, approximate mode), in approximate mode: sketch width, depth, number of 
+ * values, counts and sums (in undecayed units) per counter, number of entries, per entry: expression id (-1 for null key),
+ * value flag, value in undecayed units and timestamp</li>
+ * </ul>
+ * Only files of the current format version can be read.
+ */
+public final class NAdicoActionMemoryFile {
+
+	/**
+	 * Magic number identifying memory files
+	 */
+	private static final int MAGIC_NUMBER = 0x4E41444D;
+
+	/**
+	 * Format version
+	 */
+	private static final int VERSION = 3;
+
+	/**
+	 * Mode flag indicating compact mode
+	 */
+	private static final byte FLAG_COMPACT_MODE = 1;
+
+	/**
+	 * Mode flag indicating approximate mode (followed by sketch)
+	 */
+	private static final byte FLAG_APPROXIMATE_MODE = 2;
+
+	/**
+	 * Size of sketch record excluding counters (width, depth, number of values)
+	 */
+	private static final int SKETCH_HEADER_SIZE = 4 + 4 + 8;
+
+	/**
+	 * Size of sketch counter (count, sum)
+	 */
+	private static final int SKETCH_COUNTER_SIZE = 4 + 8;
+
+	/**
+	 * Size of entry record (expression id, value flag, value, timestamp)
+	 */
+	private static final int ENTRY_SIZE = 4 + 1 + 4 + 8;
+
+	/**
+	 * Size of memory record excluding owner and entries (number of memory entries, decay factor,
+	 * half-life, logical time, aging half-life, aging time, mode flags, number of entries)
+	 */
+	private static final int MEMORY_HEADER_SIZE = 4 + 8 + 4 + 8 + 4 + 8 + 1 + 4;
+
+	private NAdicoActionMemoryFile() {
+
+	}
+
+	/**
+	 * Writes the given memories to a given file (replacing existing content). Snapshots are taken
+	 * from memories prior to writing (see {@link nAdicoActionMemory#snapshot()}), so that memories
+	 * can be written while being modified concurrently (if thread-safe, see {@link ConcurrentNAdicoActionMemory}).
+	 * Memories with eviction policy are rejected (see {@link NAdicoActionMemoryFile}).
+	 * @param file File
+	 * @param memories Memories (with unique owners)
+	 */
+	public static void write(final Path file, final Collection<? extends nAdicoActionMemory<?, ?, ?>> memories) {
+		ArrayList<nAdicoActionMemory<?, ?, ?>> snapshots = new ArrayList<>(memories.size());
+		ArrayList<NAdicoActionMemorySnapshot<?, ?, ?>> takenSnapshots = new ArrayList<>(memories.size());
+		try {
+			for (nAdicoActionMemory<?, ?, ?> memory: memories) {
+				if (memory instanceof NAdicoActionMemorySnapshot) {
+					snapshots.add(memory);
+				} else {
+					NAdicoActionMemorySnapshot<?, ?, ?> snapshot = memory.snapshot();
+					takenSnapshots.add(snapshot);
+					snapshots.add(snapshot);
+				}
+			}
+			writeMemories(file, snapshots);
+		} finally {
+			for (NAdicoActionMemorySnapshot<?, ?, ?> snapshot: takenSnapshots) {
+				snapshot.release();
+			}
+		}
+	}
+
+	/**
+	 * Writes a given memory to a given file (replacing existing content).
+	 * @param file File
+	 * @param memory Memory
+	 */
+	public static void write(final Path file, final nAdicoActionMemory<?, ?, ?> memory) {
+		ArrayList<nAdicoActionMemory<?, ?, ?>> memories = new ArrayList<>(1);
+		memories.add(memory);
+		write(file, memories);
+	}
+
+	/**
+	 * Restores all memories held in a given file.
+	 * @param file File
+	 * @param generalizers Generalisers by owner, assigned to restored memories (may be null)
+	 * @return Restored memories by owner (in order of writing)
+	 */
+	public static <A extends Attributes, I extends Aim, C extends Conditions> LinkedHashMap<String, nAdicoActionMemory<A, I, C>> read(
+			final Path file, final Map<String, NAdicoGeneralizer> generalizers) {
+		final ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Reading of memory file " + file + " failed.", e);
+		}
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC_NUMBER) {
+			throw new RuntimeException("File " + file + " is not a memory file.");
+		}
+		final int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new RuntimeException("Unsupported version " + version + " of memory file " + file);
+		}
+		// Decode each expression once
+		final NAdicoExpression<A, I, C>[] expressions = new NAdicoExpression[buffer.getInt()];
+		for (int i = 0; i < expressions.length; i++) {
+			expressions[i] = NAdicoExpressionCodec.decode(buffer, null);
+		}
+		final int numberOfMemories = buffer.getInt();
+		LinkedHashMap<String, nAdicoActionMemory<A, I, C>> memories = new LinkedHashMap<>();
+		for (int i = 0; i < numberOfMemories; i++) {
+			final String owner = readString(buffer);
+			final int numberOfSlots = buffer.getInt();
+			final double decayFactor = buffer.getDouble();
+			final float halfLife = buffer.getFloat();
+			final long currentTime = buffer.getLong();
+			final float agingHalfLife = buffer.getFloat();
+			final long agingTime = buffer.getLong();
+			final byte flags = buffer.get();
+			CountSumSketch sketch = null;
+			if ((flags & FLAG_APPROXIMATE_MODE) != 0) {
+				final int width = buffer.getInt();
+				final int depth = buffer.getInt();
+				final long numberOfValues = buffer.getLong();
+				final int[] counts = new int[width * depth];
+				final double[] sums = new double[width * depth];
+				for (int counter = 0; counter < counts.length; counter++) {
+					counts[counter] = buffer.getInt();
+					sums[counter] = buffer.getDouble();
+				}
+				sketch = new CountSumSketch(width, depth, counts, sums, numberOfValues);
+			}
+			nAdicoActionMemory<A, I, C> memory = new nAdicoActionMemory<>(numberOfSlots, owner,
+					generalizers == null ? null : generalizers.get(owner));
+			if ((flags & FLAG_COMPACT_MODE) != 0) {
+				// Observations are aggregated as restored
+				memory.activateCompactMode();
+			}
+			final int numberOfEntries = buffer.getInt();
+			for (int j = 0; j < numberOfEntries; j++) {
+				final int id = buffer.getInt();
+				final boolean hasValue = buffer.get() != 0;
+				final float value = buffer.getFloat();
+				final long timestamp = buffer.getLong();
+				memory.restoreEntry(id == -1 ? null : expressions[id], hasValue ? value : null, timestamp);
+			}
+			memory.restoreTime(decayFactor, halfLife == -1f ? null : halfLife, currentTime, 
+					agingHalfLife == -1f ? null : agingHalfLife, agingTime);
+			if (sketch != null) {
+				memory.restoreEvictionSketch(sketch);
+			}
+			memories.put(owner, memory);
+		}
+		return memories;
+	}
+
+	private static void writeMemories(final Path file, final ArrayList<nAdicoActionMemory<?, ?, ?>> memories) {
+		// Assign ids to distinct expressions (identified by encoding)
+		final IdentityHashMap<NAdicoExpression<?, ?, ?>, Integer> ids = new IdentityHashMap<>();
+		final HashMap<ByteBuffer, Integer> idsByEncoding = new HashMap<>();
+		final ArrayList<byte[]> encodings = new ArrayList<>();
+		final ArrayList<int[]> entries = new ArrayList<>(memories.size());
+		long size = 4 + 4 + 4 + 4;
+		for (nAdicoActionMemory<?, ?, ?> memory: memories) {
+			if (memory.getEvictionPolicy() != null) {
+				throw new RuntimeException("Memory of owner " + memory.getMemoryOwner() + " uses an eviction policy, whose state cannot be persisted.");
+			}
+			final int[] memoryEntries = memory.getEntriesInMemorisationOrder();
+			for (int entry: memoryEntries) {
+				NAdicoExpression<?, ?, ?> key = memory.getEntryKey(entry);
+				if (key == null || ids.containsKey(key)) {
+					continue;
+				}
+				byte[] encoded = NAdicoExpressionCodec.encode(key);
+				Integer id = idsByEncoding.get(ByteBuffer.wrap(encoded));
+				if (id == null) {
+					id = encodings.size();
+					encodings.add(encoded);
+					idsByEncoding.put(ByteBuffer.wrap(encoded), id);
+					size += encoded.length;
+				}
+				ids.put(key, id);
+			}
+			entries.add(memoryEntries);
+			size += getEncodedLength(memory.getMemoryOwner()) + MEMORY_HEADER_SIZE
+					+ (long) memoryEntries.length * ENTRY_SIZE;
+			final CountSumSketch sketch = memory.getEvictionSketch();
+			if (sketch != null) {
+				size += SKETCH_HEADER_SIZE + (long) sketch.getWidth() * sketch.getDepth() * SKETCH_COUNTER_SIZE;
+			}
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new RuntimeException("Memories exceed maximum size of memory file (Size: " + size + " bytes).");
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+			buffer.putInt(MAGIC_NUMBER);
+			buffer.putInt(VERSION);
+			buffer.putInt(encodings.size());
+			for (byte[] encoded: encodings) {
+				buffer.put(encoded);
+			}
+			buffer.putInt(memories.size());
+			for (int i = 0; i < memories.size(); i++) {
+				nAdicoActionMemory<?, ?, ?> memory = memories.get(i);
+				writeString(buffer, memory.getMemoryOwner());
+				buffer.putInt(memory.getNumberOfSlots());
+				buffer.putDouble(memory.getDecayFactor());
+				buffer.putFloat(memory.getHalfLife() == null ? -1f : memory.getHalfLife());
+				buffer.putLong(memory.getCurrentTime());
+				buffer.putFloat(memory.getAgingHalfLife() == null ? -1f : memory.getAgingHalfLife());
+				buffer.putLong(memory.getAgingTime());
+				final CountSumSketch sketch = memory.getEvictionSketch();
+				buffer.put((byte) ((memory.isCompactMode() ? FLAG_COMPACT_MODE : 0) | (sketch != null ? FLAG_APPROXIMATE_MODE : 0)));
+				if (sketch != null) {
+					buffer.putInt(sketch.getWidth());
+					buffer.putInt(sketch.getDepth());
+					buffer.putLong(sketch.getNumberOfValues());
+					for (int counter = 0; counter < sketch.getWidth() * sketch.getDepth(); counter++) {
+						buffer.putInt(sketch.getCount(counter));
+						buffer.putDouble(sketch.getSum(counter));
+					}
+				}
+				buffer.putInt(entries.get(i).length);
+				for (int entry: entries.get(i)) {
+					NAdicoExpression<?, ?, ?> key = memory.getEntryKey(entry);
+					Float value = memory.getUndecayedEntryValue(entry);
+					buffer.putInt(key == null ? -1 : ids.get(key));
+					buffer.put((byte) (value == null ? 0 : 1));
+					buffer.putFloat(value == null ? 0f : value);
+					buffer.putLong(memory.getEntryTimestamp(entry));
+				}
+			}
+			buffer.force();
+		} catch (IOException e) {
+			throw new RuntimeException("Writing of memory file " + file + " failed.", e);
+		}
+	}
+
+	private static int getEncodedLength(final String value) {
+		return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+	}
+
+	private static void writeString(final ByteBuffer buffer, final String value) {
+		if (value == null) {
+			buffer.putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.nzdis.nadico.memory;
+
+import org.nzdis.nadico.NAdicoExpression;
+import org.nzdis.nadico.NAdicoGeneralizer;
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+
+/**
+ * Immutable snapshot of an {@link nAdicoActionMemory} (see {@link nAdicoActionMemory#snapshot()}).
+ * Supports all query methods of the memory it has been taken from and reflects that memory's
+ * state at the time the snapshot was taken. Memory entries and indices are shared with the
+ * originating memory until it is modified (copy-on-write), so that taking a snapshot does not
+ * copy memory content. Operations modifying memory are not supported.
+ * Snapshots should be released once no longer needed, which avoids copying of shared state
+ * upon the next modification of the originating memory.
+ * Index structures (posting lists, bitmaps and trie nodes) remain shared with the originating memory
+ * beyond that and are only copied once the memory modifies them.
+ */
+public class NAdicoActionMemorySnapshot<A extends Attributes, I extends Aim, C extends Conditions> extends nAdicoActionMemory<A, I, C> {
+
+	/**
+	 * Memory the snapshot has been taken from (null once released)
+	 */
+	private nAdicoActionMemory<A, I, C> memory;
+
+	/**
+	 * Epoch of memory state the snapshot has been taken in
+	 */
+	private final long epoch;
+
+	/**
+	 * Indicates whether compact mode was activated on the memory when the snapshot was taken
+	 */
+	private final boolean compactMode;
+
+	/**
+	 * Eviction policy of the memory when the snapshot was taken (null if none)
+	 */
+	private final NAdicoEvictionPolicy evictionPolicyOfMemory;
+
+	/**
+	 * Instantiates a snapshot for a given memory. State is shared by the memory subsequently.
+	 * @param memory Memory the snapshot is taken from
+	 * @param owner Owner of memory
+	 * @param generalizer Generaliser of memory
+	 * @param epoch Epoch of memory state
+	 * @param compactMode Indicates whether compact mode is activated on memory
+	 * @param evictionPolicy Eviction policy of memory (null if none)
+	 */
+	NAdicoActionMemorySnapshot(final nAdicoActionMemory<A, I, C> memory, final String owner, final NAdicoGeneralizer generalizer, final long epoch,
+			final boolean compactMode, final NAdicoEvictionPolicy evictionPolicy) {
+		super(0, owner, generalizer);
+		this.memory = memory;
+		this.epoch = epoch;
+		this.compactMode = compactMode;
+		this.evictionPolicyOfMemory = evictionPolicy;
+	}
+
+	/**
+	 * Indicates whether compact mode was activated on the memory when the snapshot was taken. 
+	 * Snapshots share the slots of the memory, i.e., hold all observations of an expression in one slot in compact mode.
+	 */
+	@Override
+	public boolean isCompactMode() {
+		return compactMode;
+	}
+
+	/**
+	 * Returns the eviction policy of the memory when the snapshot was taken (not informed about queries on the snapshot).
+	 */
+	@Override
+	public NAdicoEvictionPolicy getEvictionPolicy() {
+		return evictionPolicyOfMemory;
+	}
+
+	/**
+	 * Releases the snapshot. Subsequent operations on the snapshot are not supported.
+	 */
+	public void release() {
+		if (memory == null) {
+			return;
+		}
+		memory.snapshotReleased(epoch);
+		memory = null;
+		dropSharedState();
+	}
+
+	/**
+	 * Indicates whether the snapshot has been released.
+	 * @return
+	 */
+	public boolean isReleased() {
+		return memory == null;
+	}
+
+	@Override
+	void ensureIndicesAreConsistent() {
+		if (memory == null) {
+			throw new RuntimeException("Memory snapshot of owner " + owner + " has already been released.");
+		}
+		super.ensureIndicesAreConsistent();
+	}
+
+	@Override
+	public void memorize(NAdicoExpression<A, I, C> key, Float value) {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void setNumberOfMemoryEntries(Integer numberOfEntries) {
+		if (memory != null) {
+			throw new RuntimeException("Memory snapshots are read-only.");
+		}
+		// Invoked during instantiation or upon release
+		super.setNumberOfMemoryEntries(numberOfEntries);
+	}
+
+	@Override
+	public void forgetAtRoundEnd(float discountFactor) {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void setHalfLife(Float halfLife) {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void setEvictionPolicy(NAdicoEvictionPolicy evictionPolicy) {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void advanceTime(long timeUnits) {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void activateApproximateMode(double epsilon, double delta) {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void deactivateApproximateMode() {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void activateCompactMode() {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void deactivateCompactMode() {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public void renormaliseValues() {
+		throw new RuntimeException("Memory snapshots are read-only.");
+	}
+
+	@Override
+	public NAdicoMemoryEventStream<A, I, C> openEventStream(int capacity) {
+		throw new RuntimeException("Event streams can only be opened on memories, not on snapshots.");
+	}
+
+	@Override
+	public NAdicoActionMemorySnapshot<A, I, C> snapshot() {
+		throw new RuntimeException("Snapshots can only be taken from memories, not from snapshots.");
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.nzdis.nadico.memory;
+
+/**
+ * Policy selecting the memory entry to be evicted when memorising a new entry in a full {@link nAdicoActionMemory}
+ * (see {@link nAdicoActionMemory#setEvictionPolicy(NAdicoEvictionPolicy)}). Without policy, the memory evicts
+ * entries in insertion order.
+ * Policies are informed about memorised, evicted and accessed (i.e., matched by queries) memory slots and
+ * should maintain a structure that allows selecting victims without scanning the memory.
+ * Values are passed in the memory's internal (undecayed) units, i.e., values of all entries are comparable
+ * irrespective of forgetting and time-based decay; {@link #valuesScaled(float)} is called if values are renormalised, 
+ * and {@link #decayFactorChanged(double)} whenever the factor converting them into effective values changes.
+ * Note: {@link #slotAccessed(int)} may be called concurrently by queries (e.g., on a {@link ConcurrentNAdicoActionMemory}).
+ * Policies can only be used by a single memory.
+ */
+public interface NAdicoEvictionPolicy {
+
+	/**
+	 * Discards all state and prepares the policy for a memory with a given number of slots.
+	 * @param numberOfSlots Number of memory slots
+	 */
+	public void initialise(int numberOfSlots);
+
+	/**
+	 * Called when an entry has been memorised in a given slot.
+	 * @param slot Memory slot
+	 * @param value Value of entry in undecayed units (0 if entry has no value)
+	 */
+	public void slotMemorised(int slot, float value);
+
+	/**
+	 * Called when the entry held in a given slot has been evicted.
+	 * @param slot Memory slot
+	 */
+	public void slotEvicted(int slot);
+
+	/**
+	 * Called when the value of the entry held in a given slot has changed without the entry being 
+	 * memorised anew (e.g., when entries are re-aged upon change of half-life, see {@link nAdicoActionMemory#setHalfLife(Float)}).
+	 * @param slot Memory slot
+	 * @param value New value of entry in undecayed units
+	 */
+	public void slotValueChanged(int slot, float value);
+
+	/**
+	 * Called when the entry held in a given slot has been matched by a query.
+	 * @param slot Memory slot
+	 */
+	public void slotAccessed(int slot);
+
+	/**
+	 * Called when the values of all entries have been multiplied with a given factor (upon renormalisation).
+	 * @param factor Factor
+	 */
+	public void valuesScaled(float factor);
+
+	/**
+	 * Called when the cumulative decay factor of the memory has changed (upon forgetting, advancing time 
+	 * with time-based decay, or renormalisation), i.e., effective value = undecayed value * decay factor. 
+	 * Since the factor is positive, it does not affect the order of values.
+	 * @param decayFactor Cumulative decay factor
+	 */
+	public void decayFactorChanged(double decayFactor);
+
+	/**
+	 * Returns the slot whose entry is to be evicted next. Only called if all slots are occupied.
+	 * @return Memory slot
+	 */
+	public int selectVictim();
+
+}
@@ -0,0 +1,102 @@
+package org.nzdis.nadico.memory;
+
+import org.nzdis.nadico.NAdicoExpression;
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+
+/**
+ * Change of an {@link nAdicoActionMemory}, as delivered by a {@link NAdicoMemoryEventStream}.
+ * Values are effective values (i.e., decayed) at the time of the change.
+ */
+public final class NAdicoMemoryEvent<A extends Attributes, I extends Aim, C extends Conditions> {
+
+	/**
+	 * Entry has been memorised in a slot (old value is null). If the slot held another entry,
+	 * this event is preceded by an {@link #EVICTED} event for that entry.
+	 */
+	public static final int INSERTED = 0;
+
+	/**
+	 * Value of the entry held in a slot has changed (key remains the same).
+	 */
+	public static final int OVERWRITTEN = 1;
+
+	/**
+	 * Entry has been removed from a slot (new value is null), either because it has been
+	 * displaced by a newly memorised entry or because the memory has been reallocated.
+	 */
+	public static final int EVICTED = 2;
+
+	/**
+	 * Values of all entries have been multiplied with a factor (new value), e.g., by forgetting or
+	 * time-based decay. Refers to all slots ({@link #ALL_SLOTS}) and carries no key; old value is 1.
+	 */
+	public static final int DECAYED = 3;
+
+	/**
+	 * Slot of events referring to the entire memory
+	 */
+	public static final int ALL_SLOTS = -1;
+
+	/**
+	 * Event type ({@link #INSERTED}, {@link #OVERWRITTEN}, {@link #EVICTED}, {@link #DECAYED})
+	 */
+	public final int type;
+
+	/**
+	 * Memory slot ({@link #ALL_SLOTS} for decay)
+	 */
+	public final int slot;
+
+	/**
+	 * Expression held in slot (null for decay)
+	 */
+	public final NAdicoExpression<A, I, C> key;
+
+	/**
+	 * Value prior to change (null if none)
+	 */
+	public final Float oldValue;
+
+	/**
+	 * Value after change (null if none)
+	 */
+	public final Float newValue;
+
+	/**
+	 * Logical time of memory at which the change occurred (see {@link nAdicoActionMemory#getCurrentTime()})
+	 */
+	public final long time;
+
+	NAdicoMemoryEvent(final int type, final int slot, final NAdicoExpression<A, I, C> key,
+			final Float oldValue, final Float newValue, final long time) {
+		this.type = type;
+		this.slot = slot;
+		this.key = key;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+		this.time = time;
+	}
+
+	@Override
+	public String toString() {
+		String typeName;
+		switch (type) {
+			case INSERTED:
+				typeName = "INSERTED";
+				break;
+			case OVERWRITTEN:
+				typeName = "OVERWRITTEN";
+				break;
+			case EVICTED:
+				typeName = "EVICTED";
+				break;
+			default:
+				typeName = "DECAYED";
+		}
+		return typeName + " [slot=" + slot + ", key=" + key + ", oldValue=" + oldValue +
+				", newValue=" + newValue + ", time=" + time + "]";
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.nzdis.nadico.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+
+/**
+ * Stream of changes of an {@link nAdicoActionMemory} (see {@link nAdicoActionMemory#openEventStream(int)}),
+ * allowing consumers to process memory changes incrementally instead of rescanning the memory.
+ * Events are held in a bounded ring buffer and retrieved in batches using {@link #poll()}.
+ * The memory never blocks on the stream: if the buffer is full, new events are dropped
+ * (see {@link #getNumberOfDroppedEvents()}), in which case consumers need to resynchronise
+ * with the memory content.
+ * Events can be polled from a thread other than the one changing the memory.
+ */
+public class NAdicoMemoryEventStream<A extends Attributes, I extends Aim, C extends Conditions> {
+
+	/**
+	 * Ring buffer of events
+	 */
+	private final NAdicoMemoryEvent<A, I, C>[] buffer;
+
+	/**
+	 * Number of events published into buffer (written by memory only)
+	 */
+	private volatile long tail = 0;
+
+	/**
+	 * Number of events polled from buffer (written by consumer only)
+	 */
+	private volatile long head = 0;
+
+	/**
+	 * Number of events dropped due to full buffer
+	 */
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	/**
+	 * Indicates whether stream has been closed
+	 */
+	private volatile boolean closed = false;
+
+	NAdicoMemoryEventStream(final int capacity) {
+		if (capacity < 1) {
+			throw new RuntimeException("Capacity of memory event stream needs to be positive. Provided capacity: " + capacity);
+		}
+		this.buffer = new NAdicoMemoryEvent[capacity];
+	}
+
+	/**
+	 * Publishes an event (called by memory only).
+	 * @param event Event
+	 */
+	void publish(final NAdicoMemoryEvent<A, I, C> event) {
+		final long currentTail = tail;
+		if (currentTail - head == buffer.length) {
+			droppedEvents.incrementAndGet();
+			return;
+		}
+		buffer[(int)(currentTail % buffer.length)] = event;
+		// Volatile write makes event visible to consumer
+		tail = currentTail + 1;
+	}
+
+	/**
+	 * Returns all pending events (in order of occurrence) and removes them from the stream.
+	 * @return Events (empty if none)
+	 */
+	public List<NAdicoMemoryEvent<A, I, C>> poll() {
+		return poll(buffer.length);
+	}
+
+	/**
+	 * Returns up to a given number of pending events (in order of occurrence) and removes them from the stream.
+	 * @param maxEvents Maximum number of returned events
+	 * @return Events (empty if none)
+	 */
+	public synchronized List<NAdicoMemoryEvent<A, I, C>> poll(final int maxEvents) {
+		final long currentHead = head;
+		final int numberOfEvents = (int)Math.min(Math.max(maxEvents, 0), tail - currentHead);
+		ArrayList<NAdicoMemoryEvent<A, I, C>> events = new ArrayList<>(numberOfEvents);
+		for (int i = 0; i < numberOfEvents; i++) {
+			final int index = (int)((currentHead + i) % buffer.length);
+			events.add(buffer[index]);
+			buffer[index] = null;
+		}
+		// Volatile write releases buffer entries to memory
+		head = currentHead + numberOfEvents;
+		return events;
+	}
+
+	/**
+	 * Returns the number of pending events.
+	 * @return
+	 */
+	public int size() {
+		return (int)(tail - head);
+	}
+
+	/**
+	 * Returns the maximum number of pending events.
+	 * @return
+	 */
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * Returns the number of events dropped because the stream was full.
+	 * @return
+	 */
+	public long getNumberOfDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	/**
+	 * Indicates whether the stream has been closed (see {@link nAdicoActionMemory#closeEventStream(NAdicoMemoryEventStream)}).
+	 * Pending events of closed streams can still be polled.
+	 * @return
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Marks stream as closed (called by memory only).
+	 */
+	void close() {
+		closed = true;
+	}
+
+}
@@ -0,0 +1,207 @@
+package org.nzdis.nadico.memory;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.nzdis.nadico.NAdicoExpression;
+import org.nzdis.nadico.NAdicoGeneralizer;
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+import org.sofosim.environment.memoryTypes.DiscreteNonAggregatingMemory;
+
+/**
+ * Prepared query against an {@link nAdicoActionMemory}. Compiled once from a query expression
+ * and query options (validation, copying of query expression, sequence length and index keys)
+ * and executed repeatedly using {@link nAdicoActionMemory#executeQuery(NAdicoQuery)}.
+ * The generalised form of the query expression is computed upon first execution and
+ * retained as long as the generaliser's configuration does not change.
+ * Note: Query options mirror the parameters of the corresponding query methods in {@link nAdicoActionMemory}.
+ */
+public class NAdicoQuery<A extends Attributes, I extends Aim, C extends Conditions> {
+
+	/**
+	 * Query expression (copy of original expression)
+	 */
+	final NAdicoExpression<A, I, C> statement;
+
+	/**
+	 * Indicates whether the query expression is matched as previous expression (vs. on same level)
+	 */
+	final boolean givenExpressionAsPreviousVsExpressionOnSameLevel;
+
+	/**
+	 * Indicates whether only expressions with maximum value are returned
+	 */
+	final boolean maxOnly;
+
+	/**
+	 * Indicates whether comparison operates on generalised expressions
+	 */
+	final boolean compareGeneralisedStatements;
+
+	/**
+	 * Indicates whether to return complete expressions vs. query sequence with next expression only
+	 */
+	final boolean returnCompleteExpressionVsOnlyNextExpressionInSequence;
+
+	/**
+	 * Strict match on conditions vs. wildcard match
+	 */
+	final boolean strictMatchOnConditionsVsWildcardMatch;
+
+	/**
+	 * Value aggregation strategy
+	 */
+	final int valueAggregationStrategy;
+
+	/**
+	 * Length of query expression sequence
+	 */
+	final int sequenceLength;
+
+	/**
+	 * Activity sequence of query (earliest action first), or null if query is not a sequence of actions
+	 */
+	final List<String> activitySequence;
+
+	/**
+	 * Activity index key of query's leading action
+	 */
+	final String indexKey;
+
+	/**
+	 * Social marker index keys of query's leading action
+	 */
+	final List<Entry<String, Object>> socialMarkerIndexKeys;
+
+	/**
+	 * Social and individual marker index keys of query's leading action (applicable to non-generalised entries)
+	 */
+	final List<Entry<String, Object>> markerIndexKeys;
+
+	/**
+	 * Conditions index keys of query's leading action
+	 */
+	final List<Entry<String, Integer>> conditionsIndexKeys;
+
+	/**
+	 * Generalised query expression (if computed)
+	 */
+	private NAdicoExpression<A, I, C> generalisedStatement = null;
+
+	/**
+	 * Generaliser used to compute generalised query expression
+	 */
+	private NAdicoGeneralizer generalisedBy = null;
+
+	/**
+	 * Generaliser configuration version the generalised query expression is based on
+	 */
+	private int generalisedVersion = -1;
+
+	/**
+	 * Compiles a query for a given expression and query options.
+	 * @param stmt Query expression (copied upon instantiation)
+	 * @param givenExpressionAsPreviousVsExpressionOnSameLevel Indicates whether the given expression should be treated as previous expression only (not on same level)
+	 * @param maxOnly Return only expressions with the maximum value (as opposed to all that match)
+	 * @param compareGeneralisedStatements Indicates whether statements are only compared in the generalised form
+	 * @param returnCompleteExpressionVsOnlyNextExpressionInSequence Indicates whether to return full expression sequence vs. input sequence with next expression element only.
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions.
+	 * @param valueAggregationStrategy Aggregation strategy for returned values. Supports {@link DiscreteNonAggregatingMemory#AGGREGATION_COUNT},
+	 * 		{@link DiscreteNonAggregatingMemory#AGGREGATION_SUM}, {@link DiscreteNonAggregatingMemory#AGGREGATION_MEAN}, or {@link DiscreteNonAggregatingMemory#AGGREGATION_MAX}.
+	 */
+	public NAdicoQuery(final NAdicoExpression<A, I, C> stmt, final boolean givenExpressionAsPreviousVsExpressionOnSameLevel,
+			final boolean maxOnly, final boolean compareGeneralisedStatements, final boolean returnCompleteExpressionVsOnlyNextExpressionInSequence,
+			final boolean strictMatchOnConditionsVsWildcardMatch, final int valueAggregationStrategy) {
+		if (valueAggregationStrategy != DiscreteNonAggregatingMemory.AGGREGATION_COUNT &&
+				valueAggregationStrategy != DiscreteNonAggregatingMemory.AGGREGATION_SUM &&
+				valueAggregationStrategy != DiscreteNonAggregatingMemory.AGGREGATION_MEAN &&
+				valueAggregationStrategy != DiscreteNonAggregatingMemory.AGGREGATION_MAX) {
+			throw new RuntimeException("Invalid value aggregation strategy. Provided value: " + valueAggregationStrategy);
+		}
+		this.statement = stmt.makeCopy();
+		this.givenExpressionAsPreviousVsExpressionOnSameLevel = givenExpressionAsPreviousVsExpressionOnSameLevel;
+		this.maxOnly = maxOnly;
+		this.compareGeneralisedStatements = compareGeneralisedStatements;
+		this.returnCompleteExpressionVsOnlyNextExpressionInSequence = returnCompleteExpressionVsOnlyNextExpressionInSequence;
+		this.strictMatchOnConditionsVsWildcardMatch = strictMatchOnConditionsVsWildcardMatch;
+		this.valueAggregationStrategy = valueAggregationStrategy;
+		this.sequenceLength = statement.getTotalExpressionSequenceLength();
+		this.activitySequence = nAdicoActionMemory.getActivitySequence(statement);
+		// Only actions and combinations can be resolved using indices
+		boolean indexable = statement.isAction() || statement.isCombination();
+		this.indexKey = indexable ? nAdicoActionMemory.getIndexKey(statement) : null;
+		this.socialMarkerIndexKeys = indexable ? nAdicoActionMemory.getSocialMarkerIndexKeys(statement) : Collections.<Entry<String, Object>>emptyList();
+		this.markerIndexKeys = indexable ? nAdicoActionMemory.getMarkerIndexKeys(statement, true) : Collections.<Entry<String, Object>>emptyList();
+		this.conditionsIndexKeys = nAdicoActionMemory.getConditionsIndexKeys(statement);
+	}
+
+	/**
+	 * Returns the query expression to be matched against memory entries, i.e., the generalised
+	 * query expression if operating on generalised statements. Generalisation is only repeated if
+	 * the generaliser or its configuration has changed. Synchronised, since prepared queries may be 
+	 * executed concurrently (see {@link ConcurrentNAdicoActionMemory}).
+	 * @param generalizer Generaliser of memory
+	 * @return
+	 */
+	synchronized NAdicoExpression<A, I, C> getMatchStatement(final NAdicoGeneralizer generalizer) {
+		if (!compareGeneralisedStatements) {
+			return statement;
+		}
+		if (generalizer == null) {
+			throw new RuntimeException("NAdicoGeneralizer has not been specified during instantiation of NAdicoMemory.");
+		}
+		if (generalisedStatement == null || generalisedBy != generalizer ||
+				generalisedVersion != generalizer.getGeneralizationConfigurationVersion()) {
+			generalisedStatement = (NAdicoExpression<A, I, C>) generalizer.generalizeExpression(
+					(NAdicoExpression<Attributes<LinkedHashSet<String>>, Aim<Float>, Conditions<NAdicoExpression>>) statement);
+			generalisedBy = generalizer;
+			generalisedVersion = generalizer.getGeneralizationConfigurationVersion();
+		}
+		return generalisedStatement;
+	}
+
+	/**
+	 * Returns a copy of the query expression.
+	 * @return
+	 */
+	public NAdicoExpression<A, I, C> getStatement() {
+		return statement.makeCopy();
+	}
+
+	public boolean isGivenExpressionAsPreviousVsExpressionOnSameLevel() {
+		return givenExpressionAsPreviousVsExpressionOnSameLevel;
+	}
+
+	public boolean isMaxOnly() {
+		return maxOnly;
+	}
+
+	public boolean isCompareGeneralisedStatements() {
+		return compareGeneralisedStatements;
+	}
+
+	public boolean isReturnCompleteExpressionVsOnlyNextExpressionInSequence() {
+		return returnCompleteExpressionVsOnlyNextExpressionInSequence;
+	}
+
+	public boolean isStrictMatchOnConditionsVsWildcardMatch() {
+		return strictMatchOnConditionsVsWildcardMatch;
+	}
+
+	public int getValueAggregationStrategy() {
+		return valueAggregationStrategy;
+	}
+
+	@Override
+	public String toString() {
+		return "NAdicoQuery [statement=" + statement + ", previousVsSameLevel=" + givenExpressionAsPreviousVsExpressionOnSameLevel +
+				", maxOnly=" + maxOnly + ", generalised=" + compareGeneralisedStatements +
+				", completeExpressions=" + returnCompleteExpressionVsOnlyNextExpressionInSequence +
+				", strict=" + strictMatchOnConditionsVsWildcardMatch + ", aggregation=" + valueAggregationStrategy + "]";
+	}
+
+}
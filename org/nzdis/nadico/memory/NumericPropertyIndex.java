@@ -0,0 +1,179 @@
+package org.nzdis.nadico.memory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Sorted index of memory slots by numeric aim properties (e.g., prices or quantities) of memorised actions.
+ * Holds one sorted map from property value to memory slots per property key, so that range and
+ * nearest-value lookups are resolved in logarithmic time (plus the number of returned slots).
+ * Copies share sorted maps and slot sets with the copied index; those are copied once modified through a copy.
+ * Used by {@link nAdicoActionMemory}.
+ */
+class NumericPropertyIndex {
+
+	/**
+	 * Memory slots by property value per property key
+	 */
+	private final HashMap<String, TreeMap<Float, TreeSet<Integer>>> properties;
+
+	/**
+	 * Sorted maps and slot sets copied or created by this index since copying it (null if index does not share those with another index)
+	 */
+	private Set<Object> ownedStructures = null;
+
+	NumericPropertyIndex() {
+		this.properties = new HashMap<>();
+	}
+
+	private NumericPropertyIndex(final NumericPropertyIndex index) {
+		this.properties = new HashMap<>(index.properties);
+		this.ownedStructures = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	}
+
+	/**
+	 * Returns a copy of this index, sharing sorted maps and slot sets with this index (copied upon 
+	 * modification through the copy), so this index must not be modified subsequently.
+	 * @return
+	 */
+	NumericPropertyIndex copy() {
+		return new NumericPropertyIndex(this);
+	}
+
+	/**
+	 * Releases structures shared with copied indices (i.e., permits modification in place), 
+	 * once no other index sharing structures with this index is used anymore.
+	 */
+	void releaseSharedStructures() {
+		ownedStructures = null;
+	}
+
+	/**
+	 * Returns the sorted map of a given property for modification, i.e., a copy of it if it is shared with another index.
+	 * @param property Property key
+	 * @return Sorted map, or null if property is not held by any slot
+	 */
+	private TreeMap<Float, TreeSet<Integer>> ownValues(final String property) {
+		TreeMap<Float, TreeSet<Integer>> values = properties.get(property);
+		if (values != null && ownedStructures != null && !ownedStructures.contains(values)) {
+			values = new TreeMap<>(values);
+			ownedStructures.add(values);
+			properties.put(property, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the slot set of a given property value for modification, i.e., a copy of it if it is shared with another index.
+	 * @param values Owned sorted map of property
+	 * @param value Property value
+	 * @return Slot set, or null if value is not held by any slot
+	 */
+	private TreeSet<Integer> ownSlots(final TreeMap<Float, TreeSet<Integer>> values, final float value) {
+		TreeSet<Integer> slots = values.get(value);
+		if (slots != null && ownedStructures != null && !ownedStructures.contains(slots)) {
+			slots = new TreeSet<>(slots);
+			ownedStructures.add(slots);
+			values.put(value, slots);
+		}
+		return slots;
+	}
+
+	/**
+	 * Registers a structure created by this index as owned.
+	 * @param structure Sorted map or slot set
+	 */
+	private void own(final Object structure) {
+		if (ownedStructures != null) {
+			ownedStructures.add(structure);
+		}
+	}
+
+	/**
+	 * Adds a slot holding a given property value.
+	 * @param property Property key
+	 * @param value Property value
+	 * @param slot Memory slot
+	 */
+	void add(final String property, final float value, final int slot) {
+		TreeMap<Float, TreeSet<Integer>> values = ownValues(property);
+		if (values == null) {
+			values = new TreeMap<>();
+			own(values);
+			properties.put(property, values);
+		}
+		TreeSet<Integer> slots = ownSlots(values, value);
+		if (slots == null) {
+			slots = new TreeSet<>();
+			own(slots);
+			values.put(value, slots);
+		}
+		slots.add(slot);
+	}
+
+	/**
+	 * Removes a slot holding a given property value.
+	 * @param property Property key
+	 * @param value Property value
+	 * @param slot Memory slot
+	 */
+	void remove(final String property, final float value, final int slot) {
+		TreeMap<Float, TreeSet<Integer>> values = ownValues(property);
+		if (values == null) {
+			return;
+		}
+		TreeSet<Integer> slots = ownSlots(values, value);
+		if (slots == null) {
+			return;
+		}
+		slots.remove(slot);
+		if (slots.isEmpty()) {
+			values.remove(value);
+			if (values.isEmpty()) {
+				properties.remove(property);
+			}
+		}
+	}
+
+	/**
+	 * Returns the slots holding a value of a given property within given bounds (inclusive).
+	 * @param property Property key
+	 * @param lowerBound Lower bound
+	 * @param upperBound Upper bound
+	 * @return Slots in ascending order (empty if none)
+	 */
+	TreeSet<Integer> getSlotsInRange(final String property, final float lowerBound, final float upperBound) {
+		TreeSet<Integer> result = new TreeSet<>();
+		TreeMap<Float, TreeSet<Integer>> values = properties.get(property);
+		if (values == null || lowerBound > upperBound) {
+			return result;
+		}
+		for (Collection<Integer> slots: values.subMap(lowerBound, true, upperBound, true).values()) {
+			result.addAll(slots);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the sorted property values (along with the slots holding them) of a given property.
+	 * @param property Property key
+	 * @return Slots by property value, or null if property is not held by any slot
+	 */
+	NavigableMap<Float, TreeSet<Integer>> getValues(final String property) {
+		return properties.get(property);
+	}
+
+	/**
+	 * Removes all properties.
+	 */
+	void clear() {
+		properties.clear();
+	}
+
+}
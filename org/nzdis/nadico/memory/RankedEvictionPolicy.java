@@ -0,0 +1,144 @@
+package org.nzdis.nadico.memory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Base class for eviction policies that rank occupied memory slots by a score and evict the slot with the
+ * lowest score. Ties are broken by tick (i.e., the logical time of the last update of the slot's score, or of its
+ * memorisation if {@link #isRankedByAccess()} is false), then by slot. Slots are held in a sorted set, so that
+ * updates and victim selection take logarithmic time.
+ */
+public abstract class RankedEvictionPolicy implements NAdicoEvictionPolicy {
+
+	/**
+	 * Score per memory slot
+	 */
+	private double[] scores = new double[0];
+
+	/**
+	 * Tick of last update per memory slot
+	 */
+	private long[] ticks = new long[0];
+
+	/**
+	 * Occupied memory slots in ascending order of score, tick and slot
+	 */
+	private final TreeSet<Integer> ranking = new TreeSet<>(new Comparator<Integer>() {
+		@Override
+		public int compare(Integer slot1, Integer slot2) {
+			int result = Double.compare(scores[slot1], scores[slot2]);
+			if (result == 0) {
+				result = Long.compare(ticks[slot1], ticks[slot2]);
+			}
+			return result == 0 ? Integer.compare(slot1, slot2) : result;
+		}
+	});
+
+	/**
+	 * Logical clock advanced with every update
+	 */
+	private long clock = 0;
+
+	/**
+	 * Returns the score of an entry upon memorisation.
+	 * @param value Value in undecayed units
+	 * @return
+	 */
+	protected abstract double getScoreOnMemorisation(float value);
+
+	/**
+	 * Returns the score of an entry upon access by a query.
+	 * @param score Previous score
+	 * @return
+	 */
+	protected abstract double getScoreOnAccess(double score);
+
+	/**
+	 * Indicates whether scores are updated upon access (else accesses are ignored).
+	 * @return
+	 */
+	protected abstract boolean isRankedByAccess();
+
+	@Override
+	public synchronized void initialise(int numberOfSlots) {
+		ranking.clear();
+		scores = new double[numberOfSlots];
+		ticks = new long[numberOfSlots];
+		clock = 0;
+	}
+
+	@Override
+	public synchronized void slotMemorised(int slot, float value) {
+		ranking.remove(slot);
+		ticks[slot] = ++clock;
+		scores[slot] = getScoreOnMemorisation(value);
+		ranking.add(slot);
+	}
+
+	@Override
+	public synchronized void slotEvicted(int slot) {
+		ranking.remove(slot);
+	}
+
+	@Override
+	public synchronized void slotValueChanged(int slot, float value) {
+		// Scores of policies ranking by access do not depend on values
+		if (isRankedByAccess() || !ranking.remove(slot)) {
+			return;
+		}
+		scores[slot] = getScoreOnMemorisation(value);
+		ranking.add(slot);
+	}
+
+	@Override
+	public synchronized void slotAccessed(int slot) {
+		if (!isRankedByAccess() || !ranking.remove(slot)) {
+			return;
+		}
+		ticks[slot] = ++clock;
+		scores[slot] = getScoreOnAccess(scores[slot]);
+		ranking.add(slot);
+	}
+
+	@Override
+	public void valuesScaled(float factor) {
+
+	}
+
+	@Override
+	public void decayFactorChanged(double decayFactor) {
+		// Decay does not change the order of values and hence of scores
+	}
+
+	/**
+	 * Multiplies the scores of all occupied slots with a given factor and reorders slots accordingly.
+	 * @param factor Factor
+	 */
+	protected synchronized void scaleScores(double factor) {
+		ArrayList<Integer> slots = new ArrayList<>(ranking);
+		ranking.clear();
+		for (Integer slot: slots) {
+			scores[slot] *= factor;
+			ranking.add(slot);
+		}
+	}
+
+	@Override
+	public synchronized int selectVictim() {
+		if (ranking.isEmpty()) {
+			throw new RuntimeException("Eviction policy " + getClass().getSimpleName() + " does not hold any memory slots.");
+		}
+		return ranking.first();
+	}
+
+	/**
+	 * Returns the number of occupied slots ranked by this policy.
+	 * @return
+	 */
+	public synchronized int size() {
+		return ranking.size();
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.nzdis.nadico.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+import org.nzdis.nadico.NAdicoGeneralizer;
+import org.nzdis.nadico.components.Aim;
+import org.nzdis.nadico.components.Attributes;
+import org.nzdis.nadico.components.Conditions;
+
+/**
+ * Society-level action memory storing each observed action once across all owners.
+ * Each owner operates on a partition (see {@link #getPartition(String)}), which is a regular
+ * {@link nAdicoActionMemory} with its own values, counts and memory window, but holds the shared
+ * instance of each memorised expression (and of its generalised form), so that expressions observed
+ * by many agents are not stored repeatedly. Shared expressions are retained as long as any partition
+ * (or snapshot) refers to them.
+ * Note: Partitions are complete memories rather than views, i.e., each partition holds its own memory 
+ * array and indices (a few references and primitives per slot). Only expressions are shared, which 
+ * dominate the footprint of memories holding the same observations for many owners.
+ * Shared expressions are copies held by this memory (see {@link ExpressionInterner}), so memorised instances 
+ * remain owned by callers; memorised expressions returned by partitions (e.g., by queries on non-generalised statements) 
+ * are shared and must not be modified, while generalised expressions are returned as copies.
+ */
+public class SharedNAdicoActionMemory<A extends Attributes, I extends Aim, C extends Conditions> {
+
+	/**
+	 * Shared instances of memorised expressions (discarded once no longer memorised by any partition)
+	 */
+	private final ExpressionInterner<A, I, C> interner = new ExpressionInterner<>();
+
+	/**
+	 * Partitions by owner
+	 */
+	private final LinkedHashMap<String, nAdicoActionMemory<A, I, C>> partitions = new LinkedHashMap<>();
+
+	/**
+	 * Returns the interner holding the shared instances of expressions memorised by partitions.
+	 * @return
+	 */
+	ExpressionInterner<A, I, C> getInterner() {
+		return interner;
+	}
+
+	/**
+	 * Adds a partition for a given owner.
+	 * @param owner Owner of partition
+	 * @param numberOfEntries Number of memory entries of partition
+	 * @param generalizer Generaliser of owner (may be null)
+	 * @return Partition
+	 */
+	public synchronized nAdicoActionMemory<A, I, C> addPartition(final String owner, final Integer numberOfEntries, final NAdicoGeneralizer generalizer) {
+		if (partitions.containsKey(owner)) {
+			throw new RuntimeException("Shared action memory already holds partition for owner " + owner);
+		}
+		nAdicoActionMemory<A, I, C> partition = new nAdicoActionMemory<>(numberOfEntries, owner, generalizer);
+		partition.setSharedMemory(this);
+		partitions.put(owner, partition);
+		return partition;
+	}
+
+	/**
+	 * Returns the partition of a given owner.
+	 * @param owner Owner
+	 * @return Partition, or null if no partition has been added for owner
+	 */
+	public synchronized nAdicoActionMemory<A, I, C> getPartition(final String owner) {
+		return partitions.get(owner);
+	}
+
+	/**
+	 * Removes the partition of a given owner. Expressions only memorised by this partition
+	 * are discarded once the partition is no longer referenced.
+	 * @param owner Owner
+	 * @return Removed partition, or null if no partition has been added for owner
+	 */
+	public synchronized nAdicoActionMemory<A, I, C> removePartition(final String owner) {
+		nAdicoActionMemory<A, I, C> partition = partitions.remove(owner);
+		if (partition != null) {
+			partition.setSharedMemory(null);
+		}
+		return partition;
+	}
+
+	/**
+	 * Returns all partitions.
+	 * @return
+	 */
+	public synchronized Collection<nAdicoActionMemory<A, I, C>> getPartitions() {
+		return Collections.unmodifiableCollection(new ArrayList<>(partitions.values()));
+	}
+
+	/**
+	 * Returns the number of distinct expressions currently held (including generalised expressions).
+	 * @return
+	 */
+	public int getNumberOfSharedExpressions() {
+		return interner.size();
+	}
+
+}
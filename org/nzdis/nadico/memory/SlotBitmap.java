@@ -0,0 +1,117 @@
+package org.nzdis.nadico.memory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bitmap over memory slots, used as posting list of the marker index of {@link nAdicoActionMemory}.
+ * Only words up to the highest slot ever set are allocated, so that bitmaps of markers held by
+ * few (early) slots remain small. Intersections of bitmaps are computed word-wise.
+ */
+class SlotBitmap {
+
+	/**
+	 * Bits per memory slot (one bit per slot)
+	 */
+	private long[] words = new long[0];
+
+	/**
+	 * Number of set bits
+	 */
+	private int cardinality = 0;
+
+	/**
+	 * Returns a copy of this bitmap.
+	 * @return
+	 */
+	SlotBitmap copy() {
+		SlotBitmap copy = new SlotBitmap();
+		copy.words = words.clone();
+		copy.cardinality = cardinality;
+		return copy;
+	}
+
+	/**
+	 * Sets the bit of a given slot.
+	 * @param slot Memory slot
+	 */
+	void set(final int slot) {
+		final int word = slot >>> 6;
+		if (word >= words.length) {
+			words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+		}
+		if ((words[word] & (1L << slot)) == 0) {
+			words[word] |= 1L << slot;
+			cardinality++;
+		}
+	}
+
+	/**
+	 * Clears the bit of a given slot.
+	 * @param slot Memory slot
+	 */
+	void clear(final int slot) {
+		final int word = slot >>> 6;
+		if (word < words.length && (words[word] & (1L << slot)) != 0) {
+			words[word] &= ~(1L << slot);
+			cardinality--;
+		}
+	}
+
+	/**
+	 * Indicates whether the bit of a given slot is set.
+	 * @param slot Memory slot
+	 * @return
+	 */
+	boolean get(final int slot) {
+		final int word = slot >>> 6;
+		return word < words.length && (words[word] & (1L << slot)) != 0;
+	}
+
+	/**
+	 * Returns the number of set bits.
+	 * @return
+	 */
+	int getCardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * Indicates whether no bit is set.
+	 * @return
+	 */
+	boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	/**
+	 * Returns the slots set in all given bitmaps.
+	 * @param bitmaps Bitmaps (at least one)
+	 * @return Slots in ascending order
+	 */
+	static int[] intersect(final List<SlotBitmap> bitmaps) {
+		int length = Integer.MAX_VALUE;
+		int maxCardinality = Integer.MAX_VALUE;
+		for (SlotBitmap bitmap: bitmaps) {
+			length = Math.min(length, bitmap.words.length);
+			maxCardinality = Math.min(maxCardinality, bitmap.cardinality);
+		}
+		int[] slots = new int[maxCardinality];
+		int ct = 0;
+		for (int i = 0; i < length; i++) {
+			long word = -1L;
+			for (SlotBitmap bitmap: bitmaps) {
+				word &= bitmap.words[i];
+				if (word == 0) {
+					break;
+				}
+			}
+			while (word != 0) {
+				slots[ct++] = (i << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return ct == slots.length ? slots : Arrays.copyOf(slots, ct);
+	}
+
+}
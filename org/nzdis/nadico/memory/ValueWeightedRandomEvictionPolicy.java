@@ -0,0 +1,192 @@
+package org.nzdis.nadico.memory;
+
+import java.util.Random;
+
+/**
+ * Eviction policy evicting a random entry, with the probability of eviction weighted by
+ * 1 / (1 + |value|) (effective values, i.e., considering forgetting and time-based decay), so that entries of 
+ * high valence are likely to be retained without deterministically evicting all entries of low valence.
+ * Weights are held in a Fenwick tree (binary indexed tree), so that updates and sampling take logarithmic time. 
+ * Since weights are not proportional to values, they are recomputed upon the next eviction once the decay factor has changed.
+ */
+public class ValueWeightedRandomEvictionPolicy implements NAdicoEvictionPolicy {
+
+	/**
+	 * Random number generator
+	 */
+	private final Random random;
+
+	/**
+	 * Eviction weight per memory slot (0 for empty slots)
+	 */
+	private double[] weights = new double[0];
+
+	/**
+	 * Fenwick tree over weights (1-based)
+	 */
+	private double[] tree = new double[1];
+
+	/**
+	 * Undecayed value per memory slot
+	 */
+	private float[] values = new float[0];
+
+	/**
+	 * Cumulative decay factor of the memory (effective value = undecayed value * decay factor)
+	 */
+	private double decayFactor = 1d;
+
+	/**
+	 * Indicates whether weights need to be recomputed as the decay factor has changed
+	 */
+	private boolean weightsStale = false;
+
+	/**
+	 * Instantiates policy with random seed.
+	 */
+	public ValueWeightedRandomEvictionPolicy() {
+		this.random = new Random();
+	}
+
+	/**
+	 * Instantiates policy with given seed (for reproducible simulations).
+	 * @param seed Seed
+	 */
+	public ValueWeightedRandomEvictionPolicy(long seed) {
+		this.random = new Random(seed);
+	}
+
+	@Override
+	public synchronized void initialise(int numberOfSlots) {
+		weights = new double[numberOfSlots];
+		tree = new double[numberOfSlots + 1];
+		values = new float[numberOfSlots];
+		decayFactor = 1d;
+		weightsStale = false;
+	}
+
+	@Override
+	public synchronized void slotMemorised(int slot, float value) {
+		values[slot] = value;
+		setWeight(slot, getWeight(value));
+	}
+
+	@Override
+	public synchronized void slotEvicted(int slot) {
+		setWeight(slot, 0);
+	}
+
+	@Override
+	public synchronized void slotValueChanged(int slot, float value) {
+		values[slot] = value;
+		if (weights[slot] != 0) {
+			setWeight(slot, getWeight(value));
+		}
+	}
+
+	@Override
+	public void slotAccessed(int slot) {
+		// Accesses do not affect eviction
+	}
+
+	@Override
+	public synchronized void valuesScaled(float factor) {
+		for (int slot = 0; slot < weights.length; slot++) {
+			if (weights[slot] != 0) {
+				values[slot] *= factor;
+			}
+		}
+		weightsStale = true;
+	}
+
+	@Override
+	public synchronized void decayFactorChanged(double decayFactor) {
+		if (decayFactor != this.decayFactor) {
+			this.decayFactor = decayFactor;
+			weightsStale = true;
+		}
+	}
+
+	@Override
+	public synchronized int selectVictim() {
+		if (weightsStale) {
+			recomputeWeights();
+		}
+		final double total = getPrefixSum(weights.length);
+		if (!(total > 0)) {
+			throw new RuntimeException("Eviction policy " + getClass().getSimpleName() + " does not hold any memory slots.");
+		}
+		// Descend tree to find slot whose cumulative weight exceeds random target
+		double target = random.nextDouble() * total;
+		int position = 0;
+		for (int step = Integer.highestOneBit(weights.length); step > 0; step >>= 1) {
+			final int next = position + step;
+			if (next <= weights.length && tree[next] <= target) {
+				position = next;
+				target -= tree[next];
+			}
+		}
+		// Guard against rounding errors (target beyond total or slot without weight)
+		int slot = Math.min(position, weights.length - 1);
+		while (slot > 0 && weights[slot] == 0) {
+			slot--;
+		}
+		while (slot < weights.length - 1 && weights[slot] == 0) {
+			slot++;
+		}
+		if (weights[slot] == 0) {
+			throw new RuntimeException("Eviction policy " + getClass().getSimpleName() + " does not hold any memory slots.");
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the eviction weight of an entry with a given value.
+	 * @param value Value in undecayed units
+	 * @return
+	 */
+	private double getWeight(final float value) {
+		return 1 / (1 + Math.abs(value * decayFactor));
+	}
+
+	/**
+	 * Recomputes the weights of all occupied slots based on the current decay factor.
+	 */
+	private void recomputeWeights() {
+		tree = new double[weights.length + 1];
+		for (int slot = 0; slot < weights.length; slot++) {
+			if (weights[slot] != 0) {
+				weights[slot] = 0;
+				setWeight(slot, getWeight(values[slot]));
+			}
+		}
+		weightsStale = false;
+	}
+
+	/**
+	 * Sets the eviction weight of a given slot.
+	 * @param slot Memory slot
+	 * @param weight Weight
+	 */
+	private void setWeight(final int slot, final double weight) {
+		final double delta = weight - weights[slot];
+		weights[slot] = weight;
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Returns the sum of weights of the given number of first slots.
+	 * @param numberOfSlots Number of slots
+	 * @return
+	 */
+	private double getPrefixSum(final int numberOfSlots) {
+		double sum = 0;
+		for (int i = numberOfSlots; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.nzdis.nadico.memory;
 
 import java.util.*;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Map.Entry;
 
 import org.nzdis.nadico.NAdicoExpression;
@@ -27,28 +28,2316 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 	 * Generaliser for NAdico statements
 	 */
 	private NAdicoGeneralizer generalizer = null;
+
+	/**
+	 * Prefix for index keys of combinations (to separate those from activity keys).
+	 */
+	private static final String COMBINATOR_INDEX_PREFIX = "COMBINATOR:";
+
+	/**
+	 * Index of memory slots keyed by the aim activity of memorised expressions
+	 * (or the combinator for combinations). Slots are kept in ascending order to
+	 * retain the aggregation order of a full scan.
+	 */
+	private HashMap<String, TreeSet<Integer>> activityIndex = new HashMap<>();
+
+	/**
+	 * Index of memory slots keyed by the social and individual markers (category and marker values) of 
+	 * the leading action of memorised expressions. Markers are dictionary-encoded and associated with 
+	 * slot bitmaps (see {@link MarkerBitmapIndex}). Combined with the {@link #activityIndex} to resolve
+	 * queries on the same action level.
+	 */
+	private MarkerBitmapIndex markerIndex = new MarkerBitmapIndex();
+
+	/**
+	 * Sorted index of memory slots by numeric aim properties of memorised actions, used to resolve
+	 * range and nearest-value queries on aim properties (see {@link #getNAdicoExpressionsWithAimPropertyInRange(NAdicoExpression, String, float, float, boolean, int)}).
+	 */
+	private NumericPropertyIndex numericPropertyIndex = new NumericPropertyIndex();
+
+	/**
+	 * Prefix for marker index keys of individual markers (to separate those from social markers).
+	 */
+	private static final String INDIVIDUAL_MARKER_INDEX_PREFIX = "INDIVIDUAL:";
+
+	/**
+	 * Index of memory slots keyed by the condition properties (key and hash of value) of memorised
+	 * actions, with actions without conditions held under {@link #NO_CONDITIONS_INDEX_KEY}. Used to
+	 * filter candidates by conditions before performing deep equality checks on condition values
+	 * (e.g., preceding actions). Slots are kept in ascending order.
+	 */
+	private HashMap<Entry<String, Integer>, TreeSet<Integer>> conditionsIndex = new HashMap<>();
+
+	/**
+	 * Conditions index key for actions without conditions
+	 */
+	private static final Entry<String, Integer> NO_CONDITIONS_INDEX_KEY = new SimpleImmutableEntry<>(null, 0);
+
+	/**
+	 * Keys as currently reflected in the indices (per memory slot). Used to detect
+	 * slots that have been overwritten or evicted by the underlying memory.
+	 */
+	private NAdicoExpression<A, I, C>[] indexedKeys = null;
+
+	/**
+	 * Memory entries as currently reflected in the indices (per memory slot). Used to detect
+	 * slots that have been rewritten with an identical (e.g., shared) expression and value.
+	 */
+	private Object[] indexedEntries = null;
+
+	/**
+	 * Values (in undecayed units) as currently reflected in the indices (per memory slot), i.e., the sum of values 
+	 * of the slot's observations in compact mode (see {@link #activateCompactMode()}).
+	 * Together with {@link #indexedKeys} and {@link #indexedHasValue} this forms a primitive mirror 
+	 * of the memory array that all value reads of this class operate on (avoiding unboxing of memorised values). 
+	 * Boxed values in the memory array are only written (and read to detect changes upon memorisation).
+	 * Note: The memory array is owned by {@link DiscreteNonAggregatingMemory} and remains the authoritative 
+	 * store of (boxed) entries, so the mirror adds to the boxed storage rather than replacing it, i.e., 
+	 * it removes boxing from aggregation but does not reduce the memory footprint per entry.
+	 */
+	private float[] indexedValues = null;
+
+	/**
+	 * Indicates per memory slot whether it holds an entry with value (false for empty slots or slots without value).
+	 */
+	private boolean[] indexedHasValue = null;
+
+	/**
+	 * Logical time (see {@link #getCurrentTime()}) at which the entry held in a memory slot has been memorised.
+	 */
+	private long[] indexedTimestamps = null;
+
+	/**
+	 * Memorisation sequence number per memory slot (0 for empty slots), increasing with every memorised entry.
+	 * Determines the order of memorisation irrespective of the relocation of entries by an eviction policy 
+	 * (which renders the order of the underlying ring buffer meaningless), see {@link #getSlotsInMemorisationOrder()}.
+	 */
+	private long[] indexedSequenceNumbers = null;
+
+	/**
+	 * Sequence number assigned to the most recently memorised entry (see {@link #indexedSequenceNumbers}).
+	 */
+	private long lastSequenceNumber = 0;
+
+	/**
+	 * Expression sequence length (see {@link NAdicoExpression#getTotalExpressionSequenceLength()}) per memory slot
+	 * (0 for empty slots and non-actions). Cached upon insertion, so that matching on preceding subsequences 
+	 * does not need to walk the expression chains of memorised actions.
+	 */
+	private int[] indexedSequenceLengths = null;
+
+	/**
+	 * Memory slots holding actions, bucketed by expression sequence length. Used to restrict matching
+	 * on preceding subsequences to actions with sequences longer than the query. Slots are kept in ascending order.
+	 */
+	private TreeMap<Integer, TreeSet<Integer>> sequenceLengthIndex = new TreeMap<>();
+
+	/**
+	 * Trie over the activity sequences of memorised actions (earliest action first), 
+	 * used to resolve queries on preceding action sequences.
+	 */
+	private ActionSequenceTrie sequenceTrie = new ActionSequenceTrie();
+
+	/**
+	 * Memory array the indices have been built for. Used to detect reallocation of
+	 * the memory (e.g., when changing the number of memory entries).
+	 */
+	private Object[] indexedMemoryArray = null;
+
+	/**
+	 * Slot most recently written by the underlying memory in {@link #memorize(NAdicoExpression, Float)}
+	 * (i.e., the position of its ring buffer, irrespective of relocation by an eviction policy).
+	 */
+	private int lastWrittenSlot = -1;
+
+	/**
+	 * Cached generalised expression per memory slot (null if not generalised yet).
+	 * Invalidated when the slot is overwritten or the generaliser configuration changes.
+	 */
+	private NAdicoExpression<A, I, C>[] generalisedKeys = null;
+
+	/**
+	 * Indicates whether the cached generalised expressions are shared between a memory and its snapshots, 
+	 * in which case the cache is copied before being populated or invalidated by either of them.
+	 */
+	private boolean generalisedKeysShared = false;
+
+	/**
+	 * Generaliser configuration version the cached generalised expressions are based on.
+	 */
+	private int generalisedKeysVersion = -1;
+
+	/**
+	 * Aggregated values of memory entries per generalised expression, maintained incrementally 
+	 * once requested (null if not requested yet, or invalidated).
+	 */
+	private HashMap<NAdicoExpression<A, I, C>, GeneralisedAggregate> generalisedAggregates = null;
+
+	/**
+	 * Generalised expression per memory slot as reflected in {@link #generalisedAggregates}.
+	 */
+	private NAdicoExpression<A, I, C>[] aggregatedKeys = null;
+
+	/**
+	 * Indicates whether the maximum of any generalised aggregate may be stale (i.e., needs to be recomputed upon read).
+	 */
+	private boolean staleMaxima = false;
+
+	/**
+	 * Count, sum and maximum of values of memory entries sharing a generalised expression.
+	 */
+	private static class GeneralisedAggregate {
+
+		/**
+		 * Memory slots holding entries with the generalised expression
+		 */
+		final HashSet<Integer> slots = new HashSet<>();
+
+		/**
+		 * Number of entries (exceeds the number of slots in compact mode)
+		 */
+		int count = 0;
+
+		/**
+		 * Sum of values
+		 */
+		float sum = 0f;
+
+		/**
+		 * Maximum value (only valid if not stale)
+		 */
+		float max = 0f;
+
+		/**
+		 * Indicates whether maximum needs to be recomputed (e.g., after removal of maximum entry)
+		 */
+		boolean maxStale = false;
+
+		@Override
+		public String toString() {
+			return count + "/" + sum + "/" + (maxStale ? "?" : max);
+		}
+	}
+
+	/**
+	 * Entry held in a memory slot in compact mode, aggregating all observations of an expression 
+	 * within the memory window (number of observations, as well as count, sum and multiset of their values).
+	 */
+	private class CompactEntry {
+
+		/**
+		 * Expression (shared instance for expressions that are shareable, see {@link nAdicoActionMemory#isShareable(NAdicoExpression)})
+		 */
+		final NAdicoExpression<A, I, C> key;
+
+		/**
+		 * Memory slot holding the entry
+		 */
+		final int slot;
+
+		/**
+		 * Number of observations of the expression (including observations without value)
+		 */
+		int numberOfObservations = 0;
+
+		/**
+		 * Number of observations with value
+		 */
+		int count = 0;
+
+		/**
+		 * Sum of values (in undecayed units)
+		 */
+		double sum = 0d;
+
+		/**
+		 * Number of observations per value (in undecayed units), determining maximum and minimum
+		 */
+		final TreeMap<Float, Integer> values;
+
+		CompactEntry(final NAdicoExpression<A, I, C> key, final int slot) {
+			this.key = key;
+			this.slot = slot;
+			this.values = new TreeMap<>();
+		}
+
+		/**
+		 * Instantiates a copy of a given entry.
+		 * @param entry Entry
+		 */
+		CompactEntry(final CompactEntry entry) {
+			this.key = entry.key;
+			this.slot = entry.slot;
+			this.numberOfObservations = entry.numberOfObservations;
+			this.count = entry.count;
+			this.sum = entry.sum;
+			this.values = new TreeMap<>(entry.values);
+		}
+
+		/**
+		 * Adds an observation with a given value.
+		 * @param value Value in undecayed units (null if observation has no value)
+		 */
+		void add(final Float value) {
+			numberOfObservations++;
+			if (value != null) {
+				count++;
+				sum += value;
+				values.merge(value, 1, Integer::sum);
+			}
+		}
+
+		/**
+		 * Removes an observation with a given value (as previously added).
+		 * @param value Value in undecayed units (null if observation has no value)
+		 */
+		void remove(final Float value) {
+			numberOfObservations--;
+			if (value != null) {
+				count--;
+				// Avoid accumulation of rounding errors once all values are removed
+				sum = count == 0 ? 0d : sum - value;
+				if (values.merge(value, -1, Integer::sum) == 0) {
+					values.remove(value);
+				}
+			}
+		}
+
+		/**
+		 * Removes all observations.
+		 */
+		void clear() {
+			numberOfObservations = 0;
+			count = 0;
+			sum = 0d;
+			values.clear();
+		}
+
+		@Override
+		public String toString() {
+			return count + "/" + sum + "/" + (values.isEmpty() ? "-" : values.lastKey() + "/" + values.firstKey());
+		}
+	}
+
+	/**
+	 * Cumulative decay factor applied by {@link #forgetAtRoundEnd(float)}. Values are held in undecayed 
+	 * units (i.e., effective value = stored value * decay factor), so that forgetting does not need to 
+	 * touch individual memory entries.
+	 */
+	private double decayFactor = 1d;
+
+	/**
+	 * Lower bound for cumulative decay factor before values are renormalised (to avoid loss of precision).
+	 */
+	private static final double DECAY_RENORMALISATION_THRESHOLD = 1e-6;
+
+	/**
+	 * Half-life of memory entries (in logical time units) if time-based decay is activated, else null.
+	 */
+	private Float halfLife = null;
+
+	/**
+	 * Logical time of memory (advanced using {@link #advanceTime(long)}).
+	 */
+	private long currentTime = 0;
+
+	/**
+	 * Half-life based on which time-based decay has been applied to memory entries (retained upon deactivation 
+	 * of time-based decay), or null if time-based decay has never been activated.
+	 */
+	private Float agingHalfLife = null;
+
+	/**
+	 * Logical time up to which time-based decay has been applied to memory entries.
+	 */
+	private long agingTime = 0;
+
+	/**
+	 * Sketch retaining approximate counts and sums (in undecayed units) of entries evicted from memory
+	 * if approximate mode is activated (see {@link #activateApproximateMode(double, double)}), else null.
+	 */
+	private CountSumSketch evictionSketch = null;
+
+	/**
+	 * Policy selecting entries to be evicted if memory is full (see {@link #setEvictionPolicy(NAdicoEvictionPolicy)}),
+	 * or null if entries are evicted in insertion order.
+	 */
+	private NAdicoEvictionPolicy evictionPolicy = null;
+
+	/**
+	 * Compact entries of shareable expressions by expression if compact mode is activated (see {@link #activateCompactMode()}), else null.
+	 */
+	private HashMap<NAdicoExpression<A, I, C>, CompactEntry> compactEntries = null;
+
+	/**
+	 * Compact entry per memory slot (null for empty slots), or null if compact mode is deactivated.
+	 */
+	private CompactEntry[] compactEntryOfSlot = null;
+
+	/**
+	 * Memory slot per observation in compact mode (-1 for observations without expression), held in a ring buffer 
+	 * of the size of the memory, so that observations are evicted in order of memorisation (null if compact mode is deactivated).
+	 */
+	private int[] observationSlots = null;
+
+	/**
+	 * Value (in undecayed units) per observation in compact mode (see {@link #observationSlots}).
+	 */
+	private float[] observationValues = null;
+
+	/**
+	 * Indicates per observation in compact mode whether it has a value (see {@link #observationSlots}).
+	 */
+	private boolean[] observationHasValue = null;
+
+	/**
+	 * Logical time of memorisation per observation in compact mode (see {@link #observationSlots}).
+	 */
+	private long[] observationTimestamps = null;
+
+	/**
+	 * Position of the oldest observation in compact mode (see {@link #observationSlots}).
+	 */
+	private int oldestObservation = 0;
+
+	/**
+	 * Number of observations held in compact mode (see {@link #observationSlots}).
+	 */
+	private int numberOfObservations = 0;
+
+	/**
+	 * Shared instances of expressions memorised in compact mode (null if compact mode has never been activated).
+	 * Partitions of a shared memory use the interner of the shared memory instead (see {@link #getInterner()}).
+	 */
+	private ExpressionInterner<A, I, C> compactInterner = null;
+
+	/**
+	 * Open event streams receiving changes of this memory (see {@link #openEventStream(int)}).
+	 */
+	private final ArrayList<NAdicoMemoryEventStream<A, I, C>> eventStreams = new ArrayList<>();
+
+	/**
+	 * Society-level memory this memory is a partition of (null if not partition of a shared memory).
+	 */
+	private SharedNAdicoActionMemory<A, I, C> sharedMemory = null;
+
+	/**
+	 * Monitor guarding the snapshot counters (since snapshots may be released by other threads).
+	 */
+	private final Object snapshotMonitor = new Object();
+
+	/**
+	 * Number of unreleased snapshots sharing the current memory state (see {@link #snapshot()}).
+	 */
+	private int sharingSnapshots = 0;
+
+	/**
+	 * Number of unreleased snapshots (irrespective of whether they still share the memory state).
+	 */
+	private int openSnapshots = 0;
+
+	/**
+	 * Epoch of memory state. Advanced whenever state shared with snapshots is copied prior to modification.
+	 */
+	private long stateEpoch = 0;
+
+	/**
+	 * Posting lists of the {@link #activityIndex}, {@link #conditionsIndex} and {@link #sequenceLengthIndex}
+	 * copied or created since the last copy-on-write (null if indices do not share posting lists with snapshots).
+	 */
+	private Set<TreeSet<Integer>> ownedPostings = null;
+
+	/**
+	 * Instantiates action memory with given number of memory entries and owner reference.
+	 * @param numberOfEntries
+	 * @param owner
+	 */
+	public nAdicoActionMemory(Integer numberOfEntries, String owner) {
+		super(numberOfEntries, owner);
+	}
 	
 	/**
-	 * Instantiates action memory with given number of memory entries and owner reference.
-	 * @param numberOfEntries
-	 * @param owner
+	 * Instantiates action memory with given number of entries, owner and generaliser instance.
+	 * @param numberOfEntries
+	 * @param owner
+	 * @param generalizer Generaliser of owner, necessary for optional generalisations in 
+	 *   {@link #getMaxNAdicoExpressionWithGivenExpressionAsPreviousExpression(NAdicoExpression, boolean, boolean, boolean, int)}.
+	 */
+	public nAdicoActionMemory(Integer numberOfEntries, String owner, NAdicoGeneralizer generalizer) {
+		super(numberOfEntries, owner);
+		this.generalizer = generalizer;
+	}
+
+	/**
+	 * Memorises a given expression along with its value and updates the memory indices
+	 * for the overwritten (or evicted) slot.
+	 * Note: Memorised expressions are indexed upon insertion and should not be modified afterwards.
+	 * @param key Expression to be memorised
+	 * @param value Associated value
+	 */
+	@Override
+	public void memorize(NAdicoExpression<A, I, C> key, Float value) {
+		copyOnWrite();
+		final ExpressionInterner<A, I, C> interner = getInterner();
+		if (interner != null && key != null) {
+			// Store expression only once across partitions (or entries in compact mode)
+			key = interner.intern(key);
+		}
+		if (evictionPolicy != null) {
+			// Indices need to reflect entries prior to memorisation for relocation of evicted entry
+			ensureIndicesAreConsistent();
+		}
+		// Store value in undecayed units (entries without value remain without value)
+		if (value != null && decayFactor != 1d) {
+			value = (float)(value / decayFactor);
+		}
+		if (compactEntries != null) {
+			memorizeObservation(key, value);
+			return;
+		}
+		super.memorize(key, value);
+		if (evictionPolicy == null || !relocateToVictimSlot()) {
+			updateIndices();
+		}
+	}
+
+	/**
+	 * Moves the entry just memorised by the underlying memory (which overwrites the oldest entry once memory 
+	 * is full) into the slot selected by the eviction policy, restores the overwritten entry and updates the indices.
+	 * The entry is expected in the slot following the last written one (ring order of the underlying memory); 
+	 * if that slot is unchanged, the slot written by the underlying memory is determined by comparison with the indexed entries.
+	 * @return true if entry has been relocated, false if memory has not been full (indices are not updated)
+	 */
+	private boolean relocateToVictimSlot() {
+		if (indexedMemoryArray != memoryArray || memoryArray.length == 0) {
+			return false;
+		}
+		int writtenSlot = (lastWrittenSlot + 1) % memoryArray.length;
+		if (memoryArray[writtenSlot] == indexedEntries[writtenSlot]) {
+			writtenSlot = findWrittenSlot();
+		}
+		if (indexedKeys[writtenSlot] == null) {
+			// Entry written into empty slot
+			return false;
+		}
+		final int victimSlot = evictionPolicy.selectVictim();
+		if (victimSlot < 0 || victimSlot >= memoryArray.length || indexedKeys[victimSlot] == null) {
+			throw new RuntimeException("Eviction policy " + evictionPolicy.getClass().getSimpleName() + 
+					" selected invalid memory slot " + victimSlot + ".");
+		}
+		if (victimSlot != writtenSlot) {
+			moveEntry(memoryArray, writtenSlot, victimSlot, indexedEntries[writtenSlot]);
+			if (debug) {
+				System.out.println("Eviction policy relocated memorised entry from slot " + writtenSlot + " to slot " + victimSlot);
+			}
+		}
+		lastWrittenSlot = writtenSlot;
+		reindexSlot(victimSlot);
+		return true;
+	}
+
+	/**
+	 * Returns the slot the underlying memory has written the entry just memorised into, i.e., the only slot 
+	 * whose entry deviates from the indexed one.
+	 * @return Memory slot
+	 */
+	private int findWrittenSlot() {
+		int writtenSlot = -1;
+		for (int slot = 0; slot < memoryArray.length; slot++) {
+			if (memoryArray[slot] != indexedEntries[slot]) {
+				if (writtenSlot != -1) {
+					throw new RuntimeException("Underlying memory changed more than one slot upon memorisation (memory of owner " + owner + ").");
+				}
+				writtenSlot = slot;
+			}
+		}
+		if (writtenSlot == -1) {
+			throw new RuntimeException("Underlying memory did not store memorised entry (memory of owner " + owner + ").");
+		}
+		if (debug) {
+			System.out.println("Memorised entry written into slot " + writtenSlot + " instead of slot " + ((lastWrittenSlot + 1) % memoryArray.length));
+		}
+		return writtenSlot;
+	}
+
+	/**
+	 * Moves an array element into another position and replaces it with a given element.
+	 * @param array Array
+	 * @param from Position of moved element
+	 * @param to Target position
+	 * @param replacement Element replacing moved element
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> void moveEntry(final T[] array, final int from, final int to, final Object replacement) {
+		array[to] = array[from];
+		array[from] = (T) replacement;
+	}
+
+	/**
+	 * Sets the policy selecting the entry to be evicted when memorising a new entry in a full memory
+	 * (e.g., {@link LeastRecentlyUsedEvictionPolicy}, {@link LeastFrequentlyUsedEvictionPolicy}, 
+	 * {@link LowestValenceEvictionPolicy} or {@link ValueWeightedRandomEvictionPolicy}). 
+	 * The policy is initialised with the current memory entries (in order of memorisation).
+	 * Relocation relies on the underlying memory overwriting exactly one slot per memorisation 
+	 * (otherwise memorisation fails with an exception).
+	 * Note: Once a policy has relocated entries, removing it resumes eviction in the order of the underlying 
+	 * ring buffer (i.e., by slot), which may deviate from the order of memorisation of the remaining entries.
+	 * Eviction policies cannot be combined with compact mode (see {@link #activateCompactMode()}).
+	 * @param evictionPolicy Eviction policy (null evicts entries in insertion order)
+	 */
+	public void setEvictionPolicy(final NAdicoEvictionPolicy evictionPolicy) {
+		if (evictionPolicy != null && compactEntries != null) {
+			throw new RuntimeException("Eviction policies cannot be combined with compact mode (memory of owner " + owner + ").");
+		}
+		ensureIndicesAreConsistent();
+		if (evictionPolicy != null) {
+			evictionPolicy.initialise(memoryArray.length);
+			for (int slot: getSlotsInMemorisationOrder()) {
+				if (indexedKeys[slot] != null) {
+					evictionPolicy.slotMemorised(slot, indexedValues[slot]);
+				}
+			}
+			evictionPolicy.decayFactorChanged(decayFactor);
+		}
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * Returns the eviction policy (see {@link #setEvictionPolicy(NAdicoEvictionPolicy)}), or null if entries are evicted in insertion order.
+	 * @return
+	 */
+	public NAdicoEvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * Reports the match of the entry held in a given slot by a query to the eviction policy.
+	 * @param slot Memory slot
+	 */
+	private void recordHit(final int slot) {
+		if (evictionPolicy != null) {
+			evictionPolicy.slotAccessed(slot);
+		}
+	}
+
+	/**
+	 * Registers this memory as partition of a given society-level memory.
+	 * @param sharedMemory Shared memory
+	 */
+	void setSharedMemory(final SharedNAdicoActionMemory<A, I, C> sharedMemory) {
+		this.sharedMemory = sharedMemory;
+	}
+
+	/**
+	 * Returns the society-level memory this memory is a partition of, or null if it is not partitioning a shared memory.
+	 * @return
+	 */
+	public SharedNAdicoActionMemory<A, I, C> getSharedMemory() {
+		return sharedMemory;
+	}
+
+	/**
+	 * Changes the number of memory entries (discarding memorised entries).
+	 */
+	@Override
+	public void setNumberOfMemoryEntries(Integer numberOfEntries) {
+		copyOnWrite();
+		super.setNumberOfMemoryEntries(numberOfEntries);
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current memory state that supports all query methods. 
+	 * Taking a snapshot is a constant-time operation, since the snapshot shares memory entries and 
+	 * indices with this memory. Shared state is copied (without copying expressions) upon the 
+	 * first modification of this memory after taking snapshots, unless all of those have been 
+	 * released by then. Snapshots remain valid until released (see {@link NAdicoActionMemorySnapshot#release()}).
+	 * Note: Each snapshot should only be queried by a single thread at a time. 
+	 * @return Snapshot of memory
+	 */
+	public NAdicoActionMemorySnapshot<A, I, C> snapshot() {
+		ensureIndicesAreConsistent();
+		synchronized (snapshotMonitor) {
+			NAdicoActionMemorySnapshot<A, I, C> snapshot = new NAdicoActionMemorySnapshot<>(this, owner, generalizer, stateEpoch, 
+					compactEntries != null, evictionPolicy);
+			snapshot.shareState(this);
+			sharingSnapshots++;
+			openSnapshots++;
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Returns the number of unreleased snapshots of this memory (see {@link #snapshot()}).
+	 * @return
+	 */
+	public int getNumberOfOpenSnapshots() {
+		synchronized (snapshotMonitor) {
+			return openSnapshots;
+		}
+	}
+
+	/**
+	 * Called upon release of a snapshot taken in a given epoch (possibly by another thread than the one modifying the memory).
+	 * @param epoch Epoch of memory state the snapshot has been taken in
+	 */
+	void snapshotReleased(final long epoch) {
+		synchronized (snapshotMonitor) {
+			openSnapshots--;
+			if (epoch == stateEpoch) {
+				sharingSnapshots--;
+			}
+		}
+	}
+
+	/**
+	 * Shares the state of a given memory (used to initialise snapshots).
+	 * @param memory Memory whose state is shared
+	 */
+	void shareState(final nAdicoActionMemory<A, I, C> memory) {
+		memoryArray = memory.memoryArray;
+		indexedMemoryArray = memory.indexedMemoryArray;
+		indexedKeys = memory.indexedKeys;
+		indexedEntries = memory.indexedEntries;
+		indexedValues = memory.indexedValues;
+		indexedHasValue = memory.indexedHasValue;
+		indexedTimestamps = memory.indexedTimestamps;
+		indexedSequenceNumbers = memory.indexedSequenceNumbers;
+		lastSequenceNumber = memory.lastSequenceNumber;
+		indexedSequenceLengths = memory.indexedSequenceLengths;
+		activityIndex = memory.activityIndex;
+		markerIndex = memory.markerIndex;
+		numericPropertyIndex = memory.numericPropertyIndex;
+		conditionsIndex = memory.conditionsIndex;
+		sequenceTrie = memory.sequenceTrie;
+		sequenceLengthIndex = memory.sequenceLengthIndex;
+		generalisedKeys = memory.generalisedKeys;
+		generalisedKeysVersion = memory.generalisedKeysVersion;
+		generalisedKeysShared = true;
+		memory.generalisedKeysShared = true;
+		// Aggregates are maintained upon read and hence rebuilt per snapshot if requested
+		generalisedAggregates = null;
+		lastWrittenSlot = memory.lastWrittenSlot;
+		decayFactor = memory.decayFactor;
+		halfLife = memory.halfLife;
+		currentTime = memory.currentTime;
+		agingHalfLife = memory.agingHalfLife;
+		agingTime = memory.agingTime;
+		evictionSketch = memory.evictionSketch;
+		compactEntryOfSlot = memory.compactEntryOfSlot;
+		observationSlots = memory.observationSlots;
+		observationValues = memory.observationValues;
+		observationHasValue = memory.observationHasValue;
+		observationTimestamps = memory.observationTimestamps;
+		oldestObservation = memory.oldestObservation;
+		numberOfObservations = memory.numberOfObservations;
+	}
+
+	/**
+	 * Drops references to state shared with another memory (used upon release of snapshots).
+	 */
+	void dropSharedState() {
+		activityIndex = new HashMap<>();
+		markerIndex = new MarkerBitmapIndex();
+		numericPropertyIndex = new NumericPropertyIndex();
+		conditionsIndex = new HashMap<>();
+		sequenceTrie = new ActionSequenceTrie();
+		sequenceLengthIndex = new TreeMap<>();
+		indexedKeys = null;
+		indexedEntries = null;
+		indexedValues = null;
+		indexedHasValue = null;
+		indexedTimestamps = null;
+		indexedSequenceNumbers = null;
+		indexedSequenceLengths = null;
+		generalisedKeys = null;
+		generalisedKeysShared = false;
+		generalisedAggregates = null;
+		aggregatedKeys = null;
+		indexedMemoryArray = null;
+		evictionSketch = null;
+		compactEntryOfSlot = null;
+		observationSlots = null;
+		observationValues = null;
+		observationHasValue = null;
+		observationTimestamps = null;
+		numberOfObservations = 0;
+		setNumberOfMemoryEntries(0);
+	}
+
+	/**
+	 * Returns the owner of memory.
+	 * @return
+	 */
+	String getMemoryOwner() {
+		return owner;
+	}
+
+	/**
+	 * Returns the number of memory slots (i.e., the number of memory entries).
+	 * @return
+	 */
+	int getNumberOfSlots() {
+		return memoryArray.length;
+	}
+
+	/**
+	 * Returns the occupied memory slots in order of memorisation (oldest first), i.e., in the order entries 
+	 * would be evicted without eviction policy (used to initialise eviction policies, and for persistence 
+	 * unless compact mode is activated, see {@link #getEntriesInMemorisationOrder()}).
+	 * The order is determined by the memorisation sequence numbers of slots (see {@link #indexedSequenceNumbers}), 
+	 * so that it is retained if entries have been relocated by an eviction policy.
+	 * @return
+	 */
+	int[] getSlotsInMemorisationOrder() {
+		ensureIndicesAreConsistent();
+		Integer[] slots = new Integer[memoryArray.length];
+		int numberOfSlots = 0;
+		for (int slot = 0; slot < memoryArray.length; slot++) {
+			if (indexedKeys[slot] != null) {
+				slots[numberOfSlots++] = slot;
+			}
+		}
+		Arrays.sort(slots, 0, numberOfSlots, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer slot1, Integer slot2) {
+				return Long.compare(indexedSequenceNumbers[slot1], indexedSequenceNumbers[slot2]);
+			}
+		});
+		int[] result = new int[numberOfSlots];
+		for (int i = 0; i < numberOfSlots; i++) {
+			result[i] = slots[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the positions of all memorised entries in order of memorisation (oldest first), i.e., the occupied 
+	 * memory slots (see {@link #getSlotsInMemorisationOrder()}), or the positions of observations in compact mode 
+	 * (see {@link #observationSlots}). Used for persistence along with {@link #getEntryKey(int)}, 
+	 * {@link #getUndecayedEntryValue(int)} and {@link #getEntryTimestamp(int)}.
+	 * @return
+	 */
+	int[] getEntriesInMemorisationOrder() {
+		ensureIndicesAreConsistent();
+		if (observationSlots == null) {
+			return getSlotsInMemorisationOrder();
+		}
+		final int[] positions = new int[numberOfObservations];
+		for (int i = 0; i < numberOfObservations; i++) {
+			positions[i] = (oldestObservation + i) % observationSlots.length;
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns the key of the memorised entry at a given position (see {@link #getEntriesInMemorisationOrder()}).
+	 * @param position Position of entry
+	 * @return
+	 */
+	NAdicoExpression<A, I, C> getEntryKey(final int position) {
+		if (observationSlots == null) {
+			return memoryArray[position] == null ? null : memoryArray[position].key;
+		}
+		return observationSlots[position] == -1 ? null : indexedKeys[observationSlots[position]];
+	}
+
+	/**
+	 * Returns the value of the memorised entry at a given position (see {@link #getEntriesInMemorisationOrder()}) 
+	 * in undecayed units (see {@link #getDecayFactor()}).
+	 * @param position Position of entry
+	 * @return Value, or null if entry has no value
+	 */
+	Float getUndecayedEntryValue(final int position) {
+		ensureIndicesAreConsistent();
+		if (observationSlots == null) {
+			return indexedHasValue[position] ? indexedValues[position] : null;
+		}
+		return observationHasValue[position] ? observationValues[position] : null;
+	}
+
+	/**
+	 * Returns the logical time at which the entry at a given position (see {@link #getEntriesInMemorisationOrder()}) has been memorised.
+	 * @param position Position of entry
+	 * @return
+	 */
+	long getEntryTimestamp(final int position) {
+		ensureIndicesAreConsistent();
+		return observationSlots == null ? indexedTimestamps[position] : observationTimestamps[position];
+	}
+
+	/**
+	 * Returns the cumulative decay factor (effective value = undecayed value * decay factor).
+	 * @return
+	 */
+	double getDecayFactor() {
+		return decayFactor;
+	}
+
+	/**
+	 * Returns the half-life based on which time-based decay has been applied to memory entries (see {@link #setHalfLife(Float)}), 
+	 * or null if time-based decay has never been activated.
+	 * @return
+	 */
+	Float getAgingHalfLife() {
+		return agingHalfLife;
+	}
+
+	/**
+	 * Returns the logical time up to which time-based decay has been applied to memory entries.
+	 * @return
+	 */
+	long getAgingTime() {
+		return agingTime;
+	}
+
+	/**
+	 * Memorises an entry with a given value in undecayed units and memorisation time (used to restore persisted memories).
+	 * Entries need to be restored in order of memorisation (see {@link #getEntriesInMemorisationOrder()}).
+	 * @param key Expression
+	 * @param undecayedValue Value in undecayed units
+	 * @param timestamp Logical time of memorisation
+	 */
+	void restoreEntry(final NAdicoExpression<A, I, C> key, final Float undecayedValue, final long timestamp) {
+		final double restoredDecayFactor = decayFactor;
+		final long restoredTime = currentTime;
+		decayFactor = 1d;
+		currentTime = timestamp;
+		try {
+			memorize(key, undecayedValue);
+		} finally {
+			decayFactor = restoredDecayFactor;
+			currentTime = restoredTime;
+		}
+	}
+
+	/**
+	 * Restores decay factor, half-life, logical time and aging state (used to restore persisted memories).
+	 * @param decayFactor Cumulative decay factor
+	 * @param halfLife Half-life (null if time-based decay is deactivated)
+	 * @param currentTime Logical time
+	 * @param agingHalfLife Half-life time-based decay has been applied with (see {@link #getAgingHalfLife()})
+	 * @param agingTime Logical time up to which time-based decay has been applied (see {@link #getAgingTime()})
+	 */
+	void restoreTime(final double decayFactor, final Float halfLife, final long currentTime, final Float agingHalfLife, final long agingTime) {
+		if (halfLife != null && !(halfLife > 0)) {
+			throw new RuntimeException("Half-life for time-based decay of memory entries needs to be positive. Provided value: " + halfLife);
+		}
+		this.decayFactor = decayFactor;
+		this.halfLife = halfLife;
+		this.currentTime = currentTime;
+		this.agingHalfLife = agingHalfLife;
+		this.agingTime = agingTime;
+		if (evictionPolicy != null) {
+			evictionPolicy.decayFactorChanged(decayFactor);
+		}
+	}
+
+	/**
+	 * Copies state shared with unreleased snapshots prior to modification of memory (copy-on-write).
+	 * The memory array and the per-slot mirrors are copied (as flat arrays, without copying entries or expressions). 
+	 * Indices are copied shallowly, i.e., their posting lists, bitmaps and trie nodes remain shared with 
+	 * snapshots and are only copied once modified (see {@link #ownedPostings}). Sharing is tracked until 
+	 * all snapshots have been released.
+	 */
+	private void copyOnWrite() {
+		synchronized (snapshotMonitor) {
+			if (sharingSnapshots == 0) {
+				if (openSnapshots == 0 && ownedPostings != null) {
+					// No snapshot shares any structures anymore
+					ownedPostings = null;
+					markerIndex.releaseSharedBitmaps();
+					numericPropertyIndex.releaseSharedStructures();
+					sequenceTrie.releaseSharedNodes();
+				}
+				return;
+			}
+			sharingSnapshots = 0;
+			stateEpoch++;
+		}
+		memoryArray = memoryArray.clone();
+		indexedMemoryArray = memoryArray;
+		indexedKeys = indexedKeys.clone();
+		indexedEntries = indexedEntries.clone();
+		indexedValues = indexedValues.clone();
+		indexedHasValue = indexedHasValue.clone();
+		indexedTimestamps = indexedTimestamps.clone();
+		indexedSequenceNumbers = indexedSequenceNumbers.clone();
+		indexedSequenceLengths = indexedSequenceLengths.clone();
+		activityIndex = new HashMap<>(activityIndex);
+		markerIndex = markerIndex.copy();
+		numericPropertyIndex = numericPropertyIndex.copy();
+		conditionsIndex = new HashMap<>(conditionsIndex);
+		sequenceTrie = sequenceTrie.copy();
+		sequenceLengthIndex = new TreeMap<>(sequenceLengthIndex);
+		ownedPostings = Collections.newSetFromMap(new IdentityHashMap<TreeSet<Integer>, Boolean>());
+		ensureGeneralisedKeysAreOwned();
+		if (evictionSketch != null) {
+			evictionSketch = evictionSketch.copy();
+		}
+		if (compactEntryOfSlot != null) {
+			// Compact entries are modified in place
+			final HashMap<NAdicoExpression<A, I, C>, CompactEntry> sharedEntries = compactEntries;
+			compactEntries = new HashMap<>();
+			compactEntryOfSlot = compactEntryOfSlot.clone();
+			for (int slot = 0; slot < compactEntryOfSlot.length; slot++) {
+				final CompactEntry entry = compactEntryOfSlot[slot];
+				if (entry != null) {
+					compactEntryOfSlot[slot] = new CompactEntry(entry);
+					if (sharedEntries.get(entry.key) == entry) {
+						compactEntries.put(entry.key, compactEntryOfSlot[slot]);
+					}
+				}
+			}
+			observationSlots = observationSlots.clone();
+			observationValues = observationValues.clone();
+			observationHasValue = observationHasValue.clone();
+			observationTimestamps = observationTimestamps.clone();
+		}
+	}
+
+	/**
+	 * Brings the memory indices in line with the current memory content. In the regular case
+	 * only the slot following the last written one is checked; if that slot has not
+	 * changed, all slots are reconciled. Rebuilds the indices entirely if the memory
+	 * array has been reallocated.
+	 */
+	private void updateIndices() {
+		if (indexedMemoryArray != memoryArray || indexedKeys == null || indexedKeys.length != memoryArray.length) {
+			rebuildIndices();
+			return;
+		}
+		if (memoryArray.length == 0) {
+			return;
+		}
+		// Check expected slot first (ring buffer behaviour)
+		int expectedSlot = (lastWrittenSlot + 1) % memoryArray.length;
+		if (slotChanged(expectedSlot)) {
+			reindexSlot(expectedSlot);
+			lastWrittenSlot = expectedSlot;
+			return;
+		}
+		// Else reconcile all slots
+		for (int i = 0; i < memoryArray.length; i++) {
+			if (slotChanged(i)) {
+				reindexSlot(i);
+				lastWrittenSlot = i;
+			}
+		}
+	}
+
+	/**
+	 * Ensures indices are consistent with the memory array prior to query execution
+	 * (e.g., following reallocation of the memory).
+	 */
+	void ensureIndicesAreConsistent() {
+		if (indexedMemoryArray != memoryArray || indexedKeys == null || indexedKeys.length != memoryArray.length) {
+			rebuildIndices();
+		}
+	}
+
+	/**
+	 * Indicates whether queries can be executed without modifying any memory state, i.e., whether indices are 
+	 * consistent and generalised entries and aggregates are cached and up to date (see {@link #prepareForQueries()}).
+	 * @return
+	 */
+	boolean isPreparedForQueries() {
+		if (indexedMemoryArray != memoryArray || indexedKeys == null || indexedKeys.length != memoryArray.length) {
+			return false;
+		}
+		return generalizer == null || (generalisedAggregates != null && !staleMaxima
+				&& generalisedKeysVersion == generalizer.getGeneralizationConfigurationVersion());
+	}
+
+	/**
+	 * Brings indices in line with memory content and populates all state queries maintain upon read 
+	 * (generalised entries, generalised aggregates and their maxima), so that subsequent queries do not 
+	 * modify memory state until the next modification of memory (used to execute queries concurrently).
+	 */
+	void prepareForQueries() {
+		ensureIndicesAreConsistent();
+		if (generalizer == null) {
+			return;
+		}
+		// Generalises all entries (as part of building aggregates)
+		for (GeneralisedAggregate aggregate: getGeneralisedAggregates().values()) {
+			getMaxValue(aggregate);
+		}
+		staleMaxima = false;
+	}
+
+	/**
+	 * Rebuilds all memory indices from scratch.
+	 */
+	private void rebuildIndices() {
+		if (!eventStreams.isEmpty() && indexedKeys != null && observationSlots != null) {
+			// Observations of reallocated memory are reported as evicted (compact mode)
+			for (int i = 0; i < numberOfObservations; i++) {
+				final int position = (oldestObservation + i) % observationSlots.length;
+				if (observationSlots[position] != -1) {
+					publishEvent(NAdicoMemoryEvent.EVICTED, observationSlots[position], indexedKeys[observationSlots[position]], 
+							observationHasValue[position] ? decay(observationValues[position]) : null, null);
+				}
+			}
+		} else if (!eventStreams.isEmpty() && indexedKeys != null) {
+			// Entries of reallocated memory are reported as evicted (current entries are reported as inserted upon reindexing)
+			for (int i = 0; i < indexedKeys.length; i++) {
+				if (indexedKeys[i] != null) {
+					publishEvent(NAdicoMemoryEvent.EVICTED, i, indexedKeys[i], 
+							indexedHasValue[i] ? decay(indexedValues[i]) : null, null);
+				}
+			}
+		}
+		// Indices are replaced rather than cleared, since their structures may be shared with snapshots
+		activityIndex = new HashMap<>();
+		markerIndex = new MarkerBitmapIndex();
+		numericPropertyIndex = new NumericPropertyIndex();
+		conditionsIndex = new HashMap<>();
+		sequenceTrie = new ActionSequenceTrie();
+		sequenceLengthIndex = new TreeMap<>();
+		generalisedAggregates = null;
+		indexedKeys = new NAdicoExpression[memoryArray.length];
+		indexedEntries = new Object[memoryArray.length];
+		indexedValues = new float[memoryArray.length];
+		indexedHasValue = new boolean[memoryArray.length];
+		indexedTimestamps = new long[memoryArray.length];
+		indexedSequenceNumbers = new long[memoryArray.length];
+		indexedSequenceLengths = new int[memoryArray.length];
+		generalisedKeys = new NAdicoExpression[memoryArray.length];
+		generalisedKeysShared = false;
+		indexedMemoryArray = memoryArray;
+		lastWrittenSlot = -1;
+		if (evictionPolicy != null) {
+			evictionPolicy.initialise(memoryArray.length);
+		}
+		if (compactEntries != null) {
+			compactEntries = new HashMap<>();
+			compactEntryOfSlot = new nAdicoActionMemory.CompactEntry[memoryArray.length];
+			observationSlots = new int[memoryArray.length];
+			observationValues = new float[memoryArray.length];
+			observationHasValue = new boolean[memoryArray.length];
+			observationTimestamps = new long[memoryArray.length];
+			oldestObservation = 0;
+			numberOfObservations = 0;
+		}
+		for (int i = 0; i < memoryArray.length; i++) {
+			if (memoryArray[i] != null && memoryArray[i].key != null) {
+				if (compactEntries != null) {
+					// Entries not memorised in compact mode are indexed as single observations
+					final Float value = memoryArray[i].value;
+					memoryArray[i].value = null;
+					reindexSlot(i);
+					addObservation(i, value);
+				} else {
+					reindexSlot(i);
+				}
+				lastWrittenSlot = i;
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether the key (or value) held in a given slot differs from the indexed one.
+	 * @param slot Memory slot
+	 * @return
+	 */
+	private boolean slotChanged(int slot) {
+		NAdicoExpression<A, I, C> currentKey = memoryArray[slot] == null ? null : memoryArray[slot].key;
+		return memoryArray[slot] != indexedEntries[slot] || currentKey != indexedKeys[slot] || 
+				(currentKey != null && Float.floatToIntBits(getStoredValue(slot)) != Float.floatToIntBits(indexedValues[slot]));
+	}
+
+	/**
+	 * Returns the value stored in a given memory slot in undecayed units (0 if slot or value are empty).
+	 * @param slot Memory slot
+	 * @return
+	 */
+	private float getStoredValue(int slot) {
+		return memoryArray[slot] == null || memoryArray[slot].value == null ? 0f : memoryArray[slot].value;
+	}
+
+	/**
+	 * Returns the effective (i.e., decayed) value of a given memory slot (0 if slot or value are empty).
+	 * Operates on the primitive value mirror, so indices need to be consistent.
+	 * @param slot Memory slot
+	 * @return
+	 */
+	private float getSlotValue(int slot) {
+		return decay(indexedValues[slot]);
+	}
+
+	/**
+	 * Converts a value in undecayed units into its effective value.
+	 * @param storedValue Value in undecayed units
+	 * @return
+	 */
+	private float decay(float storedValue) {
+		return decayFactor == 1d ? storedValue : (float)(storedValue * decayFactor);
+	}
+
+	/**
+	 * Removes the previously indexed key of a given slot from the indices and indexes its current key.
+	 * In compact mode, the slot's entry is indexed without observations (see {@link #changeObservations(int, Float, boolean)}).
+	 * @param slot Memory slot
+	 */
+	private void reindexSlot(int slot) {
+		// Remove old entry
+		NAdicoExpression<A, I, C> oldKey = indexedKeys[slot];
+		if (generalisedAggregates != null && generalisedKeysVersion != generalizer.getGeneralizationConfigurationVersion()) {
+			// Generalisations have changed; aggregates are rebuilt upon next access
+			generalisedAggregates = null;
+		}
+		if (oldKey != null) {
+			if (evictionSketch != null && indexedHasValue[slot] && indexedEntries[slot] != memoryArray[slot] && compactEntries == null) {
+				// Retain evicted entry in approximate form (observations are retained upon eviction in compact mode)
+				evictionSketch.add(oldKey.hashCode(), indexedValues[slot]);
+			}
+			if (generalisedAggregates != null) {
+				removeFromGeneralisedAggregates(slot);
+			}
+			removeFromIndex(activityIndex, getIndexKey(oldKey), slot);
+			for (Entry<String, Object> marker: getSocialMarkerIndexKeys(oldKey)) {
+				markerIndex.remove(marker, slot);
+			}
+			for (Entry<String, Object> marker: getIndividualMarkerIndexKeys(oldKey)) {
+				markerIndex.remove(marker, slot);
+			}
+			for (Entry<String, Integer> condition: getConditionsIndexKeys(oldKey)) {
+				removeFromIndex(conditionsIndex, condition, slot);
+			}
+			for (Entry<String, Float> property: getNumericAimProperties(oldKey)) {
+				numericPropertyIndex.remove(property.getKey(), property.getValue(), slot);
+			}
+			List<String> activities = compactEntries == null ? getActivitySequence(oldKey) : null;
+			if (activities != null) {
+				sequenceTrie.remove(slot, activities, indexedValues[slot]);
+			}
+			if (indexedSequenceLengths[slot] > 0) {
+				removeFromIndex(sequenceLengthIndex, indexedSequenceLengths[slot], slot);
+			}
+		}
+		// Add new entry
+		NAdicoExpression<A, I, C> newKey = memoryArray[slot] == null ? null : memoryArray[slot].key;
+		if (newKey != null) {
+			addToIndex(activityIndex, getIndexKey(newKey), slot);
+			for (Entry<String, Object> marker: getSocialMarkerIndexKeys(newKey)) {
+				markerIndex.add(marker, slot);
+			}
+			for (Entry<String, Object> marker: getIndividualMarkerIndexKeys(newKey)) {
+				markerIndex.add(marker, slot);
+			}
+			for (Entry<String, Integer> condition: getConditionsIndexKeys(newKey)) {
+				addToIndex(conditionsIndex, condition, slot);
+			}
+			for (Entry<String, Float> property: getNumericAimProperties(newKey)) {
+				numericPropertyIndex.add(property.getKey(), property.getValue(), slot);
+			}
+			List<String> activities = compactEntries == null ? getActivitySequence(newKey) : null;
+			if (activities != null) {
+				sequenceTrie.insert(slot, activities, getStoredValue(slot));
+			}
+			indexedSequenceLengths[slot] = newKey.isAction() ? newKey.getTotalExpressionSequenceLength() : 0;
+			if (indexedSequenceLengths[slot] > 0) {
+				addToIndex(sequenceLengthIndex, indexedSequenceLengths[slot], slot);
+			}
+		} else {
+			indexedSequenceLengths[slot] = 0;
+		}
+		if (compactEntries != null) {
+			if (oldKey != null) {
+				removeCompactEntry(slot);
+			}
+			if (newKey != null) {
+				addCompactEntry(slot, newKey);
+			}
+		}
+		if (evictionPolicy != null) {
+			if (oldKey != null) {
+				evictionPolicy.slotEvicted(slot);
+			}
+			if (newKey != null) {
+				evictionPolicy.slotMemorised(slot, getStoredValue(slot));
+			}
+		}
+		if (!eventStreams.isEmpty() && compactEntries == null) {
+			// Changes are published per observation in compact mode
+			publishSlotChange(slot, oldKey, newKey);
+		}
+		indexedKeys[slot] = newKey;
+		indexedEntries[slot] = memoryArray[slot];
+		indexedValues[slot] = getStoredValue(slot);
+		indexedHasValue[slot] = newKey != null && memoryArray[slot].value != null;
+		indexedTimestamps[slot] = newKey != null ? currentTime : 0;
+		indexedSequenceNumbers[slot] = newKey != null ? ++lastSequenceNumber : 0;
+		ensureGeneralisedKeysAreOwned();
+		generalisedKeys[slot] = null;
+		if (newKey != null && generalisedAggregates != null) {
+			addToGeneralisedAggregates(slot);
+		}
+	}
+
+	/**
+	 * Publishes the change of a given slot to all open event streams. Needs to be called
+	 * prior to updating the primitive mirror of the slot.
+	 * @param slot Memory slot
+	 * @param oldKey Previously indexed key (null if slot was empty)
+	 * @param newKey Current key (null if slot is empty)
+	 */
+	private void publishSlotChange(final int slot, final NAdicoExpression<A, I, C> oldKey, final NAdicoExpression<A, I, C> newKey) {
+		final Float oldValue = oldKey != null && indexedHasValue[slot] ? decay(indexedValues[slot]) : null;
+		final Float newValue = newKey != null && memoryArray[slot].value != null ? decay(getStoredValue(slot)) : null;
+		if (oldKey != null && oldKey == newKey && indexedEntries[slot] == memoryArray[slot]) {
+			// Value of entry changed in place
+			publishEvent(NAdicoMemoryEvent.OVERWRITTEN, slot, newKey, oldValue, newValue);
+			return;
+		}
+		if (oldKey != null) {
+			publishEvent(NAdicoMemoryEvent.EVICTED, slot, oldKey, oldValue, null);
+		}
+		if (newKey != null) {
+			publishEvent(NAdicoMemoryEvent.INSERTED, slot, newKey, null, newValue);
+		}
+	}
+
+	/**
+	 * Publishes an event to all open event streams.
+	 * @param type Event type
+	 * @param slot Memory slot
+	 * @param key Expression
+	 * @param oldValue Value prior to change
+	 * @param newValue Value after change
+	 */
+	private void publishEvent(final int type, final int slot, final NAdicoExpression<A, I, C> key, 
+			final Float oldValue, final Float newValue) {
+		final NAdicoMemoryEvent<A, I, C> event = new NAdicoMemoryEvent<>(type, slot, key, oldValue, newValue, currentTime);
+		for (int i = 0; i < eventStreams.size(); i++) {
+			eventStreams.get(i).publish(event);
+		}
+	}
+
+	/**
+	 * Opens a stream of change events of this memory (insertion, overwriting and eviction of entries,
+	 * as well as decay of values; see {@link NAdicoMemoryEvent}). Events are buffered in a ring buffer of
+	 * given capacity until polled; publishing never blocks, but drops events if the buffer is full.
+	 * Events are only generated while at least one stream is open.
+	 * @param capacity Maximum number of pending events
+	 * @return Event stream
+	 */
+	public NAdicoMemoryEventStream<A, I, C> openEventStream(final int capacity) {
+		NAdicoMemoryEventStream<A, I, C> stream = new NAdicoMemoryEventStream<>(capacity);
+		// Bring indices in line, so that prior changes are not reported
+		ensureIndicesAreConsistent();
+		eventStreams.add(stream);
+		return stream;
+	}
+
+	/**
+	 * Closes a given event stream (see {@link #openEventStream(int)}). Pending events can still be polled.
+	 * @param stream Event stream
+	 */
+	public void closeEventStream(final NAdicoMemoryEventStream<A, I, C> stream) {
+		if (eventStreams.remove(stream)) {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Returns the aggregated values of memory entries per generalised expression. Aggregates are built
+	 * upon first access and subsequently maintained incrementally as memory entries change.
+	 * @return
+	 */
+	private HashMap<NAdicoExpression<A, I, C>, GeneralisedAggregate> getGeneralisedAggregates() {
+		ensureIndicesAreConsistent();
+		if (generalisedAggregates != null && generalisedKeysVersion != generalizer.getGeneralizationConfigurationVersion()) {
+			generalisedAggregates = null;
+		}
+		if (generalisedAggregates == null) {
+			generalisedAggregates = new HashMap<>();
+			aggregatedKeys = new NAdicoExpression[memoryArray.length];
+			for (int i = 0; i < memoryArray.length; i++) {
+				if (indexedKeys[i] != null) {
+					addToGeneralisedAggregates(i);
+				}
+			}
+		}
+		return generalisedAggregates;
+	}
+
+	/**
+	 * Adds the entry of a given slot to the aggregates of its generalised expression.
+	 * @param slot Memory slot
+	 */
+	private void addToGeneralisedAggregates(final int slot) {
+		final NAdicoExpression<A, I, C> generalisedKey = getGeneralisedEntry(slot);
+		GeneralisedAggregate aggregate = generalisedAggregates.get(generalisedKey);
+		if (aggregate == null) {
+			aggregate = new GeneralisedAggregate();
+			aggregate.max = getMaxStoredValue(slot);
+			generalisedAggregates.put(generalisedKey, aggregate);
+		}
+		aggregate.slots.add(slot);
+		aggregate.count += getNumberOfEntries(slot);
+		aggregate.sum += indexedValues[slot];
+		aggregate.max = Math.max(aggregate.max, getMaxStoredValue(slot));
+		aggregatedKeys[slot] = generalisedKey;
+	}
+
+	/**
+	 * Removes the entry of a given slot (as previously indexed) from the aggregates of its generalised expression.
+	 * @param slot Memory slot
+	 */
+	private void removeFromGeneralisedAggregates(final int slot) {
+		final NAdicoExpression<A, I, C> generalisedKey = aggregatedKeys[slot];
+		aggregatedKeys[slot] = null;
+		GeneralisedAggregate aggregate = generalisedKey == null ? null : generalisedAggregates.get(generalisedKey);
+		if (aggregate == null || !aggregate.slots.remove(slot)) {
+			return;
+		}
+		if (aggregate.slots.isEmpty()) {
+			generalisedAggregates.remove(generalisedKey);
+			return;
+		}
+		aggregate.count -= getNumberOfEntries(slot);
+		aggregate.sum -= indexedValues[slot];
+		if (getMaxStoredValue(slot) >= aggregate.max) {
+			aggregate.maxStale = true;
+			staleMaxima = true;
+		}
+	}
+
+	/**
+	 * Indicates whether a given expression can be held by memory entries of equal expressions 
+	 * (i.e., shared across entries). Only top-level actions are shared, since equality of expressions 
+	 * does not consider all components of statements and combinations (e.g., nested expressions or deontics; 
+	 * see {@link NAdicoExpression#equals(Object)}).
+	 * @param expression Expression
+	 * @return
+	 */
+	static boolean isShareable(final NAdicoExpression<?, ?, ?> expression) {
+		return expression.isAction() && expression.deontic == null && expression.parent() == null;
+	}
+
+	/**
+	 * Activates compact mode, in which each memory slot holds a distinct expression (see {@link #isShareable(NAdicoExpression)}) 
+	 * along with all of its observations within the memory window (see {@link CompactEntry}), rather than a single observation. 
+	 * Memorising an expression that is already held adds an observation (and its value) to the expression's slot, and 
+	 * expressions are held as shared instances (see {@link ExpressionInterner}). The memory window is retained: the most 
+	 * recent observations (as many as the memory has entries) are kept in primitive arrays (see {@link #observationSlots}), 
+	 * and once memory is full, memorisation evicts the oldest observation (freeing its slot once the expression 
+	 * has no observations left). Queries therefore return the same results as without compact mode, but scan and match 
+	 * each distinct expression once instead of once per observation. Expressions that are not shareable (e.g., statements) 
+	 * occupy one slot per observation.
+	 * Entries memorised prior to activation are converted into observations (in order of memorisation). 
+	 * Compact mode cannot be combined with an eviction policy (see {@link #setEvictionPolicy(NAdicoEvictionPolicy)}).
+	 */
+	public void activateCompactMode() {
+		if (compactEntries != null) {
+			return;
+		}
+		if (evictionPolicy != null) {
+			throw new RuntimeException("Compact mode cannot be combined with an eviction policy (memory of owner " + owner + ").");
+		}
+		if (compactInterner == null) {
+			compactInterner = new ExpressionInterner<>();
+		}
+		convertEntries(true);
+	}
+
+	/**
+	 * Deactivates compact mode (see {@link #activateCompactMode()}), i.e., each observation occupies a memory slot again. 
+	 * Memory entries continue sharing expression instances.
+	 */
+	public void deactivateCompactMode() {
+		if (compactEntries == null) {
+			return;
+		}
+		convertEntries(false);
+	}
+
+	/**
+	 * Converts all memorised entries into observations of compact mode (or vice versa) by memorising them anew 
+	 * in order of memorisation, retaining their values and memorisation times. Conversion is not published to event streams.
+	 * @param compactMode Indicates whether entries are converted into observations of compact mode
+	 */
+	private void convertEntries(final boolean compactMode) {
+		copyOnWrite();
+		final int[] entries = getEntriesInMemorisationOrder();
+		final ArrayList<NAdicoExpression<A, I, C>> keys = new ArrayList<>(entries.length);
+		final ArrayList<Float> values = new ArrayList<>(entries.length);
+		final long[] timestamps = new long[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			keys.add(getEntryKey(entries[i]));
+			values.add(getUndecayedEntryValue(entries[i]));
+			timestamps[i] = getEntryTimestamp(entries[i]);
+		}
+		final ArrayList<NAdicoMemoryEventStream<A, I, C>> streams = new ArrayList<>(eventStreams);
+		eventStreams.clear();
+		try {
+			compactEntries = compactMode ? new HashMap<>() : null;
+			compactEntryOfSlot = null;
+			observationSlots = null;
+			observationValues = null;
+			observationHasValue = null;
+			observationTimestamps = null;
+			oldestObservation = 0;
+			numberOfObservations = 0;
+			// Reallocation empties memory (indices are rebuilt upon memorisation)
+			super.setNumberOfMemoryEntries(memoryArray.length);
+			for (int i = 0; i < keys.size(); i++) {
+				restoreEntry(keys.get(i), values.get(i), timestamps[i]);
+			}
+			ensureIndicesAreConsistent();
+		} finally {
+			eventStreams.addAll(streams);
+		}
+		if (debug) {
+			System.out.println("Converted " + keys.size() + " entries of memory of owner " + owner + 
+					(compactMode ? " into " + getNumberOfOccupiedSlots() + " compact entries." : " from compact mode."));
+		}
+	}
+
+	/**
+	 * Indicates whether compact mode is activated (see {@link #activateCompactMode()}).
+	 * @return
+	 */
+	public boolean isCompactMode() {
+		return compactEntries != null;
+	}
+
+	/**
+	 * Returns the interner used to share expression instances across memory entries, i.e., that of the
+	 * shared memory for partitions (see {@link SharedNAdicoActionMemory}), else that of compact mode.
+	 * @return Interner, or null if expressions are not shared
+	 */
+	private ExpressionInterner<A, I, C> getInterner() {
+		if (sharedMemory != null) {
+			return sharedMemory.getInterner();
+		}
+		return compactEntries == null ? null : compactInterner;
+	}
+
+	/**
+	 * Returns the number of distinct (shareable) expressions held in compact mode (0 if compact mode is deactivated).
+	 * @return
+	 */
+	public int getNumberOfDistinctEntries() {
+		ensureIndicesAreConsistent();
+		if (compactEntries != null || compactEntryOfSlot == null) {
+			return compactEntries == null ? 0 : compactEntries.size();
+		}
+		// Snapshots share compact entries by slot only
+		int distinctEntries = 0;
+		for (int i = 0; i < compactEntryOfSlot.length; i++) {
+			if (compactEntryOfSlot[i] != null && isShareable(compactEntryOfSlot[i].key)) {
+				distinctEntries++;
+			}
+		}
+		return distinctEntries;
+	}
+
+	/**
+	 * Returns the number of memory slots holding an expression, i.e., the number of memorised entries, 
+	 * or the number of entries held after collapsing equal expressions in compact mode (see {@link #activateCompactMode()}).
+	 * The ratio of memorised observations to occupied slots indicates the reduction of entries held and scanned.
+	 * @return
+	 */
+	public int getNumberOfOccupiedSlots() {
+		ensureIndicesAreConsistent();
+		int occupiedSlots = 0;
+		for (int i = 0; i < indexedKeys.length; i++) {
+			if (indexedKeys[i] != null) {
+				occupiedSlots++;
+			}
+		}
+		return occupiedSlots;
+	}
+
+	/**
+	 * Creates the (initially empty) compact entry held in a given slot.
+	 * @param slot Memory slot
+	 * @param key Expression held in slot
+	 */
+	private void addCompactEntry(final int slot, final NAdicoExpression<A, I, C> key) {
+		final CompactEntry entry = new CompactEntry(key, slot);
+		if (isShareable(key)) {
+			compactEntries.put(key, entry);
+		}
+		compactEntryOfSlot[slot] = entry;
+	}
+
+	/**
+	 * Removes the compact entry held in a given slot.
+	 * @param slot Memory slot
+	 */
+	private void removeCompactEntry(final int slot) {
+		final CompactEntry entry = compactEntryOfSlot[slot];
+		if (entry == null) {
+			return;
+		}
+		compactEntryOfSlot[slot] = null;
+		compactEntries.remove(entry.key, entry);
+	}
+
+	/**
+	 * Memorises an observation of a given expression in compact mode, i.e., adds it to the slot holding 
+	 * the expression (or a free slot if the expression is not held yet). Evicts the oldest observation if memory is full.
+	 * @param key Expression
+	 * @param value Value in undecayed units
+	 */
+	private void memorizeObservation(final NAdicoExpression<A, I, C> key, final Float value) {
+		ensureIndicesAreConsistent();
+		if (observationSlots.length == 0) {
+			return;
+		}
+		if (numberOfObservations == observationSlots.length) {
+			evictOldestObservation();
+		}
+		int slot = -1;
+		if (key != null) {
+			final CompactEntry entry = isShareable(key) ? compactEntries.get(key) : null;
+			slot = entry == null ? storeInFreeSlot(key) : entry.slot;
+		}
+		addObservation(slot, value);
+	}
+
+	/**
+	 * Stores a given expression (without observations) in a free memory slot (compact mode) by directing the 
+	 * underlying memory to write at the first free slot following its current position. A free slot always exists, 
+	 * since each occupied slot holds at least one observation and memory is not full after eviction.
+	 * @param key Expression
+	 * @return Memory slot
+	 */
+	private int storeInFreeSlot(final NAdicoExpression<A, I, C> key) {
+		int freeSlot = -1;
+		for (int i = 0; i < memoryArray.length && freeSlot == -1; i++) {
+			final int slot = (pointer + i) % memoryArray.length;
+			if (indexedKeys[slot] == null) {
+				freeSlot = slot;
+			}
+		}
+		if (freeSlot == -1) {
+			throw new RuntimeException("No free memory slot for expression " + key + " in compact memory of owner " + owner + ".");
+		}
+		pointer = freeSlot;
+		super.memorize(key, null);
+		if (memoryArray[freeSlot] == indexedEntries[freeSlot]) {
+			// Underlying memory has written into another slot
+			int writtenSlot = -1;
+			for (int i = 0; i < memoryArray.length && writtenSlot == -1; i++) {
+				if (memoryArray[i] != indexedEntries[i]) {
+					writtenSlot = i;
+				}
+			}
+			if (writtenSlot == -1) {
+				throw new RuntimeException("Underlying memory of owner " + owner + " did not store expression " + key + ".");
+			}
+			moveEntry(memoryArray, writtenSlot, freeSlot, indexedEntries[writtenSlot]);
+		}
+		lastWrittenSlot = freeSlot;
+		reindexSlot(freeSlot);
+		return freeSlot;
+	}
+
+	/**
+	 * Appends an observation of the expression held in a given slot to the observations of the memory window (compact mode). 
+	 * Memory must not be full.
+	 * @param slot Memory slot (-1 for observations without expression)
+	 * @param value Value in undecayed units (null if observation has no value)
+	 */
+	private void addObservation(final int slot, final Float value) {
+		final int position = (oldestObservation + numberOfObservations) % observationSlots.length;
+		observationSlots[position] = slot;
+		observationValues[position] = value == null ? 0f : value;
+		observationHasValue[position] = value != null;
+		observationTimestamps[position] = currentTime;
+		numberOfObservations++;
+		if (slot != -1) {
+			changeObservations(slot, value, true);
+			if (!eventStreams.isEmpty()) {
+				publishEvent(NAdicoMemoryEvent.INSERTED, slot, indexedKeys[slot], null, value == null ? null : decay(value));
+			}
+		}
+	}
+
+	/**
+	 * Evicts the oldest observation of the memory window (compact mode) and frees the slot 
+	 * of its expression if no further observations of the expression are held.
+	 */
+	private void evictOldestObservation() {
+		final int position = oldestObservation;
+		final int slot = observationSlots[position];
+		final Float value = observationHasValue[position] ? observationValues[position] : null;
+		oldestObservation = (position + 1) % observationSlots.length;
+		numberOfObservations--;
+		if (slot == -1) {
+			return;
+		}
+		final NAdicoExpression<A, I, C> key = indexedKeys[slot];
+		if (evictionSketch != null && value != null) {
+			// Retain evicted observation in approximate form
+			evictionSketch.add(key.hashCode(), value);
+		}
+		changeObservations(slot, value, false);
+		if (!eventStreams.isEmpty()) {
+			publishEvent(NAdicoMemoryEvent.EVICTED, slot, key, value == null ? null : decay(value), null);
+		}
+		if (compactEntryOfSlot[slot].numberOfObservations == 0) {
+			memoryArray[slot] = null;
+			reindexSlot(slot);
+		}
+	}
+
+	/**
+	 * Adds an observation to (or removes it from) the compact entry held in a given slot, and updates the 
+	 * indices and the value of the slot (i.e., the sum of the entry's values).
+	 * @param slot Memory slot
+	 * @param value Value in undecayed units (null if observation has no value)
+	 * @param added Indicates whether observation is added (else removed)
+	 */
+	private void changeObservations(final int slot, final Float value, final boolean added) {
+		final CompactEntry entry = compactEntryOfSlot[slot];
+		if (generalisedAggregates != null && generalisedKeysVersion != generalizer.getGeneralizationConfigurationVersion()) {
+			// Generalisations have changed; aggregates are rebuilt upon next access
+			generalisedAggregates = null;
+		}
+		if (generalisedAggregates != null) {
+			removeFromGeneralisedAggregates(slot);
+		}
+		final List<String> activities = getActivitySequence(entry.key);
+		if (activities != null) {
+			if (added) {
+				sequenceTrie.insert(slot, activities, value == null ? 0f : value);
+			} else {
+				sequenceTrie.remove(slot, activities, value == null ? 0f : value, entry.numberOfObservations > 1);
+			}
+		}
+		if (added) {
+			entry.add(value);
+		} else {
+			entry.remove(value);
+		}
+		indexedValues[slot] = (float)entry.sum;
+		indexedHasValue[slot] = entry.count > 0;
+		memoryArray[slot].value = entry.count > 0 ? indexedValues[slot] : null;
+		if (generalisedAggregates != null) {
+			addToGeneralisedAggregates(slot);
+		}
+	}
+
+	/**
+	 * Returns the number of entries held in a given occupied slot, i.e., the number of observations in compact mode.
+	 * @param slot Memory slot
+	 * @return
+	 */
+	private int getNumberOfEntries(final int slot) {
+		final CompactEntry entry = compactEntryOfSlot == null ? null : compactEntryOfSlot[slot];
+		return entry == null ? 1 : entry.numberOfObservations;
+	}
+
+	/**
+	 * Returns the number of values held in a given slot with value, i.e., the number of observations with value in compact mode.
+	 * @param slot Memory slot
+	 * @return
+	 */
+	private int getNumberOfValues(final int slot) {
+		final CompactEntry entry = compactEntryOfSlot == null ? null : compactEntryOfSlot[slot];
+		return entry == null ? 1 : entry.count;
+	}
+
+	/**
+	 * Returns the maximum of the values (in undecayed units) held in a given occupied slot, with entries 
+	 * without value counting as 0 (negative infinity for compact entries without observations).
+	 * @param slot Memory slot
+	 * @return
+	 */
+	private float getMaxStoredValue(final int slot) {
+		final CompactEntry entry = compactEntryOfSlot == null ? null : compactEntryOfSlot[slot];
+		if (entry == null) {
+			return indexedValues[slot];
+		}
+		if (entry.numberOfObservations == 0) {
+			return Float.NEGATIVE_INFINITY;
+		}
+		if (entry.count < entry.numberOfObservations) {
+			return entry.count == 0 ? 0f : Math.max(0f, entry.values.lastKey());
+		}
+		return entry.values.lastKey();
+	}
+
+	/**
+	 * Returns the highest (or lowest) of the values (in undecayed units) held in a given slot with value.
+	 * @param slot Memory slot
+	 * @param highest Indicates whether the highest (else lowest) value is returned
+	 * @return
+	 */
+	private float getExtremeStoredValue(final int slot, final boolean highest) {
+		final CompactEntry entry = compactEntryOfSlot == null ? null : compactEntryOfSlot[slot];
+		if (entry == null) {
+			return indexedValues[slot];
+		}
+		return highest ? entry.values.lastKey() : entry.values.firstKey();
+	}
+
+	/**
+	 * Accumulates the value(s) held in a given slot with value into an intermediate aggregation result 
+	 * (see {@link #accumulateValue(float, float, int)}), i.e., the values of all observations in compact mode.
+	 * @param result Intermediate result
+	 * @param slot Memory slot
+	 * @param aggregationMethod Aggregation method
+	 * @return Updated intermediate result
+	 */
+	private float accumulateSlot(final float result, final int slot, final int aggregationMethod) {
+		final CompactEntry entry = compactEntryOfSlot == null ? null : compactEntryOfSlot[slot];
+		if (entry == null) {
+			return accumulateValue(result, getSlotValue(slot), aggregationMethod);
+		}
+		switch (aggregationMethod) {
+			case AGGREGATION_MEAN:
+			case AGGREGATION_SUM:
+				return result + (decayFactor == 1d ? (float)entry.sum : (float)(entry.sum * decayFactor));
+			case AGGREGATION_COUNT:
+				return result + entry.count;
+			case AGGREGATION_MAX:
+				return Math.max(result, decay(entry.values.lastKey()));
+			default: throw new RuntimeException("Invalid aggregation method " + aggregationMethod + " in nAdicoActionMemory.");
+		}
+	}
+
+	/**
+	 * Returns the maximum value of a given aggregate (recomputed if stale).
+	 * @param aggregate Aggregate
+	 * @return
+	 */
+	private float getMaxValue(final GeneralisedAggregate aggregate) {
+		if (aggregate.maxStale) {
+			boolean first = true;
+			for (Integer slot: aggregate.slots) {
+				aggregate.max = first ? getMaxStoredValue(slot) : Math.max(aggregate.max, getMaxStoredValue(slot));
+				first = false;
+			}
+			aggregate.maxStale = false;
+		}
+		return aggregate.max;
+	}
+
+	/**
+	 * Adds a slot to a given index.
+	 * @param index Index
+	 * @param indexKey Index key (slot is not indexed if null)
+	 * @param slot Memory slot
+	 */
+	private <K> void addToIndex(final Map<K, TreeSet<Integer>> index, final K indexKey, final int slot) {
+		if (indexKey == null) {
+			return;
+		}
+		TreeSet<Integer> slots = getPostingsForModification(index, indexKey);
+		if (slots == null) {
+			slots = new TreeSet<>();
+			if (ownedPostings != null) {
+				ownedPostings.add(slots);
+			}
+			index.put(indexKey, slots);
+		}
+		slots.add(slot);
+	}
+
+	/**
+	 * Removes a slot from a given index.
+	 * @param index Index
+	 * @param indexKey Index key (ignored if null)
+	 * @param slot Memory slot
+	 */
+	private <K> void removeFromIndex(final Map<K, TreeSet<Integer>> index, final K indexKey, final int slot) {
+		if (indexKey == null) {
+			return;
+		}
+		TreeSet<Integer> slots = getPostingsForModification(index, indexKey);
+		if (slots != null) {
+			slots.remove(slot);
+			if (slots.isEmpty()) {
+				index.remove(indexKey);
+			}
+		}
+	}
+
+	/**
+	 * Returns the posting list of a given index key for modification, i.e., replaces it with a copy 
+	 * if it is shared with snapshots (see {@link #copyOnWrite()}).
+	 * @param index Index
+	 * @param indexKey Index key
+	 * @return Posting list, or null if index does not hold key
+	 */
+	private <K> TreeSet<Integer> getPostingsForModification(final Map<K, TreeSet<Integer>> index, final K indexKey) {
+		TreeSet<Integer> slots = index.get(indexKey);
+		if (slots != null && ownedPostings != null && !ownedPostings.contains(slots)) {
+			slots = new TreeSet<>(slots);
+			ownedPostings.add(slots);
+			index.put(indexKey, slots);
+		}
+		return slots;
+	}
+
+	/**
+	 * Returns the generalised form of the expression held in a given memory slot. Generalisations 
+	 * are cached per slot and only recomputed if the slot has been overwritten or the generaliser's 
+	 * configuration (providers or generalisation option) has changed.
+	 * Note: The returned expression is shared with the cache and must not be modified.
+	 * @param slot Memory slot
+	 * @return Generalised expression
+	 */
+	private NAdicoExpression<A, I, C> getGeneralisedEntry(final int slot) {
+		if (generalizer == null) {
+			throw new RuntimeException("NAdicoGeneralizer has not been specified during instantiation of NAdicoMemory.");
+		}
+		if (generalisedKeysVersion != generalizer.getGeneralizationConfigurationVersion()) {
+			ensureGeneralisedKeysAreOwned();
+			Arrays.fill(generalisedKeys, null);
+			generalisedKeysVersion = generalizer.getGeneralizationConfigurationVersion();
+		}
+		NAdicoExpression<A, I, C> generalisedKey = generalisedKeys[slot];
+		if (generalisedKey == null) {
+			ensureGeneralisedKeysAreOwned();
+			generalisedKey = (NAdicoExpression<A, I, C>) 
+					generalizer.generalizeExpression((NAdicoExpression<Attributes<LinkedHashSet<String>>, Aim<Float>, Conditions<NAdicoExpression>>) indexedKeys[slot]);
+			final ExpressionInterner<A, I, C> interner = getInterner();
+			if (interner != null) {
+				generalisedKey = interner.intern(generalisedKey);
+			}
+			generalisedKeys[slot] = generalisedKey;
+		}
+		return generalisedKey;
+	}
+
+	/**
+	 * Copies the cached generalised expressions if shared between this memory and snapshots (or the memory a snapshot 
+	 * has been taken of), so that the cache can be modified without affecting concurrent readers.
+	 */
+	private void ensureGeneralisedKeysAreOwned() {
+		if (generalisedKeysShared) {
+			generalisedKeys = generalisedKeys.clone();
+			generalisedKeysShared = false;
+		}
+	}
+
+	/**
+	 * Invalidates all cached generalised memory entries. Only needs to be called if the behaviour 
+	 * of registered generalisation providers changes without (de)registration, since changes to the 
+	 * generaliser's configuration are detected automatically.
+	 */
+	public void invalidateGeneralisedEntries() {
+		if (generalisedKeys != null) {
+			ensureGeneralisedKeysAreOwned();
+			Arrays.fill(generalisedKeys, null);
+		}
+		generalisedAggregates = null;
+	}
+
+	/**
+	 * Returns the activity index key for a given expression, i.e., the aim activity for
+	 * actions and statements, or the prefixed combinator for combinations.
+	 * @param expression Expression
+	 * @return Index key, or null if expression carries no concrete activity (wildcard)
+	 */
+	static String getIndexKey(final NAdicoExpression expression) {
+		if (expression.isCombination()) {
+			return expression.combinator == null ? null : COMBINATOR_INDEX_PREFIX + expression.combinator;
+		}
+		if (expression.aim == null || expression.aim.activity == null || expression.aim.activity.isEmpty()) {
+			return null;
+		}
+		return expression.aim.activity;
+	}
+
+	/**
+	 * Returns the social marker index keys for a given expression, i.e., one key per marker category
+	 * and associated marker values of the expression's (leading) action.
+	 * @param expression Expression
+	 * @return Index keys (empty for combinations or expressions without social markers)
+	 */
+	static List<Entry<String, Object>> getSocialMarkerIndexKeys(final NAdicoExpression expression) {
+		if (expression.isCombination() || expression.attributes == null || expression.attributes.socialMarkers.isEmpty()) {
+			return Collections.emptyList();
+		}
+		ArrayList<Entry<String, Object>> keys = new ArrayList<>();
+		for (Object marker: expression.attributes.socialMarkers.entrySet()) {
+			Entry<String, Object> entry = (Entry<String, Object>) marker;
+			keys.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the individual marker index keys for a given expression, i.e., one key per (prefixed) marker 
+	 * category and associated marker values of the expression's (leading) action. Since individual markers
+	 * are not necessarily retained during generalisation, those only apply to non-generalised entries.
+	 * @param expression Expression
+	 * @return Index keys (empty for combinations or expressions without individual markers)
+	 */
+	static List<Entry<String, Object>> getIndividualMarkerIndexKeys(final NAdicoExpression expression) {
+		if (expression.isCombination() || expression.attributes == null || expression.attributes.individualMarkers.isEmpty()) {
+			return Collections.emptyList();
+		}
+		ArrayList<Entry<String, Object>> keys = new ArrayList<>();
+		for (Object marker: expression.attributes.individualMarkers.entrySet()) {
+			Entry<String, Object> entry = (Entry<String, Object>) marker;
+			keys.add(new SimpleImmutableEntry<>(INDIVIDUAL_MARKER_INDEX_PREFIX + entry.getKey(), entry.getValue()));
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the marker index keys for a given expression, i.e., social marker index keys and
+	 * (optionally) individual marker index keys.
+	 * @param expression Expression
+	 * @param includeIndividualMarkers Indicates whether individual markers are included (only applicable to non-generalised entries)
+	 * @return Index keys
+	 */
+	static List<Entry<String, Object>> getMarkerIndexKeys(final NAdicoExpression expression, final boolean includeIndividualMarkers) {
+		List<Entry<String, Object>> socialMarkerKeys = getSocialMarkerIndexKeys(expression);
+		if (!includeIndividualMarkers) {
+			return socialMarkerKeys;
+		}
+		List<Entry<String, Object>> individualMarkerKeys = getIndividualMarkerIndexKeys(expression);
+		if (individualMarkerKeys.isEmpty()) {
+			return socialMarkerKeys;
+		}
+		ArrayList<Entry<String, Object>> keys = new ArrayList<>(socialMarkerKeys);
+		keys.addAll(individualMarkerKeys);
+		return keys;
+	}
+
+	/**
+	 * Returns the numeric aim properties of a given action (along with their values as float).
+	 * @param expression Expression
+	 * @return Numeric aim properties (empty for expressions other than actions)
+	 */
+	static List<Entry<String, Float>> getNumericAimProperties(final NAdicoExpression expression) {
+		if (!expression.isAction() || expression.aim == null || expression.aim.properties.isEmpty()) {
+			return Collections.emptyList();
+		}
+		ArrayList<Entry<String, Float>> properties = new ArrayList<>();
+		for (Object property: expression.aim.properties.entrySet()) {
+			Entry<String, Object> entry = (Entry<String, Object>) property;
+			if (entry.getValue() instanceof Number) {
+				properties.add(new SimpleImmutableEntry<>(entry.getKey(), ((Number) entry.getValue()).floatValue()));
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Returns the conditions index keys for a given expression, i.e., one key per condition property
+	 * (consisting of property key and hash of property value; see {@link #getConditionValueHash(Object)}),
+	 * or {@link #NO_CONDITIONS_INDEX_KEY} for actions without conditions.
+	 * @param expression Expression
+	 * @return Index keys (empty for expressions other than actions)
+	 */
+	static List<Entry<String, Integer>> getConditionsIndexKeys(final NAdicoExpression expression) {
+		if (!expression.isAction()) {
+			return Collections.emptyList();
+		}
+		if (expression.conditions == null || expression.conditions.properties == null || expression.conditions.properties.isEmpty()) {
+			return Collections.singletonList(NO_CONDITIONS_INDEX_KEY);
+		}
+		ArrayList<Entry<String, Integer>> keys = new ArrayList<>(expression.conditions.properties.size());
+		for (Object property: expression.conditions.properties.entrySet()) {
+			Entry<String, Object> entry = (Entry<String, Object>) property;
+			keys.add(new SimpleImmutableEntry<>(entry.getKey(), getConditionValueHash(entry.getValue())));
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the hash of a condition value. Expressions are hashed on the components considered 
+	 * by {@link NAdicoExpression#equals(Object)} irrespective of the configured comparison granularity,
+	 * so that equal values share the same hash.
+	 * @param value Condition value
+	 * @return
+	 */
+	private static int getConditionValueHash(final Object value) {
+		if (value instanceof NAdicoExpression) {
+			NAdicoExpression expression = (NAdicoExpression) value;
+			return Objects.hash(expression.aim, expression.attributes, expression.combinator, expression.conditions);
+		}
+		return Objects.hashCode(value);
+	}
+
+	/**
+	 * Restricts given candidate slots to slots whose conditions can possibly match a query's conditions, 
+	 * i.e., slots holding all of the query's condition properties (with equal value hash) or, for strict 
+	 * matches of queries without conditions, slots holding actions without conditions. Wildcard queries 
+	 * without conditions are not restricted. Only applicable to matches of non-generalised entries on the same level.
+	 * @param candidateSlots Candidate slots in ascending order (null if not restricted)
+	 * @param conditionsIndexKeys Conditions index keys of query (see {@link #getConditionsIndexKeys(NAdicoExpression)})
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions
+	 * @return Candidate slots in ascending order, or null if not restricted
+	 */
+	private int[] filterCandidateSlotsByConditions(final int[] candidateSlots, final List<Entry<String, Integer>> conditionsIndexKeys,
+			final boolean strictMatchOnConditionsVsWildcardMatch) {
+		if (conditionsIndexKeys.isEmpty() || 
+				(!strictMatchOnConditionsVsWildcardMatch && conditionsIndexKeys.get(0) == NO_CONDITIONS_INDEX_KEY)) {
+			// Conditions match any entry
+			return candidateSlots;
+		}
+		ensureIndicesAreConsistent();
+		TreeSet<Integer> smallest = null;
+		ArrayList<TreeSet<Integer>> postings = new ArrayList<>(conditionsIndexKeys.size());
+		for (Entry<String, Integer> condition: conditionsIndexKeys) {
+			TreeSet<Integer> slots = conditionsIndex.get(condition);
+			if (slots == null) {
+				return new int[0];
+			}
+			postings.add(slots);
+			if (smallest == null || slots.size() < smallest.size()) {
+				smallest = slots;
+			}
+		}
+		int[] candidates = new int[candidateSlots == null ? smallest.size() : Math.min(candidateSlots.length, smallest.size())];
+		int ct = 0;
+		if (candidateSlots == null) {
+			for (Integer slot: smallest) {
+				if (containedInAll(postings, slot)) {
+					candidates[ct++] = slot;
+				}
+			}
+		} else {
+			for (int slot: candidateSlots) {
+				if (ct < candidates.length && containedInAll(postings, slot)) {
+					candidates[ct++] = slot;
+				}
+			}
+		}
+		return Arrays.copyOf(candidates, ct);
+	}
+
+	/**
+	 * Indicates whether a given slot is contained in all given posting lists.
+	 * @param postings Posting lists
+	 * @param slot Memory slot
+	 * @return
+	 */
+	private static boolean containedInAll(final List<TreeSet<Integer>> postings, final int slot) {
+		for (TreeSet<Integer> slots: postings) {
+			if (!slots.contains(slot)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the memory slots that can possibly match a given query on the same action level,
+	 * i.e., slots holding the query's activity (or combinator) as well as all of the query's social markers
+	 * (and optionally individual markers).
+	 * Since social markers are retained during generalisation, candidates also apply to generalised entries.
+	 * @param query Query expression
+	 * @param includeIndividualMarkers Indicates whether candidates are restricted by individual markers (only applicable to non-generalised entries)
+	 * @return Candidate slots in ascending order, or null if query has neither a concrete activity nor markers (requiring a full scan)
+	 */
+	private int[] getCandidateSlots(final NAdicoExpression<A, I, C> query, final boolean includeIndividualMarkers) {
+		if (!query.isAction() && !query.isCombination()) {
+			return null;
+		}
+		return getCandidateSlots(getIndexKey(query), getMarkerIndexKeys(query, includeIndividualMarkers));
+	}
+
+	/**
+	 * Returns the memory slots holding a given activity index key as well as all given markers.
+	 * Markers are resolved by intersecting their slot bitmaps (or by probing these for the slots 
+	 * holding the activity, if given).
+	 * @param indexKey Activity index key (null if not restricted)
+	 * @param markerIndexKeys Marker index keys
+	 * @return Candidate slots in ascending order, or null if neither activity nor markers are given
+	 */
+	private int[] getCandidateSlots(final String indexKey, final List<Entry<String, Object>> markerIndexKeys) {
+		ensureIndicesAreConsistent();
+		if (indexKey == null && markerIndexKeys.isEmpty()) {
+			return null;
+		}
+		final TreeSet<Integer> activitySlots = indexKey == null ? null : activityIndex.get(indexKey);
+		if (indexKey != null && activitySlots == null) {
+			return new int[0];
+		}
+		final List<SlotBitmap> bitmaps = markerIndex.getBitmaps(markerIndexKeys);
+		if (bitmaps == null) {
+			// At least one marker is not held by any slot
+			return new int[0];
+		}
+		if (activitySlots == null) {
+			return SlotBitmap.intersect(bitmaps);
+		}
+		if (bitmaps.isEmpty()) {
+			return toArray(activitySlots);
+		}
+		int[] candidates = new int[activitySlots.size()];
+		int ct = 0;
+		for (Integer slot: activitySlots) {
+			boolean containedInAll = true;
+			for (SlotBitmap bitmap: bitmaps) {
+				if (!bitmap.get(slot)) {
+					containedInAll = false;
+					break;
+				}
+			}
+			if (containedInAll) {
+				candidates[ct++] = slot;
+			}
+		}
+		return Arrays.copyOf(candidates, ct);
+	}
+
+	/**
+	 * Returns the activity sequence of a given action expression, starting with the earliest
+	 * action (i.e., following the PREVIOUS_ACTION chain backwards).
+	 * @param expression Expression
+	 * @return Activity sequence (null entries for actions without activity), or null if expression is not a sequence of actions
 	 */
-	public nAdicoActionMemory(Integer numberOfEntries, String owner) {
-		super(numberOfEntries, owner);
+	static List<String> getActivitySequence(final NAdicoExpression expression) {
+		ArrayList<String> activities = new ArrayList<>();
+		NAdicoExpression step = expression;
+		while (step != null) {
+			if (!step.isAction()) {
+				return null;
+			}
+			activities.add(step.aim == null ? null : step.aim.activity);
+			step = step.conditions == null ? null : (NAdicoExpression) step.conditions.getPreviousAction();
+		}
+		Collections.reverse(activities);
+		return activities;
 	}
-	
+
 	/**
-	 * Instantiates action memory with given number of entries, owner and generaliser instance.
-	 * @param numberOfEntries
-	 * @param owner
-	 * @param generalizer Generaliser of owner, necessary for optional generalisations in 
-	 *   {@link #getMaxNAdicoExpressionWithGivenExpressionAsPreviousExpression(NAdicoExpression, boolean, boolean, boolean, int)}.
+	 * Returns the memory slots that can possibly hold a given query as preceding action sequence.
+	 * Strict matches (as well as wildcard matches of queries with previous actions) are anchored at
+	 * the beginning of the memorised sequence, so candidates are found by descending the sequence trie.
+	 * @param activities Activity sequence of query expression (null if query is not a sequence of actions)
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions
+	 * @return Candidate slots in ascending order, or null if query cannot be resolved using the trie (requiring a full scan)
 	 */
-	public nAdicoActionMemory(Integer numberOfEntries, String owner, NAdicoGeneralizer generalizer) {
-		super(numberOfEntries, owner);
-		this.generalizer = generalizer;
+	private int[] getCandidateSlotsForPrecedingSequence(final List<String> activities,
+			final boolean strictMatchOnConditionsVsWildcardMatch) {
+		if (activities == null || (!strictMatchOnConditionsVsWildcardMatch && activities.size() < 2)) {
+			// Wildcard match of single action can occur anywhere in the sequence
+			return null;
+		}
+		ensureIndicesAreConsistent();
+		List<ActionSequenceTrie.Node> nodes = sequenceTrie.getNodes(activities);
+		if (nodes.size() == 1) {
+			return toArray(nodes.get(0).slots);
+		}
+		TreeSet<Integer> slots = new TreeSet<>();
+		for (ActionSequenceTrie.Node node: nodes) {
+			slots.addAll(node.slots);
+		}
+		return toArray(slots);
 	}
-	
+
+	/**
+	 * Returns the memory slots holding actions whose expression sequence is longer than a given length,
+	 * i.e., the only actions that can hold an action sequence of that length as preceding subsequence.
+	 * @param length Sequence length
+	 * @return Candidate slots in ascending order
+	 */
+	private int[] getCandidateSlotsForLongerSequences(final int length) {
+		ensureIndicesAreConsistent();
+		NavigableMap<Integer, TreeSet<Integer>> buckets = sequenceLengthIndex.tailMap(length, false);
+		if (buckets.size() == 1) {
+			return toArray(buckets.firstEntry().getValue());
+		}
+		int numberOfSlots = 0;
+		for (TreeSet<Integer> slots: buckets.values()) {
+			numberOfSlots += slots.size();
+		}
+		int[] candidates = new int[numberOfSlots];
+		int ct = 0;
+		for (TreeSet<Integer> slots: buckets.values()) {
+			for (Integer slot: slots) {
+				candidates[ct++] = slot;
+			}
+		}
+		Arrays.sort(candidates);
+		return candidates;
+	}
+
+	/**
+	 * Converts a set of slots into an array.
+	 * @param slots Slots
+	 * @return
+	 */
+	private static int[] toArray(final Collection<Integer> slots) {
+		int[] array = new int[slots.size()];
+		int ct = 0;
+		for (Integer slot: slots) {
+			array[ct++] = slot;
+		}
+		return array;
+	}
+
+	/**
+	 * Returns the activities that followed a given action sequence in memorised action sequences,
+	 * along with the aggregated value of all memory entries continuing the sequence with the respective activity.
+	 * Sequences are compared based on activities only (i.e., irrespective of attributes and other conditions).
+	 * If the last action of the given sequence has no activity, it matches any activity.
+	 * @param stmt Action sequence
+	 * @param aggregationMethod Aggregation method ({@link #AGGREGATION_COUNT}, {@link #AGGREGATION_MEAN}, {@link #AGGREGATION_SUM}, {@link #AGGREGATION_MAX})
+	 * @return Following activities ranked by aggregated value (highest first), or null if sequence has not been followed by any activity
+	 */
+	public LinkedHashMap<String, Float> getActivitiesFollowingSequence(final NAdicoExpression<A, I, C> stmt, final int aggregationMethod) {
+		if (aggregationMethod != AGGREGATION_COUNT && aggregationMethod != AGGREGATION_SUM &&
+				aggregationMethod != AGGREGATION_MEAN && aggregationMethod != AGGREGATION_MAX) {
+			throw new RuntimeException("Invalid aggregation method " + aggregationMethod + " in nAdicoActionMemory.");
+		}
+		List<String> activities = getActivitySequence(stmt);
+		if (activities == null) {
+			throw new RuntimeException("Following activities can only be determined for action sequences. Provided expression: " + stmt);
+		}
+		ensureIndicesAreConsistent();
+		// Count, sum and max per following activity (multiple nodes if last activity is wildcard)
+		HashMap<String, float[]> aggregates = new HashMap<>();
+		for (ActionSequenceTrie.Node node: sequenceTrie.getNodes(activities)) {
+			for (Entry<String, ActionSequenceTrie.Node> child: node.children.entrySet()) {
+				float[] aggregate = aggregates.get(child.getKey());
+				if (aggregate == null) {
+					aggregate = new float[3];
+					aggregates.put(child.getKey(), aggregate);
+				}
+				aggregate[0] += child.getValue().count;
+				aggregate[1] += child.getValue().sum;
+				if (aggregationMethod == AGGREGATION_MAX) {
+					for (Integer slot: child.getValue().slots) {
+						aggregate[2] = Math.max(aggregate[2], decay(getMaxStoredValue(slot)));
+					}
+				}
+			}
+		}
+		if (aggregates.isEmpty()) {
+			return null;
+		}
+		HashMap<String, Float> values = new HashMap<>();
+		for (Entry<String, float[]> entry: aggregates.entrySet()) {
+			float[] aggregate = entry.getValue();
+			switch (aggregationMethod) {
+				case AGGREGATION_COUNT:
+					values.put(entry.getKey(), aggregate[0]);
+					break;
+				case AGGREGATION_SUM:
+					values.put(entry.getKey(), decay(aggregate[1]));
+					break;
+				case AGGREGATION_MEAN:
+					values.put(entry.getKey(), decay(aggregate[1])/aggregate[0]);
+					break;
+				default:
+					values.put(entry.getKey(), aggregate[2]);
+			}
+		}
+		ArrayList<Entry<String, Float>> ranked = new ArrayList<>(values.entrySet());
+		ranked.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+		LinkedHashMap<String, Float> result = new LinkedHashMap<>();
+		for (Entry<String, Float> entry: ranked) {
+			result.put(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
 	/**
 	 * Returns the sum of values for memory entries that match the input action 
 	 * statement. Requires an exact match of conditions (and does not generalise memory statements before comparison).
@@ -75,6 +2364,13 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 	 */
 	public Collection<NAdicoExpression<A, I, C>> getAllKeys() {
 		ArrayList<NAdicoExpression<A, I, C>> keys = new ArrayList<>();
+		if (observationSlots != null) {
+			// Expression of each observation (slots hold all observations of their expression)
+			for (int position: getEntriesInMemorisationOrder()) {
+				keys.add(getEntryKey(position));
+			}
+			return keys;
+		}
 		for (int i = 0; i < memoryArray.length; i++) {
 			if (memoryArray[i] != null) {
 				keys.add(memoryArray[i].key);
@@ -92,6 +2388,158 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 	public Float getMeanValueForKey(NAdicoExpression<A, I, C> stmt) {
 		return getValueForKey(stmt, AGGREGATION_MEAN, false, true);
 	}
+
+	/**
+	 * Returns all nADICO actions whose numeric aim property lies within a given range (e.g., trades with a price 
+	 * in [10, 12]) and that otherwise match the input statement, along with their aggregated values.
+	 * The property is matched by range irrespective of its value in the input statement; all other components 
+	 * are matched as in {@link #getValueForKey(NAdicoExpression)} (without generalisation).
+	 * Resolved using a sorted index over aim properties, i.e., without scanning memory entries outside the range.
+	 * @param stmt Statement to be matched (apart from range property)
+	 * @param property Key of numeric aim property
+	 * @param lowerBound Lower bound of range (inclusive)
+	 * @param upperBound Upper bound of range (inclusive)
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions
+	 * @param valueAggregationStrategy Aggregation strategy for returned values (see {@link #AGGREGATION_COUNT}, {@link #AGGREGATION_SUM}, {@link #AGGREGATION_MEAN}, {@link #AGGREGATION_MAX})
+	 * @return Matching expressions along with aggregated values, or null if no match
+	 * @throws RuntimeException if either bound is NaN
+	 */
+	public Map<NAdicoExpression<A, I, C>, Float> getNAdicoExpressionsWithAimPropertyInRange(final NAdicoExpression<A, I, C> stmt, 
+			final String property, final float lowerBound, final float upperBound, 
+			final boolean strictMatchOnConditionsVsWildcardMatch, final int valueAggregationStrategy) {
+		if (Float.isNaN(lowerBound) || Float.isNaN(upperBound)) {
+			throw new RuntimeException("Bounds of aim property range must not be NaN. Provided range: [" + lowerBound + ", " + upperBound + "]");
+		}
+		ensureIndicesAreConsistent();
+		final NAdicoExpression<A, I, C> template = withoutAimProperty(stmt, property);
+		ArrayList<Integer> matchingSlots = new ArrayList<>();
+		for (Integer slot: numericPropertyIndex.getSlotsInRange(property, lowerBound, upperBound)) {
+			if (indexedHasValue[slot] && match(template, indexedKeys[slot], false, strictMatchOnConditionsVsWildcardMatch)) {
+				matchingSlots.add(slot);
+			}
+		}
+		if (debug) {
+			System.out.println("Found " + matchingSlots.size() + " entries with " + property + " in [" + lowerBound + ", " + upperBound + "] matching " + template);
+		}
+		return aggregateSlotsByExpression(matchingSlots, valueAggregationStrategy);
+	}
+
+	/**
+	 * Returns the nADICO actions whose numeric aim property is nearest to a given value (i.e., has the 
+	 * lowest absolute difference) among all actions that otherwise match the input statement, along with 
+	 * their aggregated values. Actions with equal distance below and above the given value are both returned.
+	 * The property is matched irrespective of its value in the input statement; all other components 
+	 * are matched as in {@link #getValueForKey(NAdicoExpression)} (without generalisation).
+	 * Resolved by traversing the sorted index over aim properties outwards from the given value.
+	 * Actions whose property is NaN have no distance to any value and are never returned.
+	 * @param stmt Statement to be matched (apart from property)
+	 * @param property Key of numeric aim property
+	 * @param value Reference value (finite)
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions
+	 * @param valueAggregationStrategy Aggregation strategy for returned values (see {@link #AGGREGATION_COUNT}, {@link #AGGREGATION_SUM}, {@link #AGGREGATION_MEAN}, {@link #AGGREGATION_MAX})
+	 * @return Matching expressions along with aggregated values, or null if no match
+	 * @throws RuntimeException if the reference value is NaN or infinite
+	 */
+	public Map<NAdicoExpression<A, I, C>, Float> getNAdicoExpressionsWithNearestAimPropertyValue(final NAdicoExpression<A, I, C> stmt, 
+			final String property, final float value, 
+			final boolean strictMatchOnConditionsVsWildcardMatch, final int valueAggregationStrategy) {
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			throw new RuntimeException("Reference value for nearest aim property must be finite. Provided value: " + value);
+		}
+		ensureIndicesAreConsistent();
+		final NavigableMap<Float, TreeSet<Integer>> values = numericPropertyIndex.getValues(property);
+		if (values == null) {
+			return null;
+		}
+		final NAdicoExpression<A, I, C> template = withoutAimProperty(stmt, property);
+		TreeSet<Integer> matchingSlots = new TreeSet<>();
+		// NaN is ordered above all other values, so traversal upwards stops before reaching it
+		Entry<Float, TreeSet<Integer>> below = values.floorEntry(value);
+		Entry<Float, TreeSet<Integer>> above = withoutNaN(values.higherEntry(value));
+		while (matchingSlots.isEmpty() && (below != null || above != null)) {
+			final double distanceBelow = below == null ? Double.POSITIVE_INFINITY : (double) value - below.getKey();
+			final double distanceAbove = above == null ? Double.POSITIVE_INFINITY : (double) above.getKey() - value;
+			final double distance = Math.min(distanceBelow, distanceAbove);
+			// Null checks required as infinite property values have the same distance as missing entries
+			if (below != null && distanceBelow == distance) {
+				addMatchingSlots(below.getValue(), template, strictMatchOnConditionsVsWildcardMatch, matchingSlots);
+				below = values.lowerEntry(below.getKey());
+			}
+			if (above != null && distanceAbove == distance) {
+				addMatchingSlots(above.getValue(), template, strictMatchOnConditionsVsWildcardMatch, matchingSlots);
+				above = withoutNaN(values.higherEntry(above.getKey()));
+			}
+		}
+		return aggregateSlotsByExpression(matchingSlots, valueAggregationStrategy);
+	}
+
+	/**
+	 * Returns a given entry of the numeric property index, or null if the entry is null or holds NaN as property value.
+	 * @param entry Entry
+	 * @return
+	 */
+	private static Entry<Float, TreeSet<Integer>> withoutNaN(final Entry<Float, TreeSet<Integer>> entry) {
+		return entry == null || entry.getKey().isNaN() ? null : entry;
+	}
+
+	/**
+	 * Adds the given slots whose entries match a given statement to a given collection.
+	 * @param slots Slots to be tested
+	 * @param stmt Statement
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions
+	 * @param matchingSlots Collection matching slots are added to
+	 */
+	private void addMatchingSlots(final Collection<Integer> slots, final NAdicoExpression<A, I, C> stmt, 
+			final boolean strictMatchOnConditionsVsWildcardMatch, final Collection<Integer> matchingSlots) {
+		for (Integer slot: slots) {
+			if (indexedHasValue[slot] && match(stmt, indexedKeys[slot], false, strictMatchOnConditionsVsWildcardMatch)) {
+				matchingSlots.add(slot);
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of a given statement without a given aim property (or the statement itself if it does not hold the property).
+	 * @param stmt Statement
+	 * @param property Key of aim property
+	 * @return
+	 */
+	private NAdicoExpression<A, I, C> withoutAimProperty(final NAdicoExpression<A, I, C> stmt, final String property) {
+		if (stmt.aim == null || !stmt.aim.properties.containsKey(property)) {
+			return stmt;
+		}
+		NAdicoExpression<A, I, C> template = stmt.makeCopy();
+		template.aim.properties.remove(property);
+		return template;
+	}
+
+	/**
+	 * Aggregates the values of given memory slots per memorised expression.
+	 * @param slots Memory slots
+	 * @param aggregationMethod Aggregation method
+	 * @return Expressions along with aggregated values, or null if no slots are given
+	 */
+	private Map<NAdicoExpression<A, I, C>, Float> aggregateSlotsByExpression(final Collection<Integer> slots, final int aggregationMethod) {
+		if (slots.isEmpty()) {
+			return null;
+		}
+		LinkedHashMap<NAdicoExpression<A, I, C>, float[]> aggregates = new LinkedHashMap<>();
+		for (Integer slot: slots) {
+			recordHit(slot);
+			float[] aggregate = aggregates.get(indexedKeys[slot]);
+			if (aggregate == null) {
+				aggregate = new float[2];
+				aggregates.put(indexedKeys[slot], aggregate);
+			}
+			aggregate[0] = accumulateSlot(aggregate[0], slot, aggregationMethod);
+			aggregate[1] += getNumberOfValues(slot);
+		}
+		LinkedHashMap<NAdicoExpression<A, I, C>, Float> results = new LinkedHashMap<>();
+		for (Entry<NAdicoExpression<A, I, C>, float[]> aggregate: aggregates.entrySet()) {
+			results.put(aggregate.getKey(), finishAggregation(aggregate.getValue()[0], (int) aggregate.getValue()[1], aggregationMethod));
+		}
+		return results;
+	}
 	
 	/**
 	 * Returns *one* (the first) nADICO expression with highest value that has the given expression at the end of its action sequence (i.e., as last action).
@@ -343,70 +2791,544 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 			boolean givenExpressionAsPreviousVsExpressionOnSameLevel, boolean maxOnly, 
 			boolean compareGeneralisedStatements, boolean returnCompleteExpressionVsOnlyNextExpressionInSequence, 
 			boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		return executeQuery(new NAdicoQuery<>(stmt, givenExpressionAsPreviousVsExpressionOnSameLevel, maxOnly, compareGeneralisedStatements, 
+				returnCompleteExpressionVsOnlyNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy));
+	}
+
+	/**
+	 * Executes a prepared query, i.e., returns nADICO expressions along with values that have the query expression either as 
+	 * any previous action/expression or as expression on same level (see {@link NAdicoQuery} for query options).
+	 * Queries can be executed repeatedly (also against different memories).
+	 * @param query Prepared query
+	 * @return Map including matching statements along with values. Returns null if no matching statements.
+	 */
+	public Map<NAdicoExpression<A, I, C>, Float> executeQuery(final NAdicoQuery<A, I, C> query) {
+		return executeQuery(query, groupMemoryEntries(query.compareGeneralisedStatements));
+	}
 
-		if (valueAggregationStrategy != 1 && valueAggregationStrategy != 2 && valueAggregationStrategy != 3 && valueAggregationStrategy != 4) {
-			throw new RuntimeException("Invalid value aggregation strategy. Provided value: " + valueAggregationStrategy);
+	/**
+	 * Executes a batch of prepared queries in a single pass over memory slots, i.e., each (candidate) slot of any 
+	 * query is visited once and matched against all queries it is a candidate for. Preparation of memory entries 
+	 * (including generalisation) is shared across queries, and values of matching entries are aggregated in 
+	 * a single pass for all queries with equal aggregation options.
+	 * @param queries Prepared queries
+	 * @return Result map per query (aligned with given queries, including repeated queries), null for queries without matching statements
+	 */
+	public List<Map<NAdicoExpression<A, I, C>, Float>> executeQueries(final Collection<NAdicoQuery<A, I, C>> queries) {
+		ArrayList<QueryExecution> executions = new ArrayList<>(queries.size());
+		ExpressionGroups groups = null;
+		ExpressionGroups generalisedGroups = null;
+		for (NAdicoQuery<A, I, C> query: queries) {
+			if (query.compareGeneralisedStatements) {
+				if (generalisedGroups == null) {
+					generalisedGroups = groupMemoryEntries(true);
+				}
+				executions.add(new QueryExecution(query, generalisedGroups));
+			} else {
+				if (groups == null) {
+					groups = groupMemoryEntries(false);
+				}
+				executions.add(new QueryExecution(query, groups));
+			}
 		}
 
-		// Create new statement, with old statement as previous action
-		NAdicoExpression<A, I, C> newStmt = stmt.makeCopy();
-		
-		// Retrieve all statements for iteration
-		Collection<NAdicoExpression<A, I, C>> keys = getAllKeys();
-		
-		// Map containing all statements that match input sequence
-		Map<NAdicoExpression<A, I, C>, Float> matchingStatements = new HashMap<>();
-		
-		if (compareGeneralisedStatements) {
-			if (generalizer == null) {
-				throw new RuntimeException("NAdicoGeneralizer has not been specified during instantiation of NAdicoMemory.");
+		// Assign queries to their candidate slots (queries without candidate slots process all slots)
+		final int numberOfSlots = memoryArray.length;
+		ArrayList<QueryExecution> fullScans = new ArrayList<>();
+		final int[] firstExecutionOfSlot = new int[numberOfSlots + 1];
+		for (QueryExecution execution: executions) {
+			if (execution.candidateSlots == null) {
+				fullScans.add(execution);
+			} else {
+				for (int slot: execution.candidateSlots) {
+					firstExecutionOfSlot[slot + 1]++;
+				}
+			}
+		}
+		for (int slot = 0; slot < numberOfSlots; slot++) {
+			firstExecutionOfSlot[slot + 1] += firstExecutionOfSlot[slot];
+		}
+		final QueryExecution[] executionsBySlot = new nAdicoActionMemory.QueryExecution[firstExecutionOfSlot[numberOfSlots]];
+		final int[] nextExecutionOfSlot = Arrays.copyOf(firstExecutionOfSlot, numberOfSlots);
+		for (QueryExecution execution: executions) {
+			if (execution.candidateSlots != null) {
+				for (int slot: execution.candidateSlots) {
+					executionsBySlot[nextExecutionOfSlot[slot]++] = execution;
+				}
 			}
-			newStmt = (NAdicoExpression<A, I, C>) generalizer.generalizeExpression((NAdicoExpression<Attributes<LinkedHashSet<String>>, Aim<Float>, Conditions<NAdicoExpression>>) newStmt);
 		}
 
-		for (NAdicoExpression<A, I, C> item : keys) {
+		// Match each slot against all queries it is a candidate for
+		for (int slot = 0; slot < numberOfSlots; slot++) {
+			for (QueryExecution execution: fullScans) {
+				execution.processSlot(slot);
+			}
+			for (int e = firstExecutionOfSlot[slot]; e < firstExecutionOfSlot[slot + 1]; e++) {
+				executionsBySlot[e].processSlot(slot);
+			}
+		}
 
-			// Generalise input statements if required
-			if (compareGeneralisedStatements) {
-				item = (NAdicoExpression<A, I, C>) generalizer.generalizeExpression((NAdicoExpression<Attributes<LinkedHashSet<String>>, Aim<Float>, Conditions<NAdicoExpression>>) item);
+		// Aggregate values of groups matched by all queries with equal aggregation options at once
+		final boolean[] aggregated = new boolean[executions.size()];
+		for (int q = 0; q < executions.size(); q++) {
+			final QueryExecution execution = executions.get(q);
+			if (aggregated[q] || execution.matchingGroups.isEmpty()) {
+				continue;
 			}
-			
+			LinkedHashSet<Integer> requestedGroups = new LinkedHashSet<>(execution.matchingGroups.values());
+			for (int other = q + 1; other < executions.size(); other++) {
+				final QueryExecution otherExecution = executions.get(other);
+				if (!aggregated[other] && otherExecution.groups == execution.groups 
+						&& otherExecution.query.valueAggregationStrategy == execution.query.valueAggregationStrategy 
+						&& otherExecution.query.strictMatchOnConditionsVsWildcardMatch == execution.query.strictMatchOnConditionsVsWildcardMatch) {
+					requestedGroups.addAll(otherExecution.matchingGroups.values());
+					aggregated[other] = true;
+				}
+			}
+			execution.groups.getAggregatedValues(requestedGroups, execution.query.valueAggregationStrategy, 
+					execution.query.strictMatchOnConditionsVsWildcardMatch);
+		}
+
+		ArrayList<Map<NAdicoExpression<A, I, C>, Float>> results = new ArrayList<>(executions.size());
+		for (QueryExecution execution: executions) {
+			results.add(execution.getResult());
+		}
+		return results;
+	}
+
+	/**
+	 * Returns *all* nADICO expressions with highest value that have the respective given expression as a subsequence of their previous 
+	 * action sequence for a batch of expressions (e.g., all candidate actions). Equivalent to invoking 
+	 * {@link #getMaxNAdicoExpressionsWithGivenExpressionAsPreviousExpression(NAdicoExpression, boolean, boolean, boolean, int)} for each expression,
+	 * but processes memory entries in a single pass for all expressions (see {@link #executeQueries(Collection)}).
+	 * @param stmts Subsequences to be identified in action sequence
+	 * @param operateOnGeneralisedStatements Indicates whether the comparison should operate based on generalised statements
+	 * @param returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence Indicates whether to return full expression sequence vs. input sequence with next expression element only.
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions
+	 * @param valueAggregationStrategy Aggregation strategy for returned values. Supports {@link #AGGREGATION_COUNT}, {@link #AGGREGATION_MEAN}, or {@link #AGGREGATION_SUM}.
+	 * @return Result map per given expression (aligned with given expressions, including equal expressions), null for expressions without matching statements
+	 */
+	public List<Map<NAdicoExpression<A, I, C>, Float>> getMaxNAdicoExpressionsWithGivenExpressionsAsPreviousExpression(
+			final Collection<NAdicoExpression<A, I, C>> stmts, boolean operateOnGeneralisedStatements, 
+			boolean returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, 
+			final boolean strictMatchOnConditionsVsWildcardMatch, int valueAggregationStrategy) {
+		ArrayList<NAdicoQuery<A, I, C>> queries = new ArrayList<>();
+		for (NAdicoExpression<A, I, C> stmt: stmts) {
+			queries.add(new NAdicoQuery<>(stmt, true, true, operateOnGeneralisedStatements, 
+					returnCompleteExpressionVsOnlySearchStmtAndNextExpressionInSequence, strictMatchOnConditionsVsWildcardMatch, valueAggregationStrategy));
+		}
+		return executeQueries(queries);
+	}
+
+	/**
+	 * Executes a prepared query on given prepared memory entries.
+	 * @param query Prepared query
+	 * @param groups Prepared memory entries (generalised if query operates on generalised statements)
+	 * @return Map including matching statements along with values. Returns null if no matching statements.
+	 */
+	private Map<NAdicoExpression<A, I, C>, Float> executeQuery(final NAdicoQuery<A, I, C> query, final ExpressionGroups groups) {
+		final QueryExecution execution = new QueryExecution(query, groups);
+		final int[] candidateSlots = execution.candidateSlots;
+		final int numberOfSlotsToScan = candidateSlots == null ? groups.entries.length : candidateSlots.length;
+		for (int s = 0; s < numberOfSlotsToScan; s++) {
+			execution.processSlot(candidateSlots == null ? s : candidateSlots[s]);
+		}
+		return execution.getResult();
+	}
+
+	/**
+	 * Execution of a prepared query on prepared memory entries, i.e., the query's candidate slots along with 
+	 * the statements matched so far. Slots are processed individually, so that the slots of multiple queries 
+	 * can be processed in a single pass over memory slots (see {@link nAdicoActionMemory#executeQueries(Collection)}).
+	 */
+	private class QueryExecution {
+
+		/**
+		 * Prepared query
+		 */
+		final NAdicoQuery<A, I, C> query;
+
+		/**
+		 * Prepared memory entries (generalised if query operates on generalised statements)
+		 */
+		final ExpressionGroups groups;
+
+		/**
+		 * (Generalised) query statement
+		 */
+		final NAdicoExpression<A, I, C> newStmt;
+
+		/**
+		 * Cached per group: match against query
+		 */
+		final Boolean[] groupMatches;
+
+		/**
+		 * Indicates whether memorised actions with sequences not longer than the query are skipped 
+		 * (they cannot hold the query action as preceding expression)
+		 */
+		final boolean skipShorterSequences;
+
+		/**
+		 * Slots that can hold matching statements (null if all slots need to be processed)
+		 */
+		final int[] candidateSlots;
+
+		/**
+		 * Matching statements along with their group (in order of matching), values are aggregated for all groups at once
+		 */
+		final LinkedHashMap<NAdicoExpression<A, I, C>, Integer> matchingGroups = new LinkedHashMap<>();
+
+		QueryExecution(final NAdicoQuery<A, I, C> query, final ExpressionGroups groups) {
+			this.query = query;
+			this.groups = groups;
+			newStmt = query.getMatchStatement(generalizer);
+			groupMatches = new Boolean[groups.entries.length];
+			skipShorterSequences = query.givenExpressionAsPreviousVsExpressionOnSameLevel && newStmt.isAction();
+			final boolean strictMatchOnConditionsVsWildcardMatch = query.strictMatchOnConditionsVsWildcardMatch;
+
+			// Restrict matching to slots found in sequence trie (preceding sequences) or leading action indices (same level); full scan if not applicable
+			int[] slots = query.givenExpressionAsPreviousVsExpressionOnSameLevel ? 
+					getCandidateSlotsForPrecedingSequence(query.activitySequence, strictMatchOnConditionsVsWildcardMatch) : 
+					getCandidateSlots(query.indexKey, query.compareGeneralisedStatements || groups.generalised ? 
+							query.socialMarkerIndexKeys : query.markerIndexKeys);
+			if (!query.givenExpressionAsPreviousVsExpressionOnSameLevel && !query.compareGeneralisedStatements && !groups.generalised) {
+				// Restrict further to slots with matching conditions
+				slots = filterCandidateSlotsByConditions(slots, query.conditionsIndexKeys, strictMatchOnConditionsVsWildcardMatch);
+			}
+			if (slots == null && skipShorterSequences) {
+				// Restrict full scan to buckets of longer sequences
+				slots = getCandidateSlotsForLongerSequences(query.sequenceLength);
+			}
+			candidateSlots = slots;
+		}
+
+		/**
+		 * Matches the entry of a given memory slot against the query.
+		 * @param i Memory slot
+		 */
+		void processSlot(final int i) {
+			final int queryLength = query.sequenceLength;
+			final boolean strictMatchOnConditionsVsWildcardMatch = query.strictMatchOnConditionsVsWildcardMatch;
+
+			if (skipShorterSequences && indexedSequenceLengths[i] <= queryLength) {
+				return;
+			}
+
+			NAdicoExpression<A, I, C> item = groups.getEntry(i);
+			if (item == null) {
+				return;
+			}
+			final int group = groups.groupOfSlot[i];
+
 			// Only add new items if they do not already exist (with generalisation). Values should have already been correctly aggregated.
-			if (!matchingStatements.containsKey(item)) {
-				// Perform actual matching (with matching on preceding statements or on same level)
-				if (match(newStmt, item, givenExpressionAsPreviousVsExpressionOnSameLevel, strictMatchOnConditionsVsWildcardMatch)) {
-					if (returnCompleteExpressionVsOnlyNextExpressionInSequence) {
-						// COMPLETE STATEMENT: add complete original statement; override strict memory aggregation in getValueForKey() by bypassing it
-						matchingStatements.put(item, getValueForKey(item, valueAggregationStrategy, compareGeneralisedStatements, strictMatchOnConditionsVsWildcardMatch));
+			if (!matchingGroups.containsKey(item)) {
+				// Perform actual matching (with matching on preceding statements or on same level) once per group
+				if (groupMatches[group] == null) {
+					if (skipShorterSequences && item.isAction()) {
+						// Use cached sequence lengths (unless generalised) to avoid walking expression chains
+						groupMatches[group] = matchActions(newStmt, queryLength, item, groups.generalised ? 0 : indexedSequenceLengths[i], 
+								true, strictMatchOnConditionsVsWildcardMatch);
 					} else {
-						// SHORT STATEMENT: add statement sequence including original input statements and one additional subsequent one (i.e. all further expressions are removed); override strict memory aggregation in getValueForKey() by bypassing it
-						matchingStatements.put(item.getInitialExpressions(stmt.getTotalExpressionSequenceLength() + 1), 
-								getValueForKey(item, valueAggregationStrategy, compareGeneralisedStatements, strictMatchOnConditionsVsWildcardMatch));
+						groupMatches[group] = match(newStmt, item, query.givenExpressionAsPreviousVsExpressionOnSameLevel, strictMatchOnConditionsVsWildcardMatch);
+					}
+				}
+				if (groupMatches[group]) {
+					recordHit(i);
+					if (query.returnCompleteExpressionVsOnlyNextExpressionInSequence) {
+						// COMPLETE STATEMENT: add complete original statement
+						matchingGroups.put(item, group);
+					} else {
+						// SHORT STATEMENT: add statement sequence including original input statements and one additional subsequent one (i.e. all further expressions are removed)
+						matchingGroups.put(item.getInitialExpressions(queryLength + 1), group);
+					}
+				}
+			} else {
+				// Equal to already matched expression
+				recordHit(i);
+			}
+		}
+
+		/**
+		 * Aggregates the values of matching statements once all (candidate) slots have been processed.
+		 * @return Map including matching statements along with values. Returns null if no matching statements.
+		 */
+		Map<NAdicoExpression<A, I, C>, Float> getResult() {
+
+			final boolean strictMatchOnConditionsVsWildcardMatch = query.strictMatchOnConditionsVsWildcardMatch;
+
+			// Map containing all statements that match input sequence
+			Map<NAdicoExpression<A, I, C>, Float> matchingStatements = new HashMap<>();
+
+			if (!matchingGroups.isEmpty()) {
+				// Aggregate value across all entries matching the respective item for all matched groups in a single pass
+				final Float[] groupValues = groups.getAggregatedValues(matchingGroups.values(), query.valueAggregationStrategy, strictMatchOnConditionsVsWildcardMatch);
+				for (Entry<NAdicoExpression<A, I, C>, Integer> matchingGroup: matchingGroups.entrySet()) {
+					// Generalised expressions are shared with the cache and hence copied
+					matchingStatements.put(groups.generalised ? matchingGroup.getKey().makeCopy() : matchingGroup.getKey(), 
+							groupValues[matchingGroup.getValue()]);
+				}
+			}
+
+			// Test if any matching statement has been found - else return null
+			if (matchingStatements.isEmpty()) {
+				return null;
+			}
+			
+			if (query.maxOnly && matchingStatements.size() > 1) {
+				// Reduce to only max entry
+				if (debug) {
+					System.out.println("Matching statements before filtering by max value (Options: generalised statements: " +
+							query.compareGeneralisedStatements + ", strict conditions comparison: " + strictMatchOnConditionsVsWildcardMatch +
+							", return complete statements: " + query.returnCompleteExpressionVsOnlyNextExpressionInSequence + "): (" + 
+							matchingStatements.size() + "):" + matchingStatements);
+				}
+				Entry<NAdicoExpression<A, I, C>, Float> maxEntry = Collections.max((Collection)matchingStatements.entrySet(), Map.Entry.comparingByValue());
+				matchingStatements = getAllMapEntriesForValue(matchingStatements, maxEntry.getValue());
+				if (debug) {
+					System.out.println("Matching statements after filtering by max value: (" + matchingStatements.size() + "):" + matchingStatements);
+				}
+			}
+			return matchingStatements;
+		}
+	}
+
+	/**
+	 * Memory entries prepared for query execution, i.e., (optionally generalised) expression
+	 * per memory slot along with the assignment of slots to groups of identical expressions.
+	 * Entries are prepared on first access, so that queries restricted to candidate slots 
+	 * do not need to process the entire memory.
+	 */
+	private class ExpressionGroups {
+
+		/**
+		 * Indicates whether memory entries are generalised
+		 */
+		final boolean generalised;
+
+		/**
+		 * (Optionally generalised) expression per memory slot (null for empty or unprepared slots)
+		 */
+		final NAdicoExpression<A, I, C>[] entries;
+
+		/**
+		 * Group per memory slot (-1 for empty slots)
+		 */
+		final int[] groupOfSlot;
+
+		/**
+		 * Indicates whether a memory slot has been prepared
+		 */
+		final boolean[] prepared;
+
+		/**
+		 * Representative expression per group
+		 */
+		final ArrayList<NAdicoExpression<A, I, C>> keys = new ArrayList<>();
+
+		/**
+		 * Group per action. Only actions are grouped, since equality of combinations does not consider nested expressions.
+		 */
+		final HashMap<NAdicoExpression<A, I, C>, Integer> actionGroups = new HashMap<>();
+
+		/**
+		 * Aggregated value per group (keyed by aggregation method and strictness of conditions matching)
+		 */
+		final HashMap<Integer, Float[]> groupValues = new HashMap<>();
+
+		/**
+		 * Indicates whether value has been aggregated for group (keyed by aggregation method and strictness of conditions matching)
+		 */
+		final HashMap<Integer, boolean[]> groupValuesComputed = new HashMap<>();
+
+		ExpressionGroups(int numberOfSlots, boolean generalised) {
+			this.generalised = generalised;
+			entries = new NAdicoExpression[numberOfSlots];
+			groupOfSlot = new int[numberOfSlots];
+			prepared = new boolean[numberOfSlots];
+		}
+
+		/**
+		 * Returns the (optionally generalised) expression of a given slot and assigns it to its group.
+		 * @param slot Memory slot
+		 * @return Prepared expression, or null for empty slots
+		 */
+		NAdicoExpression<A, I, C> getEntry(final int slot) {
+			if (prepared[slot]) {
+				return entries[slot];
+			}
+			prepared[slot] = true;
+			if (memoryArray[slot] == null || memoryArray[slot].key == null) {
+				groupOfSlot[slot] = -1;
+				return null;
+			}
+			final NAdicoExpression<A, I, C> entry = generalised ? getGeneralisedEntry(slot) : memoryArray[slot].key;
+			entries[slot] = entry;
+			Integer group = entry.isAction() ? actionGroups.get(entry) : null;
+			if (group == null) {
+				group = keys.size();
+				keys.add(entry);
+				if (entry.isAction()) {
+					actionGroups.put(entry, group);
+				}
+			}
+			groupOfSlot[slot] = group;
+			return entry;
+		}
+
+		/**
+		 * Returns the aggregated values of all entries matching given groups on the same level
+		 * (see {@link nAdicoActionMemory#aggregateValuesForGroupedEntries(List, ExpressionGroups, int, boolean)}).
+		 * Values are computed once per group, aggregation method and strictness of conditions matching;
+		 * values of all given groups that have not been computed yet are aggregated in a single pass.
+		 * @param requestedGroups Groups
+		 * @param aggregationMethod Aggregation method
+		 * @param strictMatchOnConditionsVsWildcardMatch Indicates whether conditions have to be strictly matched (no wildcards).
+		 * @return Aggregated value per group (null if no match for group), only valid for requested (and previously requested) groups
+		 */
+		Float[] getAggregatedValues(final Collection<Integer> requestedGroups, final int aggregationMethod, final boolean strictMatchOnConditionsVsWildcardMatch) {
+			final Integer cacheKey = aggregationMethod * 2 + (strictMatchOnConditionsVsWildcardMatch ? 1 : 0);
+			Float[] values = groupValues.get(cacheKey);
+			boolean[] computed = groupValuesComputed.get(cacheKey);
+			if (values == null) {
+				values = new Float[entries.length];
+				computed = new boolean[entries.length];
+				groupValues.put(cacheKey, values);
+				groupValuesComputed.put(cacheKey, computed);
+			}
+			ArrayList<Integer> missingGroups = new ArrayList<>();
+			for (Integer group: requestedGroups) {
+				if (!computed[group]) {
+					computed[group] = true;
+					missingGroups.add(group);
+				}
+			}
+			if (!missingGroups.isEmpty()) {
+				final Float[] aggregatedValues = aggregateValuesForGroupedEntries(missingGroups, this, aggregationMethod, strictMatchOnConditionsVsWildcardMatch);
+				for (int q = 0; q < missingGroups.size(); q++) {
+					values[missingGroups.get(q)] = aggregatedValues[q];
+				}
+			}
+			return values;
+		}
+	}
+
+	/**
+	 * Sets up the preparation of memory entries for query execution. Entries are optionally
+	 * generalised, and identical actions are grouped, so that matching and value aggregation
+	 * only need to be performed once per group.
+	 * @param generaliseMemoryEntries Indicates whether memory entries are generalised
+	 * @return Prepared memory entries
+	 */
+	private ExpressionGroups groupMemoryEntries(final boolean generaliseMemoryEntries) {
+		if (generaliseMemoryEntries && generalizer == null) {
+			throw new RuntimeException("NAdicoGeneralizer has not been specified during instantiation of NAdicoMemory.");
+		}
+		ensureIndicesAreConsistent();
+		return new ExpressionGroups(memoryArray.length, generaliseMemoryEntries);
+	}
+
+	/**
+	 * Aggregates the values of all prepared memory entries that match the respective representative expression of
+	 * given groups on the same level. For each group, equivalent to {@link #getValueForKey(NAdicoExpression, int, boolean, boolean)},
+	 * but operates on prepared entries (i.e., without repeated generalisation), matches once per pair of groups and
+	 * accumulates the values of all groups in a single pass over the union of their candidate slots.
+	 * @param queryGroups Groups whose representative expressions are used as queries
+	 * @param groups Prepared memory entries
+	 * @param aggregationMethod Aggregation method
+	 * @param strictMatchOnConditionsVsWildcardMatch Indicates whether conditions have to be strictly matched (no wildcards).
+	 * @return Aggregated value per given group (in order of given groups), null if no match for group
+	 */
+	private Float[] aggregateValuesForGroupedEntries(final List<Integer> queryGroups, final ExpressionGroups groups,
+			final int aggregationMethod, final boolean strictMatchOnConditionsVsWildcardMatch) {
+		// Union of candidate slots of all queries (null if any query requires a full scan)
+		BitSet candidateSlots = new BitSet(groups.entries.length);
+		for (Integer queryGroup: queryGroups) {
+			final NAdicoExpression<A, I, C> query = groups.keys.get(queryGroup);
+			int[] slots = getCandidateSlots(query, !groups.generalised);
+			if (!groups.generalised) {
+				slots = filterCandidateSlotsByConditions(slots, getConditionsIndexKeys(query), strictMatchOnConditionsVsWildcardMatch);
+			}
+			if (slots == null) {
+				candidateSlots = null;
+				break;
+			}
+			for (int slot: slots) {
+				candidateSlots.set(slot);
+			}
+		}
+		// Queries matched by each group (determined upon first entry of group)
+		final int[][] matchedQueries = new int[groups.entries.length][];
+		final float[] results = new float[queryGroups.size()];
+		final int[] numberOfPassedChecks = new int[queryGroups.size()];
+		int i = candidateSlots == null ? 0 : candidateSlots.nextSetBit(0);
+		while (i >= 0 && i < groups.entries.length) {
+			if (indexedHasValue[i] && groups.getEntry(i) != null) {
+				final int group = groups.groupOfSlot[i];
+				if (matchedQueries[group] == null) {
+					int[] matches = new int[queryGroups.size()];
+					int numberOfMatches = 0;
+					for (int q = 0; q < queryGroups.size(); q++) {
+						if (match(groups.keys.get(queryGroups.get(q)), groups.keys.get(group), false, strictMatchOnConditionsVsWildcardMatch)) {
+							matches[numberOfMatches++] = q;
+						}
 					}
+					matchedQueries[group] = Arrays.copyOf(matches, numberOfMatches);
+				}
+				for (int q: matchedQueries[group]) {
+					recordHit(i);
+					results[q] = accumulateSlot(results[q], i, aggregationMethod);
+					numberOfPassedChecks[q] += getNumberOfValues(i);
 				}
 			}
+			i = candidateSlots == null ? i + 1 : candidateSlots.nextSetBit(i + 1);
 		}
-		
-		// Test if any matching statement has been found - else return null
-		if (matchingStatements.isEmpty()) {
+		final Float[] values = new Float[queryGroups.size()];
+		for (int q = 0; q < values.length; q++) {
+			values[q] = finishAggregation(results[q], numberOfPassedChecks[q], aggregationMethod);
+		}
+		return values;
+	}
+
+	/**
+	 * Accumulates a value into an intermediate aggregation result based on a given aggregation method.
+	 * Mean values are summed; the division by the number of values is left to {@link #finishAggregation(float, int, int)}.
+	 * @param result Intermediate result (0 if no value has been accumulated yet)
+	 * @param value Value to be accumulated
+	 * @param aggregationMethod Aggregation method
+	 * @return Updated intermediate result
+	 */
+	private static float accumulateValue(final float result, final float value, final int aggregationMethod) {
+		switch (aggregationMethod) {
+			case AGGREGATION_MEAN:
+			case AGGREGATION_SUM:
+				// Sum values
+				return result + value;
+			case AGGREGATION_COUNT:
+				// Count matches
+				return result + 1;
+			case AGGREGATION_MAX:
+				// Maximum value
+				return Math.max(result, value);
+			default: throw new RuntimeException("Invalid aggregation method " + aggregationMethod + " in nAdicoActionMemory.");
+		}
+	}
+
+	/**
+	 * Finalises an aggregation result accumulated using {@link #accumulateValue(float, float, int)}.
+	 * @param result Accumulated result
+	 * @param numberOfValues Number of accumulated values
+	 * @param aggregationMethod Aggregation method
+	 * @return Aggregated value, or null if no value has been accumulated
+	 */
+	private static Float finishAggregation(final float result, final int numberOfValues, final int aggregationMethod) {
+		if (numberOfValues == 0) {
 			return null;
 		}
-		
-		if (maxOnly && matchingStatements.size() > 1) {
-			// Reduce to only max entry
-			if (debug) {
-				System.out.println("Matching statements before filtering by max value (Options: generalised statements: " +
-						compareGeneralisedStatements + ", strict conditions comparison: " + strictMatchOnConditionsVsWildcardMatch +
-						", return complete statements: " + returnCompleteExpressionVsOnlyNextExpressionInSequence + "): (" + 
-						matchingStatements.size() + "):" + matchingStatements);
-			}
-			Entry<NAdicoExpression<A, I, C>, Float> maxEntry = Collections.max((Collection)matchingStatements.entrySet(), Map.Entry.comparingByValue());
-			matchingStatements = getAllMapEntriesForValue(matchingStatements, maxEntry.getValue());
-			if (debug) {
-				System.out.println("Matching statements after filtering by max value: (" + matchingStatements.size() + "):" + matchingStatements);
-			}
+		if (aggregationMethod == AGGREGATION_MEAN) {
+			return result/(float)numberOfValues;
 		}
-		return matchingStatements;
+		return result;
 	}
 
 
@@ -424,84 +3346,66 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 	}
 
 	/**
-	 * Generalizes memorized statements and aggregates those based on given aggregation strategy #aggregationMode. However, only aggregates statements
+	 * Returns the aggregates of generalized memorized statements used for ranking. Only aggregates statements
 	 * with same structural form (i.e., not across actions on different levels of a statement (e.g., ADICADIC vs ADIC).
-	 * @param aggregationMode Aggregation mode
+	 * Aggregates are maintained incrementally as memory entries change (see {@link #getGeneralisedAggregates()}).
+	 * Returns an empty map if the memory is empty and no generalizer has been specified.
 	 * @return
 	 */
-	private HashMap<NAdicoExpression<A, I, C>, Float> generalizeAndAggregateGroupedNAdicoExpressions(int aggregationMode) {
-
-		// Map holding final entries
-		HashMap<NAdicoExpression<A, I, C>, DiscreteNonAggregatingMemory<NAdicoExpression<A, I, C>, Float>.CountSumEntry> intermediateMap = new HashMap<>();
-
-		// Memory entries to be processed
-		HashMap<NAdicoExpression<A, I, C>, DiscreteNonAggregatingMemory<NAdicoExpression<A, I, C>, Float>.CountSumEntry> entries = getCompleteEntries();
+	private HashMap<NAdicoExpression<A, I, C>, GeneralisedAggregate> getGeneralisedAggregatesForRanking() {
 
-		// Iterate through memory entry
-		for (Entry<NAdicoExpression<A, I, C>, CountSumEntry> entry : entries.entrySet()) {
-
-			// Generalize each memory entry before aggregation
-			NAdicoExpression<A, I, C> generalizedExpr = (NAdicoExpression<A, I, C>) generalizer.generalizeExpression((NAdicoExpression<Attributes<LinkedHashSet<String>>, Aim<Float>, Conditions<NAdicoExpression>>) entry.getKey());
-
-			// Manage generalized expressions
-			if (!intermediateMap.containsKey(generalizedExpr)) {
-				intermediateMap.put(generalizedExpr, entry.getValue());
-			} else {
-				DiscreteNonAggregatingMemory<NAdicoExpression<A, I, C>, Float>.CountSumEntry tempEntry = entry.getValue();
-				intermediateMap.get(generalizedExpr).count += tempEntry.count;
-				intermediateMap.get(generalizedExpr).sum += tempEntry.sum;
-				intermediateMap.get(generalizedExpr).max = Math.max(intermediateMap.get(generalizedExpr).max, tempEntry.max);
+		if (generalizer == null) {
+			if (!getAllKeys().isEmpty()) {
+				throw new RuntimeException("NAdicoGeneralizer has not been specified during instantiation of NAdicoMemory.");
 			}
-
+			return new HashMap<>();
 		}
 
-		// Perform final calculations
-
-		// Map holding final entries
-		HashMap<NAdicoExpression<A, I, C>, Float> outputMap = new HashMap<>();
+		HashMap<NAdicoExpression<A, I, C>, GeneralisedAggregate> intermediateMap = getGeneralisedAggregates();
 
 		if (debug || oneOffDebug) {
 			System.out.println("Intermediate map " + owner + ": " + intermediateMap);
 		}
+		return intermediateMap;
+	}
 
-		// Perform aggregation based on specified aggregation mode
-		for (NAdicoExpression<A, I, C> key: intermediateMap.keySet()) {
+	/**
+	 * Returns the final value of a given aggregate per generalised expression based on a given aggregation mode.
+	 * @param aggregate Aggregate
+	 * @param aggregationMode Aggregation mode
+	 * @return
+	 */
+	private float getAggregatedValue(final GeneralisedAggregate aggregate, final int aggregationMode) {
 
-			// Perform intended aggregation
-			switch (aggregationMode) {
-				case AGGREGATION_COUNT:
-					if (debug || oneOffDebug) {
-						System.out.println("Applied aggregate function 'count'");
-					}
-					// Count of statements for entry
-					outputMap.put(key, (float)intermediateMap.get(key).count);
-					break;
-				case AGGREGATION_MEAN:
-					if (debug || oneOffDebug) {
-						System.out.println("Applied aggregate function 'mean'");
-					}
-					// Mean value aggregation
-					outputMap.put(key, intermediateMap.get(key).sum/(float)intermediateMap.get(key).count);
-					break;
-				case AGGREGATION_SUM:
-					if (debug || oneOffDebug) {
-						System.out.println("Applied aggregate function 'sum'");
-					}
-					// Sum value
-					outputMap.put(key, intermediateMap.get(key).sum);
-					break;
-				case AGGREGATION_MAX:
-					if (debug || oneOffDebug) {
-						System.out.println("Applied aggregate function 'max'");
-					}
-					// Max value
-					outputMap.put(key, intermediateMap.get(key).max);
-					break;
-				default:
-					throw new RuntimeException("Unknown aggregation mode when returning entries: " + aggregationMode);
-			}
+		// Perform intended aggregation
+		switch (aggregationMode) {
+			case AGGREGATION_COUNT:
+				if (debug || oneOffDebug) {
+					System.out.println("Applied aggregate function 'count'");
+				}
+				// Count of statements for entry
+				return (float)aggregate.count;
+			case AGGREGATION_MEAN:
+				if (debug || oneOffDebug) {
+					System.out.println("Applied aggregate function 'mean'");
+				}
+				// Mean value aggregation
+				return decay(aggregate.sum)/(float)aggregate.count;
+			case AGGREGATION_SUM:
+				if (debug || oneOffDebug) {
+					System.out.println("Applied aggregate function 'sum'");
+				}
+				// Sum value
+				return decay(aggregate.sum);
+			case AGGREGATION_MAX:
+				if (debug || oneOffDebug) {
+					System.out.println("Applied aggregate function 'max'");
+				}
+				// Max value
+				return decay(getMaxValue(aggregate));
+			default:
+				throw new RuntimeException("Unknown aggregation mode when returning entries: " + aggregationMode);
 		}
-		return outputMap;
 	}
 
 	/**
@@ -510,15 +3414,13 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 	 */
 	public List<PairValueComparison<NAdicoExpression<A, I, C>, Float>> getRankedNAdicoExpressions(int aggregationMode) {
 
-		// Generalize and aggregate memory statements based on given strategy, before converting the structure
-		HashMap<NAdicoExpression<A, I, C>, Float> map = generalizeAndAggregateGroupedNAdicoExpressions(aggregationMode);
-
 		// List to be populated
 		List<PairValueComparison<NAdicoExpression<A, I, C>, Float>> list = new ArrayList<>();
 
-		// Iterate through generalized values
-		for (Entry<NAdicoExpression<A, I, C>, Float> entry: map.entrySet()) {
-			list.add(new PairValueComparison<NAdicoExpression<A, I, C>, Float>(entry.getKey(), entry.getValue()));
+		// Generalize and aggregate memory statements based on given strategy
+		for (Entry<NAdicoExpression<A, I, C>, GeneralisedAggregate> entry: getGeneralisedAggregatesForRanking().entrySet()) {
+			// Generalised expressions are shared with the cache and hence copied
+			list.add(new PairValueComparison<NAdicoExpression<A, I, C>, Float>(entry.getKey().makeCopy(), getAggregatedValue(entry.getValue(), aggregationMode)));
 		}
 
 		// Sort entries
@@ -528,6 +3430,62 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 		return list;
 	}
 
+	/**
+	 * Returns the given number of highest-valued memory entries (highest to lowest) based on a given aggregation strategy. 
+	 * Produces the same entries in the same order as the beginning of the list returned by {@link #getRankedNAdicoExpressions(int)}, 
+	 * but offers aggregated entries to a bounded heap as they are computed instead of sorting all aggregated entries.
+	 * @param aggregationMode Aggregation mode
+	 * @param numberOfEntries Maximum number of entries to be returned
+	 * @return
+	 */
+	public List<PairValueComparison<NAdicoExpression<A, I, C>, Float>> getRankedNAdicoExpressions(int aggregationMode, int numberOfEntries) {
+		if (numberOfEntries < 0) {
+			throw new RuntimeException("Invalid number of ranked entries requested: " + numberOfEntries);
+		}
+
+		// Aggregates per generalised expression
+		HashMap<NAdicoExpression<A, I, C>, GeneralisedAggregate> aggregates = getGeneralisedAggregatesForRanking();
+
+		// Heap holding best entries along with iteration position, with lowest-ranked entry on top. Mirrors the full ranking, 
+		// i.e., entries are ordered in reverse order, with equally-ranked entries in ascending order of value, then iteration
+		final Comparator<SimpleImmutableEntry<Integer, PairValueComparison<NAdicoExpression<A, I, C>, Float>>> rankComparator = (first, second) -> {
+			int comparison = first.getValue().compareTo(second.getValue());
+			if (comparison == 0) {
+				comparison = second.getValue().getValue().compareTo(first.getValue().getValue());
+			}
+			return comparison != 0 ? comparison : Integer.compare(second.getKey(), first.getKey());
+		};
+		PriorityQueue<SimpleImmutableEntry<Integer, PairValueComparison<NAdicoExpression<A, I, C>, Float>>> heap = 
+				new PriorityQueue<>(Math.max(1, Math.min(numberOfEntries, aggregates.size())), rankComparator);
+
+		int position = 0;
+		for (Entry<NAdicoExpression<A, I, C>, GeneralisedAggregate> entry: aggregates.entrySet()) {
+			if (numberOfEntries == 0) {
+				break;
+			}
+			// Aggregate value and offer entry to heap
+			SimpleImmutableEntry<Integer, PairValueComparison<NAdicoExpression<A, I, C>, Float>> candidate = 
+					new SimpleImmutableEntry<>(position++, new PairValueComparison<NAdicoExpression<A, I, C>, Float>(entry.getKey(), 
+							getAggregatedValue(entry.getValue(), aggregationMode)));
+			if (heap.size() < numberOfEntries) {
+				heap.add(candidate);
+			} else if (rankComparator.compare(candidate, heap.peek()) > 0) {
+				// Replace lowest-ranked entry
+				heap.poll();
+				heap.add(candidate);
+			}
+		}
+
+		// Extract entries from lowest to highest, and reverse
+		LinkedList<PairValueComparison<NAdicoExpression<A, I, C>, Float>> list = new LinkedList<>();
+		while (!heap.isEmpty()) {
+			// Generalised expressions are shared with the cache and hence copied
+			final PairValueComparison<NAdicoExpression<A, I, C>, Float> entry = heap.poll().getValue();
+			list.addFirst(new PairValueComparison<NAdicoExpression<A, I, C>, Float>(entry.getKey().makeCopy(), entry.getValue()));
+		}
+		return new ArrayList<>(list);
+	}
+
 	/**
 	 * Returns the aggregated value for given nADICO action statements using a given aggregation method ({@link #AGGREGATION_COUNT}, {@link #AGGREGATION_MEAN}, {@link #AGGREGATION_SUM}).
 	 * strictMatchOnConditionsVsWildcardMatch indicates whether conditions should be strictly matched
@@ -542,57 +3500,54 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 		
 		int numberOfPassedChecks = 0;
 		// collected results
-		Float result = null;
+		float result = 0f;
 		
 		if (debug || oneOffDebug) {
 			System.out.println("==== Started value aggregation for particular query: " + actionStatement);
 		}
 		
 		NAdicoExpression<A, I, C> memoryEntry;
-		
+
+		ensureIndicesAreConsistent();
+
+		// Restrict matching to slots holding the query's activity and social markers (full scan for wildcard queries)
+		int[] candidateSlots = getCandidateSlots(actionStatement, !generaliseMemoryEntriesBeforeComparison);
+		if (!generaliseMemoryEntriesBeforeComparison) {
+			// Restrict further to slots with matching conditions
+			candidateSlots = filterCandidateSlotsByConditions(candidateSlots, getConditionsIndexKeys(actionStatement), strictMatchOnConditionsVsWildcardMatch);
+		}
+		final int numberOfSlotsToScan = candidateSlots == null ? memoryArray.length : candidateSlots.length;
+
+		// Evicted entries are retained per expression, so queries need to match memorised expressions exactly
+		final boolean includeEvictedEntries = evictionSketch != null && !generaliseMemoryEntriesBeforeComparison 
+				&& strictMatchOnConditionsVsWildcardMatch && aggregationMethod != AGGREGATION_MAX;
+
 		// do matching
-		for (int i = 0; i < memoryArray.length; i++) {
-			if (memoryArray[i] != null && memoryArray[i].key != null && memoryArray[i].value != null) { 
+		for (int s = 0; s < numberOfSlotsToScan; s++) {
+			final int i = candidateSlots == null ? s : candidateSlots[s];
+			if (indexedHasValue[i]) { 
 				
 				// Temporarily assignment for matching (and potential generalisation)
-				memoryEntry = memoryArray[i].key;
+				memoryEntry = indexedKeys[i];
 				
-				// Generalise if specified
+				// Generalise if specified (cached per slot)
 				if (generaliseMemoryEntriesBeforeComparison) {
-					if (generalizer == null) {
-						throw new RuntimeException("NAdicoGeneralizer has not been specified during instantiation of NAdicoMemory.");
-					}
-					memoryEntry = (NAdicoExpression<A, I, C>) 
-							generalizer.generalizeExpression((NAdicoExpression<Attributes<LinkedHashSet<String>>, Aim<Float>, Conditions<NAdicoExpression>>) memoryEntry);
+					memoryEntry = getGeneralisedEntry(i);
 				}
 				// Perform match on instances (match is exact, so all input needs to be generalised if operating on generalised expressions)
 				if (match(actionStatement, memoryEntry, false, strictMatchOnConditionsVsWildcardMatch)) {
-					if (result == null) {
-						result = 0f;
-					}
-					switch (aggregationMethod) {
-						case AGGREGATION_MEAN:
-							result += memoryArray[i].value;
-							// Count iterations
-							numberOfPassedChecks++;
-							break;
-						case AGGREGATION_SUM:
-							// Sum values
-							result += memoryArray[i].value;
-							break;
-						case AGGREGATION_COUNT:
-							// Count matches
-							result++;
-							break;
-						case AGGREGATION_MAX:
-							// Maximum value
-							result = Math.max(result, memoryArray[i].value);
-							break;
-						default: throw new RuntimeException("Invalid aggregation method " + aggregationMethod + " in nAdicoActionMemory.");
+					if (includeEvictedEntries && !actionStatement.equals(memoryEntry)) {
+						throw new RuntimeException("Queries in approximate mode need to be equal to the memorised expressions they match, " + 
+								"since evicted entries are retained per expression. Query: " + actionStatement + ", matching entry: " + memoryEntry);
 					}
+					recordHit(i);
+					// Accumulate all values held in slot (i.e., all observations in compact mode)
+					result = accumulateSlot(result, i, aggregationMethod);
+					// Count iterations
+					numberOfPassedChecks += getNumberOfValues(i);
 					if (debug || oneOffDebug) {
 						System.out.println("Statement\n " + memoryEntry + " (generalised: " + generaliseMemoryEntriesBeforeComparison + 
-								")\n  matches\n  Query " + actionStatement + "\nAdded value: " + memoryArray[i].value);
+								")\n  matches\n  Query " + actionStatement + "\nAdded value: " + getSlotValue(i));
 					}
 				} else {
 					if (debug || oneOffDebug) {
@@ -602,22 +3557,28 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 				}
 			}
 		}
+		if (includeEvictedEntries) {
+			// Add approximate aggregates of evicted entries (of equal expressions)
+			final int fingerprint = actionStatement.hashCode();
+			final int evictedCount = evictionSketch.estimateCount(fingerprint);
+			if (evictedCount != 0) {
+				result += aggregationMethod == AGGREGATION_COUNT ? evictedCount : (float)(evictionSketch.estimateSum(fingerprint) * decayFactor);
+				numberOfPassedChecks += evictedCount;
+				if (debug || oneOffDebug) {
+					System.out.println("Added approximate aggregate of " + evictedCount + " evicted entries for query " + actionStatement);
+				}
+			}
+		}
+		final Float aggregatedValue = finishAggregation(result, numberOfPassedChecks, aggregationMethod);
 		if (oneOffDebug) {
 			System.out.println("Aggregation method: " + aggregationMethod);
-			System.out.println("Aggregated value: " + result);
+			System.out.println("Aggregated value: " + aggregatedValue);
 			oneOffDebug = false;
 		}
 		if (debug || oneOffDebug) {
-			System.out.println("==== Finished value aggregation for particular query: " + actionStatement + ", Value: " + result);
-		}
-		if (result == null) {
-			// can't do further operation on null
-			return result;
-		}
-		if (aggregationMethod == AGGREGATION_MEAN) {
-			return result/(float)numberOfPassedChecks;
+			System.out.println("==== Finished value aggregation for particular query: " + actionStatement + ", Value: " + aggregatedValue);
 		}
-		return result;
+		return aggregatedValue;
 	}
 	
 	/**
@@ -750,6 +3711,24 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 	 * @return true if match successful
 	 */
 	private boolean matchActions(final NAdicoExpression<A, I, C> newStatement, final NAdicoExpression<A, I, C> existingStatement, final boolean matchPrecedingSubsequence, final boolean strictMatchOnConditionsVsWildcardMatch) {
+		return matchActions(newStatement, 0, existingStatement, 0, matchPrecedingSubsequence, strictMatchOnConditionsVsWildcardMatch);
+	}
+
+	/**
+	 * Returns true if candidate statement contains all fields and properties 
+	 * specified in actionStatement, using known expression sequence lengths of both statements
+	 * (see {@link NAdicoExpression#getTotalExpressionSequenceLength()}) when matching on preceding subsequences.
+	 * @param newStatement New statement
+	 * @param newStatementLength Sequence length of new statement (0 if unknown)
+	 * @param existingStatement Existing statement to be matched
+	 * @param existingStatementLength Sequence length of existing statement (0 if unknown)
+	 * @param matchPrecedingSubsequence Matches on preceding subsequence
+	 * @param strictMatchOnConditionsVsWildcardMatch Strict match on conditions (no wildcards) vs. match on wildcard conditions
+	 * @return true if match successful
+	 */
+	private boolean matchActions(final NAdicoExpression<A, I, C> newStatement, final int newStatementLength, 
+			final NAdicoExpression<A, I, C> existingStatement, final int existingStatementLength, 
+			final boolean matchPrecedingSubsequence, final boolean strictMatchOnConditionsVsWildcardMatch) {
 		
 		NAdicoExpression<A, I, C> oldStmt = existingStatement;
 		
@@ -769,11 +3748,12 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 		if (newStatement != null) {
 			
 			if (matchPrecedingSubsequence) {
-				int newStmtLength = newStatement.getTotalExpressionSequenceLength();
+				int newStmtLength = newStatementLength > 0 ? newStatementLength : newStatement.getTotalExpressionSequenceLength();
+				int oldStmtLength = existingStatementLength > 0 ? existingStatementLength : oldStmt.getTotalExpressionSequenceLength();
 				//System.out.println("New stmt: " + newStatement);
 				//System.out.println("New stmt length: " + newStmtLength);
-				//System.out.println("Old stmt length: " + oldStmt.getTotalExpressionSequenceLength());
-				if (oldStmt.getTotalExpressionSequenceLength() <= newStmtLength) {
+				//System.out.println("Old stmt length: " + oldStmtLength);
+				if (oldStmtLength <= newStmtLength) {
 					// If length of existing statement is smaller than new one, it can't hold a subsequence, so we can abort comparison here
 					if (debug) {
 						System.out.println("Matching preceding subsequence: Comparison of Statement failed - old statement too short (matching on subsequence: " + 
@@ -784,7 +3764,8 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 				}
 				//System.out.println("Old before: " + oldStmt);
 				if (strictMatchOnConditionsVsWildcardMatch) {
-					oldStmt = oldStmt.getInitialExpressions(newStmtLength);
+					// Truncate to initial expressions of query length
+					oldStmt = oldStmt.backtrackThroughPrecedingExpressionsForGivenLevels(oldStmtLength - newStmtLength);
 					if (debug) {
 						System.out.println("Strict conditions comparison: Switched to base statement length for comparison. Refined: " + oldStmt);
 					}
@@ -792,8 +3773,9 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 					// wildcard-based conditions matching
 					// In the wildcard case, backtrack through individual levels and attempt matching until levels are exhausted
 					do {
-						if (oldStmt.getTotalExpressionSequenceLength() > 1) {
+						if (oldStmtLength > 1) {
 							oldStmt = oldStmt.backtrackThroughPrecedingExpressionsForGivenLevels(1);
+							oldStmtLength--;
 							if (debug) {
 								System.out.println("Wildcard conditions comparison: Iterated one level down for statement comparison: " + oldStmt);
 							}
@@ -967,14 +3949,429 @@ public class nAdicoActionMemory<A extends Attributes, I extends Aim, C extends C
 
 	/**
 	 * Forgets information by reducing valence based multiplication with discount factor.
+	 * Applied lazily by updating the cumulative decay factor in constant time; values are only 
+	 * renormalised if the decay factor falls below {@link #DECAY_RENORMALISATION_THRESHOLD}
+	 * (or if the discount factor is not positive).
 	 */
 	@Override
 	public void forgetAtRoundEnd(float discountFactor) {
-		for (int i = 0; i < this.memoryArray.length; i++) {
-			// Iterate through all entries and multiply with discount factor.
-			if (this.memoryArray[i] != null) {
-				this.memoryArray[i].value *= discountFactor;
+		applyDecay(discountFactor);
+	}
+
+	/**
+	 * Multiplies all values with a given factor by updating the cumulative decay factor.
+	 * @param factor Factor
+	 */
+	private void applyDecay(double factor) {
+		decayFactor *= factor;
+		if (!eventStreams.isEmpty() && factor != 1d) {
+			publishEvent(NAdicoMemoryEvent.DECAYED, NAdicoMemoryEvent.ALL_SLOTS, null, 1f, (float)factor);
+		}
+		if (factor <= 0 || decayFactor < DECAY_RENORMALISATION_THRESHOLD) {
+			renormaliseValues();
+		} else if (evictionPolicy != null) {
+			evictionPolicy.decayFactorChanged(decayFactor);
+		}
+	}
+
+	/**
+	 * Activates time-based decay of memory entries with a given half-life, i.e., each entry's value 
+	 * decays based on the logical time passed since its memorisation (see {@link #advanceTime(long)}). 
+	 * Since all entries share the same half-life, the decay of individual entries is expressed as a 
+	 * common factor while time advances, so that advancing time does not require touching memory entries. 
+	 * Upon activation or change of the half-life, entries are re-aged, i.e., the time-based decay of each 
+	 * entry is recomputed from its age (based on its memorisation time) and the given half-life 
+	 * (in a single pass over memory entries). Deactivation retains the decay applied so far. 
+	 * Entries retained in approximate mode (see {@link #activateApproximateMode(double, double)}) are not re-aged.
+	 * Can be combined with {@link #forgetAtRoundEnd(float)}.
+	 * @param halfLife Half-life in logical time units (null deactivates time-based decay)
+	 */
+	public void setHalfLife(Float halfLife) {
+		if (halfLife != null && !(halfLife > 0)) {
+			throw new RuntimeException("Half-life for time-based decay of memory entries needs to be positive. Provided value: " + halfLife);
+		}
+		if (halfLife != null && (!halfLife.equals(agingHalfLife) || agingTime != currentTime)) {
+			reageEntries(halfLife);
+		}
+		this.halfLife = halfLife;
+	}
+
+	/**
+	 * Recomputes the time-based decay of all memory entries from their age based on a given half-life.
+	 * @param halfLife Half-life
+	 */
+	private void reageEntries(final float halfLife) {
+		copyOnWrite();
+		ensureIndicesAreConsistent();
+		if (compactEntries != null) {
+			reageObservations(halfLife);
+		} else {
+			for (int slot = 0; slot < indexedKeys.length; slot++) {
+				if (indexedKeys[slot] == null || !indexedHasValue[slot]) {
+					continue;
+				}
+				final double halfLives = getOutstandingHalfLives(indexedTimestamps[slot], halfLife);
+				if (halfLives != 0) {
+					changeStoredValue(slot, (float)(indexedValues[slot] * Math.pow(0.5, halfLives)));
+				}
+			}
+		}
+		agingHalfLife = halfLife;
+		agingTime = currentTime;
+		if (debug) {
+			System.out.println("Re-aged memory entries of " + owner + " based on half-life " + halfLife);
+		}
+	}
+
+	/**
+	 * Recomputes the time-based decay of all observations (compact mode) from their age based on a given half-life.
+	 * @param halfLife Half-life
+	 */
+	private void reageObservations(final float halfLife) {
+		for (int i = 0; i < numberOfObservations; i++) {
+			final int position = (oldestObservation + i) % observationSlots.length;
+			final int slot = observationSlots[position];
+			if (slot == -1 || !observationHasValue[position]) {
+				continue;
+			}
+			final double halfLives = getOutstandingHalfLives(observationTimestamps[position], halfLife);
+			if (halfLives != 0) {
+				final float oldValue = observationValues[position];
+				final float value = (float)(oldValue * Math.pow(0.5, halfLives));
+				changeObservations(slot, oldValue, false);
+				changeObservations(slot, value, true);
+				observationValues[position] = value;
+				if (!eventStreams.isEmpty()) {
+					publishEvent(NAdicoMemoryEvent.OVERWRITTEN, slot, indexedKeys[slot], decay(oldValue), decay(value));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of half-lives an entry memorised at a given time should have decayed by (based on 
+	 * a given half-life), less the ones it has already decayed by.
+	 * @param memorisationTime Logical time of memorisation
+	 * @param halfLife Half-life
+	 * @return
+	 */
+	private double getOutstandingHalfLives(final long memorisationTime, final float halfLife) {
+		double halfLives = (currentTime - memorisationTime) / (double)halfLife;
+		if (agingHalfLife != null && agingTime > memorisationTime) {
+			halfLives -= (agingTime - memorisationTime) / (double)agingHalfLife;
+		}
+		return halfLives;
+	}
+
+	/**
+	 * Changes the value (in undecayed units) of the entry held in a given occupied slot and keeps indices in line.
+	 * As opposed to memorisation, the entry retains its memorisation time and its state in the eviction policy.
+	 * @param slot Memory slot
+	 * @param value New value in undecayed units
+	 */
+	private void changeStoredValue(final int slot, final float value) {
+		final NAdicoExpression<A, I, C> key = indexedKeys[slot];
+		final List<String> activities = getActivitySequence(key);
+		if (generalisedAggregates != null) {
+			removeFromGeneralisedAggregates(slot);
+		}
+		if (activities != null) {
+			sequenceTrie.remove(slot, activities, indexedValues[slot]);
+		}
+		final float oldValue = decay(indexedValues[slot]);
+		memoryArray[slot].value = value;
+		indexedValues[slot] = value;
+		if (activities != null) {
+			sequenceTrie.insert(slot, activities, value);
+		}
+		if (generalisedAggregates != null) {
+			addToGeneralisedAggregates(slot);
+		}
+		if (evictionPolicy != null) {
+			evictionPolicy.slotValueChanged(slot, value);
+		}
+		if (!eventStreams.isEmpty()) {
+			publishEvent(NAdicoMemoryEvent.OVERWRITTEN, slot, key, oldValue, decay(value));
+		}
+	}
+
+	/**
+	 * Returns the half-life of memory entries if time-based decay is activated, else null.
+	 * @return
+	 */
+	public Float getHalfLife() {
+		return halfLife;
+	}
+
+	/**
+	 * Returns the current logical time of memory.
+	 * @return
+	 */
+	public long getCurrentTime() {
+		return currentTime;
+	}
+
+	/**
+	 * Advances the logical time of memory by one unit.
+	 */
+	public void advanceTime() {
+		advanceTime(1);
+	}
+
+	/**
+	 * Advances the logical time of memory by a given number of units. If time-based decay is activated
+	 * (see {@link #setHalfLife(Float)}), the values of all memory entries decay according to their age.
+	 * @param timeUnits Number of time units
+	 */
+	public void advanceTime(long timeUnits) {
+		if (timeUnits < 0) {
+			throw new RuntimeException("Logical time of memory cannot be reversed. Provided time units: " + timeUnits);
+		}
+		currentTime += timeUnits;
+		if (halfLife != null && timeUnits > 0) {
+			applyDecay(Math.pow(0.5, timeUnits / (double)halfLife));
+			agingTime = currentTime;
+		}
+	}
+
+	/**
+	 * Activates approximate mode, in which entries evicted from memory are retained in a count-sum sketch
+	 * of constant size (see {@link CountSumSketch}), so that memory covers an unbounded history with constant
+	 * footprint. {@link #getValueForKey(NAdicoExpression)}, {@link #getCountForKey(NAdicoExpression)} and
+	 * {@link #getMeanValueForKey(NAdicoExpression)} subsequently return the exact aggregate of memorised entries
+	 * plus the approximate aggregate of entries evicted since activation. Approximate counts exceed the
+	 * actual ones by at most epsilon times the number of evicted entries with probability 1 - delta.
+	 * Since evicted entries are retained per expression (see {@link NAdicoExpression#hashCode()}), those methods 
+	 * only accept queries for exact expressions in approximate mode, i.e., queries that are equal to all memorised 
+	 * expressions they match (e.g., without wildcards), and throw an exception for other (partial) queries.
+	 * Evicted entries are subject to forgetting and time-based decay like memorised ones.
+	 * Reactivation discards previously retained entries.
+	 * @param epsilon Relative error of approximate counts (e.g., 0.001)
+	 * @param delta Probability of exceeding relative error (e.g., 0.01)
+	 */
+	public void activateApproximateMode(double epsilon, double delta) {
+		if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+			throw new RuntimeException("Error bounds for approximate mode need to be in (0, 1). Epsilon: " + epsilon + ", delta: " + delta);
+		}
+		copyOnWrite();
+		ensureIndicesAreConsistent();
+		evictionSketch = new CountSumSketch(epsilon, delta);
+	}
+
+	/**
+	 * Deactivates approximate mode and discards retained evicted entries.
+	 */
+	public void deactivateApproximateMode() {
+		copyOnWrite();
+		evictionSketch = null;
+	}
+
+	/**
+	 * Indicates whether approximate mode is activated (see {@link #activateApproximateMode(double, double)}).
+	 * @return
+	 */
+	public boolean isApproximateMode() {
+		return evictionSketch != null;
+	}
+
+	/**
+	 * Returns the sketch retaining evicted entries (used for persistence).
+	 * @return Sketch, or null if approximate mode is deactivated
+	 */
+	CountSumSketch getEvictionSketch() {
+		return evictionSketch;
+	}
+
+	/**
+	 * Restores the sketch retaining evicted entries, i.e., activates approximate mode (used to restore persisted memories).
+	 * @param sketch Sketch (sums in undecayed units)
+	 */
+	void restoreEvictionSketch(final CountSumSketch sketch) {
+		copyOnWrite();
+		evictionSketch = sketch;
+	}
+
+	/**
+	 * Returns the number of evicted entries retained in approximate form (0 if approximate mode is deactivated).
+	 * @return
+	 */
+	public long getNumberOfEvictedEntries() {
+		return evictionSketch == null ? 0 : evictionSketch.getNumberOfValues();
+	}
+
+	/**
+	 * Applies the cumulative decay factor to all stored values (and indices), i.e., converts all 
+	 * values from undecayed units into effective values, and resets the decay factor.
+	 * Note: Values in the memory array are held in undecayed units, which is transparent for the 
+	 * query methods of this class. Renormalisation is only necessary prior to operating directly 
+	 * on memory entries (or using inherited methods not overridden in this class).
+	 * Memory entries are rewritten in place and may hence be shared with open snapshots; those are not 
+	 * affected, since snapshots read values from their own copy of the primitive mirror (see {@link #indexedValues}).
+	 */
+	public void renormaliseValues() {
+		if (decayFactor == 1d) {
+			return;
+		}
+		copyOnWrite();
+		ensureIndicesAreConsistent();
+		final float factor = (float)decayFactor;
+		final double appliedDecayFactor = decayFactor;
+		if (compactEntries != null) {
+			renormaliseObservations();
+		} else {
+			for (int i = 0; i < this.memoryArray.length; i++) {
+				// Iterate through all entries and multiply with decay factor.
+				if (this.memoryArray[i] != null && this.memoryArray[i].value != null) {
+					this.memoryArray[i].value = (float)(this.memoryArray[i].value * decayFactor);
+				}
+			}
+		}
+		decayFactor = 1d;
+		// Keep aggregated values in indices in line
+		for (int i = 0; i < indexedValues.length; i++) {
+			indexedValues[i] = getStoredValue(i);
+		}
+		sequenceTrie.scaleValues(factor);
+		if (evictionSketch != null) {
+			evictionSketch.scaleSums(factor);
+		}
+		if (evictionPolicy != null) {
+			evictionPolicy.valuesScaled(factor);
+			evictionPolicy.decayFactorChanged(decayFactor);
+		}
+		if (generalisedAggregates != null) {
+			for (GeneralisedAggregate aggregate: generalisedAggregates.values()) {
+				aggregate.sum *= factor;
+				if (factor >= 0) {
+					// Scaled like stored values, so that the maximum still equals the value of its entry
+					aggregate.max = (float)(aggregate.max * appliedDecayFactor);
+				} else {
+					aggregate.maxStale = true;
+					staleMaxima = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies the cumulative decay factor to the values of all observations (compact mode), and recomputes 
+	 * compact entries and the values of their slots from them (see {@link #renormaliseValues()}).
+	 */
+	private void renormaliseObservations() {
+		for (int i = 0; i < numberOfObservations; i++) {
+			final int position = (oldestObservation + i) % observationSlots.length;
+			observationValues[position] = (float)(observationValues[position] * decayFactor);
+		}
+		for (int i = 0; i < compactEntryOfSlot.length; i++) {
+			if (compactEntryOfSlot[i] != null) {
+				compactEntryOfSlot[i].clear();
+			}
+		}
+		for (int i = 0; i < numberOfObservations; i++) {
+			final int position = (oldestObservation + i) % observationSlots.length;
+			if (observationSlots[position] != -1) {
+				compactEntryOfSlot[observationSlots[position]].add(observationHasValue[position] ? observationValues[position] : null);
+			}
+		}
+		for (int i = 0; i < compactEntryOfSlot.length; i++) {
+			if (compactEntryOfSlot[i] != null) {
+				memoryArray[i].value = compactEntryOfSlot[i].count > 0 ? (float)compactEntryOfSlot[i].sum : null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the key-value pair with the highest (effective) value.
+	 */
+	@Override
+	public PairValueComparison<NAdicoExpression<A, I, C>, Number> getKeyValuePairForHighestValue() {
+		ensureIndicesAreConsistent();
+		// Decay factor is positive, so ordering of stored values corresponds to that of effective values
+		int highestSlot = -1;
+		float highestValue = 0f;
+		for (int i = 0; i < indexedValues.length; i++) {
+			if (indexedHasValue[i]) {
+				final float value = getExtremeStoredValue(i, true);
+				if (highestSlot == -1 || value > highestValue) {
+					highestSlot = i;
+					highestValue = value;
+				}
+			}
+		}
+		if (highestSlot == -1) {
+			return null;
+		}
+		return new PairValueComparison<NAdicoExpression<A, I, C>, Number>(indexedKeys[highestSlot], decay(highestValue));
+	}
+
+	/**
+	 * Returns the key with the highest (effective) value.
+	 */
+	@Override
+	public NAdicoExpression<A, I, C> getKeyForHighestValue() {
+		PairValueComparison<NAdicoExpression<A, I, C>, Number> pair = getKeyValuePairForHighestValue();
+		return pair == null ? null : pair.getKey();
+	}
+
+	/**
+	 * Returns the key with the lowest (effective) value.
+	 */
+	@Override
+	public NAdicoExpression<A, I, C> getKeyForLowestValue() {
+		ensureIndicesAreConsistent();
+		// Decay factor is positive, so ordering of stored values corresponds to that of effective values
+		int lowestSlot = -1;
+		float lowestValue = 0f;
+		for (int i = 0; i < indexedValues.length; i++) {
+			if (indexedHasValue[i]) {
+				final float value = getExtremeStoredValue(i, false);
+				if (lowestSlot == -1 || value < lowestValue) {
+					lowestSlot = i;
+					lowestValue = value;
+				}
+			}
+		}
+		return lowestSlot == -1 ? null : indexedKeys[lowestSlot];
+	}
+
+	/**
+	 * Returns count, sum and maximum of (effective) values per memorised expression (counting observations in compact mode).
+	 * Sums and maxima are computed from the primitive mirror of memorised values (see {@link #indexedValues}), 
+	 * since boxed values of memory entries shared with snapshots may have been rewritten by the originating memory.
+	 */
+	@Override
+	public HashMap<NAdicoExpression<A, I, C>, CountSumEntry> getCompleteEntries() {
+		ensureIndicesAreConsistent();
+		HashMap<NAdicoExpression<A, I, C>, CountSumEntry> entries = super.getCompleteEntries();
+		final Set<CountSumEntry> computedEntries = Collections.newSetFromMap(new IdentityHashMap<CountSumEntry, Boolean>());
+		// Counts are recomputed in compact mode, since slots hold all observations of their expression
+		final Set<CountSumEntry> countedEntries = compactEntryOfSlot == null ? null : 
+				Collections.newSetFromMap(new IdentityHashMap<CountSumEntry, Boolean>());
+		for (int i = 0; i < indexedKeys.length; i++) {
+			final CountSumEntry entry = indexedKeys[i] == null ? null : entries.get(indexedKeys[i]);
+			if (entry == null) {
+				continue;
+			}
+			if (countedEntries != null) {
+				entry.count = (countedEntries.add(entry) ? 0 : entry.count) + compactEntryOfSlot[i].numberOfObservations;
+			}
+			if (!indexedHasValue[i]) {
+				continue;
+			}
+			if (computedEntries.add(entry)) {
+				entry.sum = indexedValues[i];
+				entry.max = getExtremeStoredValue(i, true);
+			} else {
+				entry.sum += indexedValues[i];
+				entry.max = Math.max(entry.max, getExtremeStoredValue(i, true));
+			}
+		}
+		if (decayFactor != 1d) {
+			for (CountSumEntry entry: computedEntries) {
+				entry.sum = decay(entry.sum);
+				entry.max = decay(entry.max);
 			}
 		}
+		return entries;
 	}
 } 
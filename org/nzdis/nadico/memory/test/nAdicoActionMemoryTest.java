@@ -1,18 +1,33 @@
 package org.nzdis.nadico.memory.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.nzdis.nadico.NAdicoConfiguration;
 import org.nzdis.nadico.NAdicoExpression;
+import org.nzdis.nadico.NAdicoExpressionCodec;
 import org.nzdis.nadico.NAdicoFactory;
 import org.nzdis.nadico.NAdicoGeneralizer;
 import org.nzdis.nadico.components.Aim;
@@ -20,7 +35,20 @@ import org.nzdis.nadico.components.Attributes;
 import org.nzdis.nadico.components.Conditions;
 import org.nzdis.nadico.deonticRange.DeonticRangeConfiguration;
 import org.nzdis.nadico.deonticRange.ZeroBasedEquiCompartmentDeonticValueMapper;
+import org.nzdis.nadico.listener.NAdicoGeneralizationProvider;
+import org.nzdis.nadico.memory.ConcurrentNAdicoActionMemory;
+import org.nzdis.nadico.memory.LeastFrequentlyUsedEvictionPolicy;
+import org.nzdis.nadico.memory.LeastRecentlyUsedEvictionPolicy;
+import org.nzdis.nadico.memory.LowestValenceEvictionPolicy;
+import org.nzdis.nadico.memory.NAdicoActionMemoryFile;
+import org.nzdis.nadico.memory.NAdicoActionMemorySnapshot;
+import org.nzdis.nadico.memory.NAdicoMemoryEvent;
+import org.nzdis.nadico.memory.NAdicoMemoryEventStream;
+import org.nzdis.nadico.memory.NAdicoQuery;
+import org.nzdis.nadico.memory.SharedNAdicoActionMemory;
+import org.nzdis.nadico.memory.ValueWeightedRandomEvictionPolicy;
 import org.nzdis.nadico.memory.nAdicoActionMemory;
+import org.sofosim.environment.memoryTypes.util.PairValueComparison;
 
 public class nAdicoActionMemoryTest {
 
@@ -439,6 +467,1199 @@ public class nAdicoActionMemoryTest {
 		
 	}
 	
+	@Test
+	public void aggregateValuesForKeyBeforeAndAfterEviction() {
+
+		fillMemory();
+
+		assertEquals("Sum for expression", FEEDBACK_POSITIVE, memory.getValueForKey(expression0));
+		assertEquals("Count for expression", (Float)1.0f, memory.getCountForKey(expression0));
+
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+
+		assertEquals("Sum for duplicate expression", (Float)3.0f, memory.getValueForKey(expression0));
+		assertEquals("Count for duplicate expression", (Float)2.0f, memory.getCountForKey(expression0));
+		assertEquals("Mean for duplicate expression", (Float)1.5f, memory.getMeanValueForKey(expression0));
+
+		// Push out all entries by filling the memory with a different activity
+		for (int i = 0; i < numberOfMemoryEntries; i++) {
+			memory.memorize(factory.createNAdicoAction(
+					new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleOne),
+					new Aim<String>(reactionOne), new Conditions<NAdicoExpression>()), FEEDBACK_NEUTRAL);
+		}
+
+		assertNull("Evicted expression should not be found", memory.getValueForKey(expression0));
+		assertNull("Evicted expression should not be counted", memory.getCountForKey(expression0));
+	}
+
+	@Test
+	public void generalisedQueriesReflectChangedGeneralisationProviders() {
+
+		fillMemory();
+
+		// Same role and activity as expression0, but different individual
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleOne),
+				new Aim<String>(actionOne), new Conditions<NAdicoExpression>()), FEEDBACK_POSITIVE);
+
+		// Without provider individual markers are removed during generalisation
+		assertEquals("Generalised query should aggregate across individuals", (Float)2.0f,
+				memory.getMaxNAdicoExpressionWithGivenExpressionAsLastExpression(expression0, true, true, nAdicoActionMemory.AGGREGATION_COUNT).getValue());
+
+		// Provider retaining individual markers
+		generaliser.registerGeneralisationProvider(new NAdicoGeneralizationProvider<Map<String, Set<String>>>() {
+			@Override
+			public Map<String, Set<String>> generalizeAttributes(Map<String, Set<String>> markersToGeneralise) {
+				return new HashMap<>(markersToGeneralise);
+			}
+		});
+
+		assertEquals("Cached generalisations should be invalidated after provider registration", (Float)1.0f,
+				memory.getMaxNAdicoExpressionWithGivenExpressionAsLastExpression(expression0, true, true, nAdicoActionMemory.AGGREGATION_COUNT).getValue());
+
+		// Returned generalised expressions are copies, i.e., their modification does not affect cached generalisations
+		memory.getMaxNAdicoExpressionWithGivenExpressionAsLastExpression(expression0, true, true, nAdicoActionMemory.AGGREGATION_COUNT)
+				.getKey().attributes.addSocialMarker(ROLE_NAME, roleTwo);
+		memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_COUNT).get(0).getKey().attributes.addSocialMarker(ROLE_NAME, roleTwo);
+		assertEquals("Cached generalisations should not be modified through returned expressions", (Float)1.0f,
+				memory.getMaxNAdicoExpressionWithGivenExpressionAsLastExpression(expression0, true, true, nAdicoActionMemory.AGGREGATION_COUNT).getValue());
+		assertFalse("Ranked expressions should not be modified through returned expressions", 
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_COUNT).get(0).getKey().attributes.toString().contains(roleTwo));
+	}
+
+	@Test
+	public void determineActivitiesFollowingSequence() {
+
+		fillMemory();
+
+		// Sequences actionOne -> reactionOne (twice) and actionOne -> reactionTwo
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleTwo),
+				new Aim<String>(reactionOne), new Conditions<NAdicoExpression>(expression0.makeCopy())), FEEDBACK_POSITIVE);
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleOne),
+				new Aim<String>(reactionOne), new Conditions<NAdicoExpression>(expression1.makeCopy())), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleTwo),
+				new Aim<String>(reactionTwo), new Conditions<NAdicoExpression>(expression0.makeCopy())), FEEDBACK_NEGATIVE);
+
+		Map<String, Float> following = memory.getActivitiesFollowingSequence(expression0, nAdicoActionMemory.AGGREGATION_COUNT);
+		assertEquals("Number of following activities", 2, following.size());
+		assertEquals("Count for first following activity", (Float)2.0f, following.get(reactionOne));
+		assertEquals("Count for second following activity", (Float)1.0f, following.get(reactionTwo));
+		assertEquals("Following activities ranked by value", reactionOne, following.keySet().iterator().next());
+
+		following = memory.getActivitiesFollowingSequence(expression0, nAdicoActionMemory.AGGREGATION_SUM);
+		assertEquals("Sum for first following activity", (Float)3.0f, following.get(reactionOne));
+		assertEquals("Sum for second following activity", FEEDBACK_NEGATIVE, following.get(reactionTwo));
+
+		assertNull("No activity follows complete sequence", memory.getActivitiesFollowingSequence(
+				memory.getMaxNAdicoExpressionWithGivenExpressionAsPreviousExpression(expression0, false, true, true, nAdicoActionMemory.AGGREGATION_SUM).getKey(),
+				nAdicoActionMemory.AGGREGATION_COUNT));
+
+		// Push out all entries
+		for (int i = 0; i < numberOfMemoryEntries; i++) {
+			memory.memorize(expression2.makeCopy(), FEEDBACK_NEUTRAL);
+		}
+
+		assertNull("Evicted sequences should not be followed by any activity",
+				memory.getActivitiesFollowingSequence(expression0, nAdicoActionMemory.AGGREGATION_COUNT));
+	}
+
+	@Test
+	public void searchLastExpressionBySocialMarkers() {
+
+		fillMemory();
+
+		// Query on role only (any activity)
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> roleQuery =
+			factory.createNAdicoAction(
+				new Attributes<>().addSocialMarker(ROLE_NAME, roleTwo),
+				new Aim<String>(), new Conditions<NAdicoExpression>());
+
+		Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> result =
+				memory.getNAdicoExpressionsWithGivenExpressionAsLastExpression(roleQuery, false, false, nAdicoActionMemory.AGGREGATION_SUM);
+		assertEquals("Number of expressions for role", 2, result.size());
+		assertEquals("Value for first expression with role", FEEDBACK_POSITIVE_HIGH, result.get(expression1));
+		assertEquals("Value for second expression with role", FEEDBACK_NEGATIVE_HIGH, result.get(expression3));
+
+		// Push out all entries with expressions of other role
+		for (int i = 0; i < numberOfMemoryEntries; i++) {
+			memory.memorize(expression0.makeCopy(), FEEDBACK_NEUTRAL);
+		}
+
+		assertNull("Evicted expressions should not be found by role",
+				memory.getNAdicoExpressionsWithGivenExpressionAsLastExpression(roleQuery, false, false, nAdicoActionMemory.AGGREGATION_SUM));
+	}
+
+	@Test
+	public void executePreparedQueryRepeatedly() {
+
+		fillMemory();
+
+		// Generalised query for expression0 on same level
+		NAdicoQuery<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> query =
+				new NAdicoQuery<>(expression0, false, true, true, true, true, nAdicoActionMemory.AGGREGATION_COUNT);
+
+		assertEquals("Prepared query should return same result as query method",
+				memory.getMaxNAdicoExpressionsWithGivenExpressionAsLastExpression(expression0, true, true, nAdicoActionMemory.AGGREGATION_COUNT),
+				memory.executeQuery(query));
+		assertEquals("Count for prepared query", (Float)1.0f, memory.executeQuery(query).values().iterator().next());
+
+		// Same role and activity as expression0, but different individual
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleOne),
+				new Aim<String>(actionOne), new Conditions<NAdicoExpression>()), FEEDBACK_POSITIVE);
+
+		assertEquals("Prepared query should reflect memory changes", (Float)2.0f, memory.executeQuery(query).values().iterator().next());
+
+		try {
+			new NAdicoQuery<>(expression0, false, true, true, true, true, 5);
+			fail("Invalid aggregation strategy should be rejected during query preparation");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void searchBatchOfExpressionsAsPreviousExpression() {
+
+		fillMemory();
+
+		// Reactions to expression0 and expression2
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleTwo),
+				new Aim<String>(reactionOne), new Conditions<NAdicoExpression>(expression0.makeCopy())), FEEDBACK_POSITIVE);
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleTwo),
+				new Aim<String>(reactionTwo), new Conditions<NAdicoExpression>(expression0.makeCopy())), FEEDBACK_NEGATIVE);
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleOne),
+				new Aim<String>(reactionTwo), new Conditions<NAdicoExpression>(expression2.makeCopy())), FEEDBACK_POSITIVE_HIGH);
+
+		// Includes equal candidates, which should each receive a result
+		List<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>> candidates =
+				Arrays.asList(expression0, expression1, expression2, expression0.makeCopy());
+
+		List<Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float>> results =
+				memory.getMaxNAdicoExpressionsWithGivenExpressionsAsPreviousExpression(candidates, true, true, true, nAdicoActionMemory.AGGREGATION_SUM);
+
+		assertEquals("One result per query", candidates.size(), results.size());
+		for (int i = 0; i < candidates.size(); i++) {
+			assertEquals("Batch result should equal individual query result for " + candidates.get(i),
+					memory.getMaxNAdicoExpressionsWithGivenExpressionAsPreviousExpression(candidates.get(i), true, true, true, nAdicoActionMemory.AGGREGATION_SUM),
+					results.get(i));
+		}
+		assertNull("No reaction to expression1", results.get(1));
+		assertNotNull("Reaction to repeated expression0", results.get(3));
+	}
+
+	@Test
+	public void rankTopExpressions() {
+
+		fillMemory();
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+
+		List<PairValueComparison<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float>> ranked =
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM);
+
+		for (int k = 0; k <= ranked.size() + 1; k++) {
+			List<PairValueComparison<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float>> top =
+					memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM, k);
+			assertEquals("Number of top entries for k=" + k, Math.min(k, ranked.size()), top.size());
+			for (int i = 0; i < top.size(); i++) {
+				assertEquals("Top entry " + i + " for k=" + k, ranked.get(i).getKey(), top.get(i).getKey());
+				assertEquals("Top value " + i + " for k=" + k, ranked.get(i).getValue(), top.get(i).getValue());
+			}
+		}
+		assertEquals("Highest-ranked entry", (Float)3.0f, memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM, 1).get(0).getValue());
+	}
+
+	@Test
+	public void maintainRankedAggregatesAcrossMemoryChanges() {
+
+		fillMemory();
+
+		assertEquals("Highest maximum before changes", FEEDBACK_POSITIVE_HIGH,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MAX).get(0).getValue());
+
+		// Same role and activity as expression0 (i.e., same generalised expression)
+		memory.memorize(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleOne),
+				new Aim<String>(actionOne), new Conditions<NAdicoExpression>()), 3.0f);
+
+		assertEquals("Highest maximum after insertion", (Float)3.0f,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MAX).get(0).getValue());
+		assertEquals("Highest sum after insertion", (Float)4.0f,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM).get(0).getValue());
+
+		memory.forgetAtRoundEnd(0.5f);
+
+		assertEquals("Highest maximum after forgetting", (Float)1.5f,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MAX).get(0).getValue());
+		assertEquals("Highest mean after forgetting", (Float)1.0f,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MEAN).get(0).getValue());
+
+		// Push out all entries
+		for (int i = 0; i < numberOfMemoryEntries; i++) {
+			memory.memorize(expression3.makeCopy(), FEEDBACK_NEGATIVE);
+		}
+
+		List<PairValueComparison<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float>> ranked =
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_COUNT);
+		assertEquals("Single generalised expression after eviction", 1, ranked.size());
+		assertEquals("Count after eviction", (Float)(float)numberOfMemoryEntries, ranked.get(0).getValue());
+		assertEquals("Maximum after eviction", FEEDBACK_NEGATIVE,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MAX).get(0).getValue());
+	}
+
+	@Test
+	public void forgetLazilyAcrossManyRounds() {
+
+		fillMemory();
+
+		// Decay beyond renormalisation threshold
+		float expectedValue = FEEDBACK_POSITIVE_HIGH;
+		for (int i = 0; i < 200; i++) {
+			memory.forgetAtRoundEnd(0.9f);
+			expectedValue *= 0.9f;
+		}
+		assertEquals("Decayed value", expectedValue, memory.getValueForKey(expression1), expectedValue * 1e-4f);
+		assertEquals("Decayed value of highest entry", expectedValue, memory.getMaxNAdicoExpression().getValue().floatValue(), expectedValue * 1e-4f);
+
+		// Entries memorised after forgetting are not affected by previous decay
+		memory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+		assertEquals("Value after insertion", FEEDBACK_POSITIVE + expectedValue, memory.getValueForKey(expression1), 1e-6f);
+		assertEquals("Mean value after insertion", (FEEDBACK_POSITIVE + expectedValue) / 2f, 
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MEAN).get(0).getValue(), 1e-6f);
+
+		memory.forgetAtRoundEnd(0.5f);
+		assertEquals("Value after further forgetting", (FEEDBACK_POSITIVE + expectedValue) * 0.5f, memory.getValueForKey(expression1), 1e-6f);
+
+		memory.forgetAtRoundEnd(0f);
+		assertEquals("Value after complete forgetting", (Float)0f, memory.getValueForKey(expression1));
+	}
+
+	@Test
+	public void forgetLazilyIncludingEntriesWithoutValue() {
+
+		memory.memorize(expression0.makeCopy(), 4f);
+		memory.forgetAtRoundEnd(0.5f);
+
+		// Entries without value memorised while decay factor is pending
+		memory.memorize(expression0.makeCopy(), null);
+		memory.memorize(expression0.makeCopy(), 2f);
+		assertEquals("Count of entries with value", 2f, memory.getCountForKey(expression0), 0f);
+		assertEquals("Sum of decayed and new value", 4f, memory.getValueForKey(expression0), 1e-6f);
+
+		// Renormalisation skips entries without value
+		for (int i = 0; i < 200; i++) {
+			memory.forgetAtRoundEnd(0.9f);
+		}
+		memory.memorize(expression0.makeCopy(), null);
+		assertEquals("Count after renormalisation", 2f, memory.getCountForKey(expression0), 0f);
+
+		memory.forgetAtRoundEnd(0f);
+		assertEquals("Value after complete forgetting", (Float)0f, memory.getValueForKey(expression0));
+	}
+
+	@Test
+	public void decayEntriesBasedOnAge() {
+
+		memory.setHalfLife(2f);
+
+		memory.memorize(expression0.makeCopy(), 4f);
+		memory.advanceTime(2);
+
+		assertEquals("Value after one half-life", 2f, memory.getValueForKey(expression0), 1e-6f);
+
+		// Entry memorised later has not decayed yet
+		memory.memorize(expression0.makeCopy(), 4f);
+		assertEquals("Sum of entries with different age", 6f, memory.getValueForKey(expression0), 1e-6f);
+		assertEquals("Mean of entries with different age", 3f, memory.getMeanValueForKey(expression0), 1e-6f);
+		assertEquals("Maximum of entries with different age", 4f,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MAX).get(0).getValue(), 1e-6f);
+
+		memory.advanceTime();
+		memory.advanceTime();
+		assertEquals("Logical time", 4, memory.getCurrentTime());
+		assertEquals("Sum after further half-life", 3f, memory.getValueForKey(expression0), 1e-6f);
+
+		// Deactivate time-based decay
+		memory.setHalfLife(null);
+		memory.advanceTime(10);
+		assertEquals("Sum without time-based decay", 3f, memory.getValueForKey(expression0), 1e-6f);
+	}
+
+	@Test
+	public void reageEntriesUponChangeOfHalfLife() {
+
+		memory.setHalfLife(2f);
+		memory.memorize(expression0.makeCopy(), 4f);
+		memory.advanceTime(2);
+		memory.memorize(expression0.makeCopy(), 4f);
+		assertEquals("Sum before change of half-life", 6f, memory.getValueForKey(expression0), 1e-6f);
+
+		// Entries of age 2 and 0 decay based on new half-life
+		memory.setHalfLife(1f);
+		assertEquals("Sum after change of half-life", 5f, memory.getValueForKey(expression0), 1e-6f);
+		assertEquals("Maximum after change of half-life", 4f,
+				memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_MAX).get(0).getValue(), 1e-6f);
+
+		memory.advanceTime();
+		assertEquals("Sum after advancing time", 2.5f, memory.getValueForKey(expression0), 1e-6f);
+
+		// Decay is retained while deactivated and caught up upon reactivation (entries of age 5 and 3)
+		memory.setHalfLife(null);
+		memory.advanceTime(2);
+		assertEquals("Sum while deactivated", 2.5f, memory.getValueForKey(expression0), 1e-6f);
+		memory.setHalfLife(1f);
+		assertEquals("Sum after reactivation", 0.625f, memory.getValueForKey(expression0), 1e-6f);
+
+		// Forgetting applies on top of time-based decay
+		memory.forgetAtRoundEnd(0.5f);
+		assertEquals("Sum after forgetting", 0.3125f, memory.getValueForKey(expression0), 1e-6f);
+	}
+
+	@Test
+	public void aggregateValuesIncludingEntriesWithoutValue() {
+
+		memory.memorize(expression0.makeCopy(), 1f);
+		memory.memorize(expression0.makeCopy(), null);
+		memory.memorize(expression0.makeCopy(), 3f);
+
+		// Entries without value are ignored in aggregation
+		assertEquals("Count of entries with value", 2f, memory.getCountForKey(expression0), 0f);
+		assertEquals("Mean of entries with value", 2f, memory.getMeanValueForKey(expression0), 1e-6f);
+
+		memory.forgetAtRoundEnd(0.5f);
+		PairValueComparison<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Number> highest = 
+				memory.getKeyValuePairForHighestValue();
+		assertEquals("Highest decayed value", 1.5f, highest.getValue().floatValue(), 1e-6f);
+	}
+
+	@Test
+	public void memorizeAndQueryConcurrently() throws InterruptedException {
+
+		final int numberOfWriters = 4;
+		final int numberOfReaders = 4;
+		final int writesPerWriter = 500;
+
+		final ConcurrentNAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> concurrentMemory = 
+				new ConcurrentNAdicoActionMemory<>(numberOfWriters * writesPerWriter, ownerOne, generaliser);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		List<Thread> writers = new ArrayList<>();
+		for (int w = 0; w < numberOfWriters; w++) {
+			writers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < writesPerWriter; i++) {
+							// Constant value per expression, so that sums of consistent memory states are determined by counts
+							if (i % 2 == 0) {
+								concurrentMemory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+							} else {
+								concurrentMemory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			}));
+		}
+		// Counts and sums of both expressions, executed as one batch (i.e., on the same memory state)
+		final List<NAdicoQuery<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>> queries = Arrays.asList(
+				new NAdicoQuery<>(expression0, false, false, false, true, true, nAdicoActionMemory.AGGREGATION_COUNT),
+				new NAdicoQuery<>(expression0, false, false, false, true, true, nAdicoActionMemory.AGGREGATION_SUM),
+				new NAdicoQuery<>(expression2, false, false, false, true, true, nAdicoActionMemory.AGGREGATION_COUNT),
+				new NAdicoQuery<>(expression2, false, false, false, true, true, nAdicoActionMemory.AGGREGATION_SUM));
+
+		List<Thread> readers = new ArrayList<>();
+		for (int r = 0; r < numberOfReaders; r++) {
+			readers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						float lastCount = 0f;
+						float lastRankedSum = 0f;
+						while (writing.get()) {
+							List<Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float>> results = 
+									concurrentMemory.executeQueries(queries);
+							final float count0 = getTotal(results.get(0));
+							final float count2 = getTotal(results.get(2));
+							// Each writer memorises expression0 before expression2, so any state between two writes holds
+							// at least as many entries of expression0 and at most one more per writer
+							assertTrue("Counts of consistent memory state: " + count0 + " vs. " + count2, 
+									count0 >= count2 && count0 <= count2 + numberOfWriters);
+							assertEquals("Sum of consistent memory state", count0 * FEEDBACK_POSITIVE, getTotal(results.get(1)), 0f);
+							assertEquals("Sum of consistent memory state", count2 * FEEDBACK_POSITIVE_HIGH, getTotal(results.get(3)), 0f);
+							assertTrue("Count of entries must not decrease", count0 >= lastCount);
+							lastCount = count0;
+							List<PairValueComparison<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float>> ranked = 
+									concurrentMemory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM);
+							float rankedSum = 0f;
+							for (PairValueComparison<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> entry: ranked) {
+								rankedSum += entry.getValue();
+							}
+							assertTrue("Ranked sum must not decrease", rankedSum >= lastRankedSum);
+							lastRankedSum = rankedSum;
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			}));
+		}
+		for (Thread reader: readers) {
+			reader.start();
+		}
+		for (Thread writer: writers) {
+			writer.start();
+		}
+		for (Thread writer: writers) {
+			writer.join();
+		}
+		writing.set(false);
+		for (Thread reader: readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError("Concurrent access failed: " + failure.get(), failure.get());
+		}
+
+		// All writes are reflected
+		assertEquals("Number of memorised expressions", numberOfWriters * writesPerWriter / 2f, concurrentMemory.getCountForKey(expression0), 0f);
+		assertEquals("Number of memorised expressions", numberOfWriters * writesPerWriter / 2f, concurrentMemory.getCountForKey(expression2), 0f);
+		assertEquals("Sum of memorised values", numberOfWriters * writesPerWriter / 2f * FEEDBACK_POSITIVE_HIGH, concurrentMemory.getValueForKey(expression2), 0f);
+	}
+
+	/**
+	 * Returns the total of values of a given query result (0 if no result).
+	 * @param result Query result
+	 * @return
+	 */
+	private static float getTotal(final Map<?, Float> result) {
+		float total = 0f;
+		if (result != null) {
+			for (Float value: result.values()) {
+				total += value;
+			}
+		}
+		return total;
+	}
+
+	@Test
+	public void querySnapshotWhileMemorising() {
+
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+
+		NAdicoActionMemorySnapshot<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> snapshot = memory.snapshot();
+
+		// Modify memory after taking snapshot
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		memory.forgetAtRoundEnd(0.5f);
+
+		assertEquals("Value in memory", 1.5f, memory.getValueForKey(expression0), 1e-6f);
+		assertEquals("Value in snapshot", FEEDBACK_POSITIVE, snapshot.getValueForKey(expression0), 1e-6f);
+		assertNull("Expression memorised after taking snapshot", snapshot.getValueForKey(expression1));
+		assertEquals("Number of entries in snapshot", 2, snapshot.getAllKeys().size());
+		assertEquals("Highest value in snapshot", FEEDBACK_POSITIVE_HIGH, snapshot.getMaxNAdicoExpression().getValue().floatValue(), 1e-6f);
+		assertEquals("Ranked expressions in snapshot", 2, snapshot.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM).size());
+		assertEquals("Ranked expressions in memory", 3, memory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM).size());
+
+		// Snapshots are read-only
+		try {
+			snapshot.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+			fail("Snapshot should not accept modifications");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		// Released snapshots cannot be queried, while memory remains unaffected
+		snapshot.release();
+		assertTrue("Snapshot released", snapshot.isReleased());
+		try {
+			snapshot.getValueForKey(expression0);
+			fail("Released snapshot should not be queried");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		assertEquals("Value in memory after release of snapshot", 1.5f, memory.getValueForKey(expression0), 1e-6f);
+
+		// Snapshot released prior to modification of memory
+		NAdicoActionMemorySnapshot<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> releasedSnapshot = memory.snapshot();
+		releasedSnapshot.release();
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		assertEquals("Value in memory", -1.5f, memory.getValueForKey(expression1), 1e-6f);
+	}
+
+	@Test
+	public void keepSnapshotsUnaffectedByModificationsOfMemory() {
+
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+
+		NAdicoActionMemorySnapshot<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> snapshot = memory.snapshot();
+
+		// Modify indices shared with snapshot, then renormalise entries shared with snapshot
+		memory.memorize(expression0.makeCopy(), FEEDBACK_NEGATIVE);
+		memory.forgetAtRoundEnd(0.5f);
+		memory.renormaliseValues();
+		NAdicoActionMemorySnapshot<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> secondSnapshot = memory.snapshot();
+		memory.forgetAtRoundEnd(0f);
+
+		assertEquals("Value in memory", 0f, memory.getValueForKey(expression0), 0f);
+		assertEquals("Value in snapshot", FEEDBACK_POSITIVE, snapshot.getValueForKey(expression0), 1e-6f);
+		assertEquals("Count in snapshot", 1f, snapshot.getCountForKey(expression0), 0f);
+		assertEquals("Sum in snapshot", FEEDBACK_POSITIVE, snapshot.getCompleteEntries().get(expression0).sum, 1e-6f);
+		assertEquals("Maximum in snapshot", FEEDBACK_POSITIVE_HIGH, snapshot.getCompleteEntries().get(expression2).max, 1e-6f);
+		assertEquals("Highest value in snapshot", expression2, snapshot.getKeyForHighestValue());
+		assertEquals("Lowest value in snapshot", expression0, snapshot.getKeyForLowestValue());
+		assertEquals("Value in second snapshot", (FEEDBACK_POSITIVE + FEEDBACK_NEGATIVE) * 0.5f, secondSnapshot.getValueForKey(expression0), 1e-6f);
+		assertEquals("Count in second snapshot", 2f, secondSnapshot.getCountForKey(expression0), 0f);
+
+		snapshot.release();
+		secondSnapshot.release();
+		assertEquals("Open snapshots", 0, memory.getNumberOfOpenSnapshots());
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		assertEquals("Value in memory after release of snapshots", FEEDBACK_POSITIVE, memory.getValueForKey(expression0), 1e-6f);
+		assertEquals("Count in memory after release of snapshots", 3f, memory.getCountForKey(expression0), 0f);
+	}
+
+	@Test
+	public void releaseSnapshotsFromOtherThreads() throws InterruptedException {
+
+		final int numberOfSnapshots = 200;
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> readers = new ArrayList<>();
+		for (int i = 0; i < numberOfSnapshots; i++) {
+			memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+			final float expectedCount = memory.getCountForKey(expression0);
+			final NAdicoActionMemorySnapshot<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> snapshot = memory.snapshot();
+			// Snapshot is queried and released by another thread while memory is modified
+			Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						assertEquals("Count in snapshot", expectedCount, snapshot.getCountForKey(expression0), 0f);
+						snapshot.release();
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+			readers.add(reader);
+			reader.start();
+			memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		}
+		for (Thread reader: readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError("Query on snapshot failed", failure.get());
+		}
+		assertEquals("Open snapshots", 0, memory.getNumberOfOpenSnapshots());
+	}
+
+	@Test
+	public void shareExpressionsAcrossPartitions() {
+
+		SharedNAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> sharedMemory = new SharedNAdicoActionMemory<>();
+		nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> partitionOne = 
+				sharedMemory.addPartition(ownerOne, numberOfMemoryEntries, generaliser);
+		nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> partitionTwo = 
+				sharedMemory.addPartition(ownerTwo, 2, null);
+
+		// Both owners observe the same interaction, but value it differently
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> observation = expression0.makeCopy();
+		partitionOne.memorize(observation, FEEDBACK_POSITIVE);
+		partitionTwo.memorize(expression0.makeCopy(), FEEDBACK_NEGATIVE);
+		partitionTwo.memorize(expression0.makeCopy(), FEEDBACK_NEGATIVE_HIGH);
+
+		assertEquals("Number of shared expressions", 1, sharedMemory.getNumberOfSharedExpressions());
+		assertTrue("Expression is shared across partitions", 
+				partitionOne.getAllKeys().iterator().next() == partitionTwo.getAllKeys().iterator().next());
+		assertTrue("Shared expression is copy of memorised instance", partitionOne.getAllKeys().iterator().next() != observation);
+		assertEquals("Value of first partition", FEEDBACK_POSITIVE, partitionOne.getValueForKey(expression0), 0f);
+		assertEquals("Value of second partition", -3f, partitionTwo.getValueForKey(expression0), 0f);
+		assertEquals("Count of second partition", 2f, partitionTwo.getCountForKey(expression0), 0f);
+
+		// Eviction window per partition
+		partitionTwo.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+		assertEquals("Count of second partition after eviction", 1f, partitionTwo.getCountForKey(expression0), 0f);
+		assertEquals("Count of first partition", 1f, partitionOne.getCountForKey(expression0), 0f);
+
+		assertTrue("Partition retrievable by owner", sharedMemory.getPartition(ownerOne) == partitionOne);
+		assertEquals("Ranked expressions of partition", 1, partitionOne.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM).size());
+	}
+
+	@Test
+	public void encodeAndDecodeExpressions() {
+
+		// Encoding round trip for action with preceding action
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> sequence = expression1.makeCopy();
+		sequence.conditions.setPreviousAction(expression0.makeCopy());
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> decoded = 
+				NAdicoExpressionCodec.decode(ByteBuffer.wrap(NAdicoExpressionCodec.encode(sequence)), null);
+		assertEquals("Decoded expression", sequence, decoded);
+		assertEquals("Decoded expression (string representation)", sequence.toString(), decoded.toString());
+	}
+
+	@Test
+	public void persistAndRestoreMemories() throws IOException {
+
+		nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> otherMemory = 
+				new nAdicoActionMemory<>(3, ownerTwo, null);
+		fillMemory();
+		memory.forgetAtRoundEnd(0.5f);
+		otherMemory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		otherMemory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		otherMemory.memorize(expression2.makeCopy(), null);
+		otherMemory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+
+		Path file = Files.createTempFile("memories", ".bin");
+		try {
+			List<nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>> memories = new ArrayList<>();
+			memories.add(memory);
+			memories.add(otherMemory);
+			NAdicoActionMemoryFile.write(file, memories);
+
+			Map<String, NAdicoGeneralizer> generalisers = new HashMap<>();
+			generalisers.put(ownerOne, generaliser);
+			Map<String, nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>> restored = 
+					NAdicoActionMemoryFile.read(file, generalisers);
+			assertEquals("Number of restored memories", 2, restored.size());
+
+			nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> restoredMemory = restored.get(ownerOne);
+			assertEquals("Decayed value", 1f, restoredMemory.getValueForKey(expression1), 0f);
+			assertEquals("Decayed value", -1f, restoredMemory.getValueForKey(expression3), 0f);
+			assertEquals("Highest-valued expression", expression1, restoredMemory.getKeyForHighestValue());
+			assertEquals("Ranked expressions", 4, restoredMemory.getRankedNAdicoExpressions(nAdicoActionMemory.AGGREGATION_SUM).size());
+
+			// Ring buffer position is retained
+			nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> restoredOtherMemory = restored.get(ownerTwo);
+			assertEquals("Restored value", FEEDBACK_POSITIVE_HIGH, restoredOtherMemory.getValueForKey(expression0), 0f);
+			assertEquals("Restored entries (including entry without value)", 3, restoredOtherMemory.getAllKeys().size());
+			restoredOtherMemory.memorize(expression3.makeCopy(), FEEDBACK_NEGATIVE);
+			assertNull("Oldest entry evicted", restoredOtherMemory.getValueForKey(expression1));
+			assertEquals("Remaining entry", FEEDBACK_POSITIVE_HIGH, restoredOtherMemory.getValueForKey(expression0), 0f);
+
+			// Original memory is unaffected by writing
+			memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+			assertEquals("Value in original memory", 1.5f, memory.getValueForKey(expression0), 0f);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void persistAndRestoreMemoryModes() throws IOException {
+
+		nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> modeMemory = 
+				new nAdicoActionMemory<>(3, ownerTwo, null);
+		modeMemory.activateCompactMode();
+		modeMemory.setHalfLife(2f);
+		modeMemory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		modeMemory.advanceTime(2);
+		modeMemory.setHalfLife(null);
+		modeMemory.advanceTime(2);
+		modeMemory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+
+		Path file = Files.createTempFile("memories", ".bin");
+		try {
+			NAdicoActionMemoryFile.write(file, modeMemory);
+			nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> restoredMemory = 
+					NAdicoActionMemoryFile.<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>read(file, null).get(ownerTwo);
+			assertTrue("Compact mode restored", restoredMemory.isCompactMode());
+			assertEquals("Restored value", modeMemory.getValueForKey(expression0), restoredMemory.getValueForKey(expression0), 1e-6f);
+
+			// Re-aging considers decay applied prior to persisting
+			modeMemory.setHalfLife(2f);
+			restoredMemory.setHalfLife(2f);
+			assertEquals("Re-aged value", FEEDBACK_POSITIVE / 4, modeMemory.getValueForKey(expression0), 1e-6f);
+			assertEquals("Re-aged restored value", modeMemory.getValueForKey(expression0), restoredMemory.getValueForKey(expression0), 1e-6f);
+			assertEquals("Re-aged restored value", modeMemory.getValueForKey(expression1), restoredMemory.getValueForKey(expression1), 1e-6f);
+
+			// State of eviction policies is not persisted (policies cannot be combined with compact mode)
+			modeMemory.deactivateCompactMode();
+			modeMemory.setEvictionPolicy(new LeastRecentlyUsedEvictionPolicy());
+			try {
+				NAdicoActionMemoryFile.write(file, modeMemory);
+				fail("Memory with eviction policy should not be written");
+			} catch (RuntimeException e) {
+				// expected
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void retainEvictedEntriesApproximately() {
+
+		memory.setNumberOfMemoryEntries(2);
+		memory.activateApproximateMode(0.01, 0.01);
+
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+
+		// Memorised entries plus evicted ones
+		assertEquals("Number of evicted entries", 3, memory.getNumberOfEvictedEntries());
+		assertEquals("Value including evicted entries", 4f, memory.getValueForKey(expression0), 0f);
+		assertEquals("Count including evicted entries", 3f, memory.getCountForKey(expression0), 0f);
+		assertEquals("Mean including evicted entries", 4f/3, memory.getMeanValueForKey(expression0), 0.0001f);
+		assertEquals("Value including evicted entries", -2f, memory.getValueForKey(expression1), 0f);
+		assertNull("Expression never memorised", memory.getValueForKey(expression2));
+
+		// Evicted entries are retained per expression, so partial queries cannot be answered
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> anyAgentInRole = 
+				factory.createNAdicoAction(new Attributes<>().addSocialMarker(ROLE_NAME, roleOne), 
+						new Aim<String>(actionOne), new Conditions<NAdicoExpression>());
+		try {
+			memory.getCountForKey(anyAgentInRole);
+			fail("Partial query should be rejected in approximate mode");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		// Evicted entries are subject to forgetting
+		memory.forgetAtRoundEnd(0.5f);
+		assertEquals("Decayed value including evicted entries", 2f, memory.getValueForKey(expression0), 0f);
+
+		// Snapshots do not observe subsequent evictions
+		NAdicoActionMemorySnapshot<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> snapshot = memory.snapshot();
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+		assertEquals("Number of evicted entries", 4, memory.getNumberOfEvictedEntries());
+		assertEquals("Number of evicted entries in snapshot", 3, snapshot.getNumberOfEvictedEntries());
+		assertEquals("Count including evicted entries", 2f, memory.getCountForKey(expression1), 0f);
+		assertEquals("Count in snapshot", 2f, snapshot.getCountForKey(expression1), 0f);
+		snapshot.release();
+
+		memory.deactivateApproximateMode();
+		assertEquals("Value without evicted entries", 0.5f, memory.getValueForKey(expression0), 0f);
+		assertNull("Evicted expression", memory.getValueForKey(expression1));
+		assertEquals("Partial query without approximate mode", 0.5f, memory.getValueForKey(anyAgentInRole), 0f);
+	}
+
+	@Test
+	public void persistAndRestoreEvictedEntries() throws IOException {
+
+		memory.setNumberOfMemoryEntries(2);
+		memory.activateApproximateMode(0.01, 0.01);
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		memory.forgetAtRoundEnd(0.5f);
+
+		Path file = Files.createTempFile("memories", ".bin");
+		try {
+			NAdicoActionMemoryFile.write(file, memory);
+			nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> restoredMemory = 
+					NAdicoActionMemoryFile.<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>read(file, null).get(ownerOne);
+			assertTrue("Approximate mode restored", restoredMemory.isApproximateMode());
+			assertEquals("Number of evicted entries", 2, restoredMemory.getNumberOfEvictedEntries());
+			assertEquals("Count including evicted entries", 2f, restoredMemory.getCountForKey(expression0), 0f);
+			assertEquals("Decayed value including evicted entries", memory.getValueForKey(expression0), restoredMemory.getValueForKey(expression0), 0f);
+
+			// Restored sketch retains subsequently evicted entries
+			memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+			restoredMemory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+			assertEquals("Number of evicted entries", 3, restoredMemory.getNumberOfEvictedEntries());
+			assertEquals("Value including evicted entries", memory.getValueForKey(expression1), restoredMemory.getValueForKey(expression1), 0f);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void filterEntriesByConditions() {
+
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> afterExpression0 = expression2.makeCopy();
+		afterExpression0.conditions.setPreviousAction(expression0.makeCopy());
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> afterExpression1 = expression2.makeCopy();
+		afterExpression1.conditions.setPreviousAction(expression1.makeCopy());
+
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(afterExpression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(afterExpression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(afterExpression1.makeCopy(), FEEDBACK_NEGATIVE);
+
+		// Strict matches on conditions
+		assertEquals("Count of entries without conditions", 1f, memory.getCountForKey(expression2), 0f);
+		assertEquals("Count of entries with given preceding action", 2f, memory.getCountForKey(afterExpression0), 0f);
+		assertEquals("Value of entries with given preceding action", FEEDBACK_NEGATIVE, memory.getValueForKey(afterExpression1), 0f);
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> afterExpression3 = expression2.makeCopy();
+		afterExpression3.conditions.setPreviousAction(expression3.makeCopy());
+		assertNull("No entry with given preceding action", memory.getCountForKey(afterExpression3));
+
+		// Wildcard matches on conditions
+		Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> wildcardResults = 
+				memory.executeQuery(new NAdicoQuery<>(expression2, false, false, false, true, false, nAdicoActionMemory.AGGREGATION_COUNT));
+		assertEquals("Distinct expressions matching query without conditions", 3, wildcardResults.size());
+		Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> strictResults = 
+				memory.executeQuery(new NAdicoQuery<>(afterExpression0, false, false, false, true, true, nAdicoActionMemory.AGGREGATION_COUNT));
+		assertEquals("Distinct expressions matching query with conditions", 1, strictResults.size());
+		assertEquals("Count of expression matching query with conditions", 2f, strictResults.get(afterExpression0), 0f);
+	}
+
+	@Test
+	public void searchExpressionsByMarkers() {
+
+		memory.setNumberOfMemoryEntries(200);
+		for (int i = 0; i < 150; i++) {
+			fillMemory();
+		}
+		// Memory holds 50 copies of each expression
+		
+		// Role-based query (no activity)
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> roleQuery = 
+				factory.createNAdicoAction(new Attributes<>().addSocialMarker(ROLE_NAME, roleOne), 
+						new Aim<String>(), new Conditions<NAdicoExpression>());
+		assertEquals("Count of entries with social marker", 100f, memory.getCountForKey(roleQuery), 0f);
+		assertEquals("Value of entries with social marker", 0f, memory.getValueForKey(roleQuery), 0f);
+
+		// Query on individual and social markers
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> agentQuery = 
+				factory.createNAdicoAction(new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleTwo), 
+						new Aim<String>(), new Conditions<NAdicoExpression>());
+		assertEquals("Count of entries with markers", 100f, memory.getCountForKey(agentQuery), 0f);
+		assertEquals("Count of entries with markers and activity", 50f, memory.getCountForKey(expression1), 0f);
+
+		// Marker combination not held by any entry
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> unknownQuery = 
+				factory.createNAdicoAction(new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleTwo), 
+						new Aim<String>(), new Conditions<NAdicoExpression>());
+		assertNull("No entries with marker combination", memory.getCountForKey(unknownQuery));
+	}
+
+	@Test
+	public void searchExpressionsByAimPropertyRange() {
+
+		memory.setNumberOfMemoryEntries(6);
+		String PRICE = "PRICE";
+		float[] prices = {9f, 10f, 11.5f, 11.5f, 12f, 13f};
+		for (float price: prices) {
+			memory.memorize(factory.createNAdicoAction(
+					new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleOne), 
+					new Aim(actionOne, PRICE, price), new Conditions<NAdicoExpression>()), FEEDBACK_POSITIVE);
+		}
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> trade = expression0.makeCopy();
+
+		// Range query
+		Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> inRange = 
+				memory.getNAdicoExpressionsWithAimPropertyInRange(trade, PRICE, 10f, 12f, true, nAdicoActionMemory.AGGREGATION_COUNT);
+		assertEquals("Distinct expressions in range", 3, inRange.size());
+		assertEquals("Count of expression in range", 2f, inRange.get(factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleOne), 
+				new Aim(actionOne, PRICE, 11.5f), new Conditions<NAdicoExpression>())), 0f);
+		assertNull("No expressions in range", memory.getNAdicoExpressionsWithAimPropertyInRange(trade, PRICE, 13.5f, 20f, true, nAdicoActionMemory.AGGREGATION_COUNT));
+		assertNull("No expressions matching statement", memory.getNAdicoExpressionsWithAimPropertyInRange(expression1, PRICE, 0f, 20f, true, nAdicoActionMemory.AGGREGATION_COUNT));
+
+		// Nearest-value query
+		Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> nearest = 
+				memory.getNAdicoExpressionsWithNearestAimPropertyValue(trade, PRICE, 12.6f, true, nAdicoActionMemory.AGGREGATION_COUNT);
+		assertEquals("Nearest expressions", 1, nearest.size());
+		assertEquals("Nearest value", 13f, nearest.keySet().iterator().next().aim.properties.get(PRICE));
+		assertEquals("Nearest expressions with equal distance", 2, 
+				memory.getNAdicoExpressionsWithNearestAimPropertyValue(trade, PRICE, 12.5f, true, nAdicoActionMemory.AGGREGATION_COUNT).size());
+
+		// Evicted entries are removed from index
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE);
+		nearest = memory.getNAdicoExpressionsWithNearestAimPropertyValue(trade, PRICE, 0f, true, nAdicoActionMemory.AGGREGATION_COUNT);
+		assertEquals("Nearest value after eviction", 10f, nearest.keySet().iterator().next().aim.properties.get(PRICE));
+	}
+
+	@Test
+	public void searchExpressionsByNonFiniteAimPropertyValues() {
+
+		memory.setNumberOfMemoryEntries(2);
+		String PRICE = "PRICE";
+		float[] prices = {Float.NaN, Float.POSITIVE_INFINITY};
+		for (float price: prices) {
+			memory.memorize(factory.createNAdicoAction(
+					new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleOne), 
+					new Aim(actionOne, PRICE, price), new Conditions<NAdicoExpression>()), FEEDBACK_POSITIVE);
+		}
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> trade = expression0.makeCopy();
+
+		// Infinite values are farthest from any finite value, NaN values are never nearest
+		Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> nearest = 
+				memory.getNAdicoExpressionsWithNearestAimPropertyValue(trade, PRICE, 0f, true, nAdicoActionMemory.AGGREGATION_COUNT);
+		assertEquals("Nearest expressions", 1, nearest.size());
+		assertEquals("Nearest value", Float.POSITIVE_INFINITY, nearest.keySet().iterator().next().aim.properties.get(PRICE));
+
+		for (float value: new float[] {Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY}) {
+			try {
+				memory.getNAdicoExpressionsWithNearestAimPropertyValue(trade, PRICE, value, true, nAdicoActionMemory.AGGREGATION_COUNT);
+				fail("Non-finite reference value " + value + " should be rejected");
+			} catch (RuntimeException e) {
+				// expected
+			}
+		}
+		try {
+			memory.getNAdicoExpressionsWithAimPropertyInRange(trade, PRICE, Float.NaN, 0f, true, nAdicoActionMemory.AGGREGATION_COUNT);
+			fail("NaN bound should be rejected");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void matchPrecedingSubsequencesOfDifferentLengths() {
+
+		fillMemory();
+
+		// Sequences of length 2 (expression0 -> reactionOne) and 3 (expression0 -> reactionOne -> reactionTwo)
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> sequenceOfTwo = factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerTwo).addSocialMarker(ROLE_NAME, roleTwo),
+				new Aim<String>(reactionOne), new Conditions<NAdicoExpression>(expression0.makeCopy()));
+		NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> sequenceOfThree = factory.createNAdicoAction(
+				new Attributes<>().addIndividualMarker(AGENT_NAME, ownerOne).addSocialMarker(ROLE_NAME, roleOne),
+				new Aim<String>(reactionTwo), new Conditions<NAdicoExpression>(sequenceOfTwo.makeCopy()));
+		memory.memorize(sequenceOfTwo.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(sequenceOfThree.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+
+		// Wildcard match (subsequence anywhere in preceding sequence)
+		Map<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>, Float> result =
+				memory.getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(expression0, false, true, false, nAdicoActionMemory.AGGREGATION_SUM);
+		assertEquals("Sequences preceded by expression0 (wildcard)", 2, result.size());
+		assertEquals("Value of sequence of length 3", FEEDBACK_POSITIVE_HIGH, result.get(sequenceOfThree));
+		result = memory.getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(sequenceOfTwo, false, true, false, nAdicoActionMemory.AGGREGATION_SUM);
+		assertEquals("Sequences preceded by sequence of length 2 (wildcard)", 1, result.size());
+		assertTrue("Sequence of length 3 preceded by sequence of length 2", result.containsKey(sequenceOfThree));
+
+		// Strict match (truncation of memorised sequence to query length)
+		result = memory.getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(expression0, false, false, true, nAdicoActionMemory.AGGREGATION_COUNT);
+		assertEquals("Sequences beginning with expression0 (strict)", 1, result.size());
+		assertTrue("Sequence of length 2 returned for expression0", result.containsKey(sequenceOfTwo));
+		assertNull("No sequence beginning with expression1",
+				memory.getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(expression1, false, true, true, nAdicoActionMemory.AGGREGATION_COUNT));
+		assertNull("No sequence longer than sequence of length 3",
+				memory.getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(sequenceOfThree, false, true, false, nAdicoActionMemory.AGGREGATION_COUNT));
+
+		// Push out all sequences
+		for (int i = 0; i < numberOfMemoryEntries; i++) {
+			memory.memorize(expression2.makeCopy(), FEEDBACK_NEUTRAL);
+		}
+
+		assertNull("Evicted sequences should not be matched",
+				memory.getNAdicoExpressionsWithGivenExpressionAsPreviousExpression(expression0, false, true, false, nAdicoActionMemory.AGGREGATION_COUNT));
+	}
+
+	@Test
+	public void streamMemoryChangeEvents() {
+
+		memory.setNumberOfMemoryEntries(2);
+		NAdicoMemoryEventStream<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> stream = memory.openEventStream(3);
+
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		List<NAdicoMemoryEvent<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>> events = stream.poll();
+		assertEquals("Events for insertions", 2, events.size());
+		assertEquals("Event type of insertion", NAdicoMemoryEvent.INSERTED, events.get(0).type);
+		assertEquals("Key of insertion", expression0, events.get(0).key);
+		assertNull("No old value for insertion", events.get(0).oldValue);
+		assertEquals("New value of insertion", FEEDBACK_POSITIVE_HIGH, events.get(1).newValue);
+		assertTrue("Polled events are removed from stream", stream.poll().isEmpty());
+
+		// Eviction of oldest entry and decay
+		memory.memorize(expression2.makeCopy(), FEEDBACK_NEGATIVE);
+		memory.forgetAtRoundEnd(0.5f);
+		events = stream.poll();
+		assertEquals("Events for eviction, insertion and decay", 3, events.size());
+		assertEquals("Event type of eviction", NAdicoMemoryEvent.EVICTED, events.get(0).type);
+		assertEquals("Key of evicted entry", expression0, events.get(0).key);
+		assertEquals("Value of evicted entry", FEEDBACK_POSITIVE, events.get(0).oldValue);
+		assertEquals("Event type of insertion into evicted slot", NAdicoMemoryEvent.INSERTED, events.get(1).type);
+		assertEquals("Slot of insertion", events.get(0).slot, events.get(1).slot);
+		assertEquals("Event type of decay", NAdicoMemoryEvent.DECAYED, events.get(2).type);
+		assertEquals("Slot of decay", NAdicoMemoryEvent.ALL_SLOTS, events.get(2).slot);
+		assertEquals("Decay factor", 0.5f, events.get(2).newValue, 0f);
+
+		// Decayed values are reported on eviction
+		memory.memorize(expression3.makeCopy(), FEEDBACK_NEUTRAL);
+		assertEquals("Decayed value of evicted entry", 1.0f, stream.poll(1).get(0).oldValue, 0.0001f);
+		assertEquals("Remaining events", 1, stream.size());
+
+		// Events exceeding capacity are dropped
+		memory.memorize(expression0.makeCopy(), FEEDBACK_NEUTRAL);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEUTRAL);
+		assertEquals("Pending events limited by capacity", 3, stream.poll().size());
+		assertEquals("Dropped events", 2, stream.getNumberOfDroppedEvents());
+
+		memory.closeEventStream(stream);
+		memory.memorize(expression2.makeCopy(), FEEDBACK_NEUTRAL);
+		assertTrue("Stream closed", stream.isClosed());
+		assertTrue("No events after closing stream", stream.poll().isEmpty());
+	}
+
+	@Test
+	public void evictEntriesBasedOnPolicy() {
+
+		// Lowest valence: routine observations do not push out high-valence experiences
+		memory.setNumberOfMemoryEntries(4);
+		memory.setEvictionPolicy(new LowestValenceEvictionPolicy());
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEGATIVE_HIGH);
+		for (int i = 0; i < 10; i++) {
+			memory.memorize(expression2.makeCopy(), FEEDBACK_NEUTRAL);
+		}
+		assertEquals("High positive valence retained", (Float)1.0f, memory.getCountForKey(expression0));
+		assertEquals("High negative valence retained", (Float)1.0f, memory.getCountForKey(expression1));
+		assertEquals("Routine observations", (Float)2.0f, memory.getCountForKey(expression2));
+		// Decayed entries are evicted first
+		memory.forgetAtRoundEnd(0.1f);
+		memory.memorize(expression3.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression3.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression3.makeCopy(), FEEDBACK_POSITIVE);
+		assertNull("Decayed high-valence entry evicted", memory.getCountForKey(expression0));
+		assertEquals("Number of entries", 4, memory.getAllKeys().size());
+
+		// Least recently used
+		memory.setNumberOfMemoryEntries(3);
+		memory.setEvictionPolicy(new LeastRecentlyUsedEvictionPolicy());
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+		memory.getValueForKey(expression0);
+		memory.memorize(expression3.makeCopy(), FEEDBACK_POSITIVE);
+		assertNull("Least recently used entry evicted", memory.getCountForKey(expression1));
+		assertEquals("Recently used entry retained", (Float)1.0f, memory.getCountForKey(expression0));
+
+		// Least frequently used
+		memory.setNumberOfMemoryEntries(3);
+		memory.setEvictionPolicy(new LeastFrequentlyUsedEvictionPolicy());
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+		memory.getValueForKey(expression1);
+		memory.getValueForKey(expression1);
+		memory.getValueForKey(expression0);
+		memory.memorize(expression3.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression3.makeCopy(), FEEDBACK_POSITIVE);
+		assertEquals("Frequently used entry retained", (Float)1.0f, memory.getCountForKey(expression0));
+		assertEquals("Most frequently used entry retained", (Float)1.0f, memory.getCountForKey(expression1));
+		assertEquals("Unused entries replaced", (Float)1.0f, memory.getCountForKey(expression3));
+
+		// Value-weighted random
+		memory.setNumberOfMemoryEntries(4);
+		memory.setEvictionPolicy(new ValueWeightedRandomEvictionPolicy(42));
+		memory.memorize(expression0.makeCopy(), 1000f);
+		for (int i = 0; i < 20; i++) {
+			memory.memorize(expression2.makeCopy(), FEEDBACK_NEUTRAL);
+		}
+		assertEquals("High-valence entry likely retained", (Float)1.0f, memory.getCountForKey(expression0));
+		assertEquals("Number of entries", 4, memory.getAllKeys().size());
+
+		// Insertion order
+		memory.setEvictionPolicy(null);
+		for (int i = 0; i < 4; i++) {
+			memory.memorize(expression1.makeCopy(), FEEDBACK_NEUTRAL);
+		}
+		assertNull("Entries evicted in insertion order", memory.getCountForKey(expression0));
+	}
+
+	@Test
+	public void retainMemorisationOrderOfRelocatedEntries() throws IOException {
+
+		// Entry relocated into slot of evicted entry (ring order: expression3, expression2, expression0)
+		memory.setNumberOfMemoryEntries(3);
+		memory.setEvictionPolicy(new LowestValenceEvictionPolicy());
+		memory.memorize(expression0.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		memory.memorize(expression1.makeCopy(), FEEDBACK_NEUTRAL);
+		memory.memorize(expression2.makeCopy(), FEEDBACK_POSITIVE);
+		memory.memorize(expression3.makeCopy(), FEEDBACK_POSITIVE_HIGH);
+		assertNull("Lowest valence evicted", memory.getCountForKey(expression1));
+		memory.setEvictionPolicy(null);
+
+		// Restored memory evicts entries in original order of memorisation
+		Path file = Files.createTempFile("memories", ".bin");
+		try {
+			NAdicoActionMemoryFile.write(file, memory);
+			nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> restoredMemory = 
+					NAdicoActionMemoryFile.<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>read(file, null).get(ownerOne);
+			restoredMemory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+			assertNull("Oldest restored entry evicted", restoredMemory.getCountForKey(expression0));
+			assertEquals("Relocated restored entry retained", (Float)1.0f, restoredMemory.getCountForKey(expression3));
+		} finally {
+			Files.delete(file);
+		}
+
+		// Policy is initialised in original order of memorisation
+		memory.setEvictionPolicy(new LeastRecentlyUsedEvictionPolicy());
+		memory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+		assertNull("Oldest entry evicted", memory.getCountForKey(expression0));
+		assertEquals("Relocated entry retained", (Float)1.0f, memory.getCountForKey(expression3));
+	}
+
+	@Test
+	public void collapseDuplicateEntriesInCompactMode() {
+
+		nAdicoActionMemory<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> regularMemory =
+				new nAdicoActionMemory<>(numberOfMemoryEntries, ownerOne, generaliser);
+		memory.activateCompactMode();
+		assertTrue("Compact mode activated", memory.isCompactMode());
+		for (int i = 0; i < 30; i++) {
+			float value = i % 3 == 0 ? FEEDBACK_NEGATIVE : FEEDBACK_POSITIVE_HIGH;
+			memory.memorize(expression0.makeCopy(), value);
+			regularMemory.memorize(expression0.makeCopy(), value);
+			if (i % 2 == 0) {
+				memory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+				regularMemory.memorize(expression1.makeCopy(), FEEDBACK_POSITIVE);
+			}
+		}
+		assertEquals("Distinct expressions", 2, memory.getNumberOfDistinctEntries());
+		Set<NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>>> instances = 
+				Collections.newSetFromMap(new IdentityHashMap<>());
+		instances.addAll(memory.getAllKeys());
+		assertEquals("Equal expressions share instance", 2, instances.size());
+		assertEquals("Slots held without compaction", 45, regularMemory.getNumberOfOccupiedSlots());
+		assertEquals("Slots held in compact mode", 2, memory.getNumberOfOccupiedSlots());
+		NAdicoActionMemorySnapshot<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> snapshot = memory.snapshot();
+		assertEquals("Slots held by snapshot", 2, snapshot.getNumberOfOccupiedSlots());
+		assertEquals("Distinct expressions of snapshot", 2, snapshot.getNumberOfDistinctEntries());
+		assertEquals("Count of snapshot", regularMemory.getCountForKey(expression0), snapshot.getCountForKey(expression0));
+		snapshot.release();
+
+		// Same answers as without compaction
+		for (NAdicoExpression<Attributes<Set<String>>, Aim<String>, Conditions<NAdicoExpression>> expression: 
+				Arrays.asList(expression0, expression1, expression2)) {
+			assertEquals("Count for " + expression, regularMemory.getCountForKey(expression), memory.getCountForKey(expression));
+			assertEquals("Mean for " + expression, regularMemory.getMeanValueForKey(expression), memory.getMeanValueForKey(expression));
+			assertEquals("Sum for " + expression, regularMemory.getValueForKey(expression), memory.getValueForKey(expression));
+		}
+		memory.forgetAtRoundEnd(0.5f);
+		regularMemory.forgetAtRoundEnd(0.5f);
+		assertEquals("Mean after forgetting", regularMemory.getMeanValueForKey(expression0), memory.getMeanValueForKey(expression0));
+
+		// Memory window is retained
+		for (int i = 0; i < numberOfMemoryEntries - 1; i++) {
+			memory.memorize(expression2.makeCopy(), FEEDBACK_NEUTRAL);
+			regularMemory.memorize(expression2.makeCopy(), FEEDBACK_NEUTRAL);
+		}
+		assertEquals("Distinct expressions after eviction", 2, memory.getNumberOfDistinctEntries());
+		assertEquals("Slot of evicted expression freed", 2, memory.getNumberOfOccupiedSlots());
+		assertEquals("Count of remaining entry", regularMemory.getCountForKey(expression0), memory.getCountForKey(expression0));
+		assertEquals("Count of memory window", (Float)(float)(numberOfMemoryEntries - 1), memory.getCountForKey(expression2));
+		memory.renormaliseValues();
+		assertEquals("Mean after renormalisation", regularMemory.getMeanValueForKey(expression0), memory.getMeanValueForKey(expression0));
+
+		memory.deactivateCompactMode();
+		assertEquals("No distinct expressions after deactivation", 0, memory.getNumberOfDistinctEntries());
+		assertEquals("Count after deactivation", (Float)(float)(numberOfMemoryEntries - 1), memory.getCountForKey(expression2));
+		assertEquals("Slots held after deactivation", numberOfMemoryEntries, memory.getNumberOfOccupiedSlots());
+	}
+
 	//TODO: test for value aggregation for generalised statements
 	//TODO: test for getNAdicoExpressionsOnAnyLevel (i.e., non-max variant of method)
 